@@ -0,0 +1,262 @@
+package introdb.heap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking front of a {@link Store}, operations run on a dedicated I/O executor and complete returned futures.
+ * <p>
+ * Number of operations in flight is bounded, when the bound is reached new operations fail with
+ * {@link RejectedExecutionException} instead of blocking the caller. Gets waiting in the queue are coalesced
+ * and resolved with a single {@link Store#getAll(java.util.Collection)}, so gets of records on the same page
+ * share one read of it. Operations are not ordered with each other, callers chain on returned futures to order them.
+ */
+final class AsyncStore implements Closeable {
+    static final int MAX_BATCH_SIZE = 256;
+
+    private final Store store;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final ConcurrentLinkedQueue<PendingGet> pendingGets = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    /**
+     * @param nrOfThreads  number of I/O threads
+     * @param maxInFlight  max number of operations submitted and not yet completed
+     */
+    AsyncStore(Store store, int nrOfThreads, int maxInFlight) {
+        this(store, ioThreads(nrOfThreads), maxInFlight);
+    }
+
+    private AsyncStore(Store store, ExecutorService executor, int maxInFlight) {
+        if (maxInFlight < 1) {
+            executor.shutdown();
+            throw new IllegalArgumentException(String.format("Invalid max number of operations in flight: %d", maxInFlight));
+        }
+        this.store = store;
+        this.executor = executor;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Runs every operation on its own virtual thread, when runtime supports them, otherwise on a thread
+     * per available processor.
+     */
+    static AsyncStore onVirtualThreads(Store store, int maxInFlight) {
+        var executor = virtualThreads();
+        if (executor == null) {
+            executor = ioThreads(Runtime.getRuntime().availableProcessors());
+        }
+        return new AsyncStore(store, executor, maxInFlight);
+    }
+
+    CompletableFuture<Object> getAsync(Serializable key) {
+        var future = new CompletableFuture<Object>();
+        if (!admit(future)) {
+            return future;
+        }
+        pendingGets.add(new PendingGet(key, future));
+        scheduleDrain();
+        return future;
+    }
+
+    CompletableFuture<Object> putAsync(Entry entry) {
+        return submit(() -> store.put(entry));
+    }
+
+    CompletableFuture<Object> removeAsync(Serializable key) {
+        return submit(() -> store.remove(key));
+    }
+
+    /**
+     * Stops accepting operations, waits for submitted ones to complete and closes the store.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        failPendingGets(new RejectedExecutionException("Store is closed"));
+        store.close();
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        var future = new CompletableFuture<T>();
+        if (!admit(future)) {
+            return future;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.run());
+                } catch (Exception | Error e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Takes a permit for the operation, released once its future completes, or fails the future
+     * when there are no permits left.
+     */
+    private boolean admit(CompletableFuture<?> future) {
+        if (closed) {
+            future.completeExceptionally(new RejectedExecutionException("Store is closed"));
+            return false;
+        }
+        if (!inFlight.tryAcquire()) {
+            future.completeExceptionally(new RejectedExecutionException("Too many operations in flight"));
+            return false;
+        }
+        future.whenComplete((value, failure) -> inFlight.release());
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drainGets);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+                failPendingGets(e);
+            }
+        }
+    }
+
+    /**
+     * Takes a batch of pending gets and schedules next drain before resolving it, so batches queued
+     * meanwhile are resolved on other threads.
+     */
+    private void drainGets() {
+        var batch = new ArrayList<PendingGet>();
+        PendingGet pendingGet;
+        while (batch.size() < MAX_BATCH_SIZE && (pendingGet = pendingGets.poll()) != null) {
+            batch.add(pendingGet);
+        }
+        drainScheduled.set(false);
+        if (!pendingGets.isEmpty()) {
+            scheduleDrain();
+        }
+        if (!batch.isEmpty()) {
+            resolve(batch);
+        }
+    }
+
+    private void resolve(List<PendingGet> batch) {
+        try {
+            if (batch.size() == 1) {
+                var get = batch.get(0);
+                get.future.complete(store.get(get.key));
+                return;
+            }
+            var keys = new HashMap<BatchKey, Serializable>();
+            for (var get : batch) {
+                keys.putIfAbsent(new BatchKey(get.key), get.key);
+            }
+            var values = store.getAll(keys.values());
+            for (var get : batch) {
+                get.future.complete(values.get(keys.get(new BatchKey(get.key))));
+            }
+        } catch (Exception | Error e) {
+            for (var get : batch) {
+                get.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void failPendingGets(Throwable failure) {
+        PendingGet pendingGet;
+        while ((pendingGet = pendingGets.poll()) != null) {
+            pendingGet.future.completeExceptionally(failure);
+        }
+    }
+
+    private static ExecutorService ioThreads(int nrOfThreads) {
+        if (nrOfThreads < 1) {
+            throw new IllegalArgumentException(String.format("Invalid number of I/O threads: %d", nrOfThreads));
+        }
+        var threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(nrOfThreads, runnable -> {
+            var thread = new Thread(runnable, "introdb-io-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Looked up reflectively, as the code is compiled for a release without virtual threads.
+     *
+     * @return executor starting a virtual thread per task or null, when runtime does not support them
+     */
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Compares arrays by content, so gets of equal array keys share a single key of the batch, and values
+     * returned by the store can be found by that key.
+     */
+    private static final class BatchKey {
+        private final Serializable key;
+
+        private BatchKey(Serializable key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof BatchKey && Objects.deepEquals(key, ((BatchKey) other).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.deepHashCode(new Object[]{key});
+        }
+    }
+
+    private static final class PendingGet {
+        private final Serializable key;
+        private final CompletableFuture<Object> future;
+
+        private PendingGet(Serializable key, CompletableFuture<Object> future) {
+            this.key = key;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Fixed size pool of off-heap page frames, which {@link RecordPage} works on directly while the frame is pinned.
+ * <p>
+ * Frames are slices of direct buffers allocated lazily, in slabs, up to the byte budget, so the pool takes no Java heap
+ * apart from its bookkeeping. Pinned frames are never evicted, unpinned ones are evicted with the 2Q policy
+ * (Johnson and Shasha), so a single scan of the file does not push out frequently read pages:
+ * pages read for the first time enter a small FIFO queue, when they fall out of it only their numbers are remembered,
+ * and pages read again while remembered are promoted to the main LRU queue.
+ * <p>
+ * Dirty frames are written with {@link PageWriter} before they are evicted.
+ * Thread safe, frames are loaded outside of the pool monitor, other threads pinning the same page wait for the load.
+ * Frames are written outside of the monitor too, from a copy taken under it, so a slow write, e.g. of a page which
+ * waits for the write ahead log, does not hold up pinning of other pages. Frame is pinned while it is written,
+ * and a page is written by a single thread at a time, so writes of the page land in order.
+ */
+final class BufferPool {
+    private static final int IN_QUEUE_PERCENT = 25;
+    private static final int GHOST_QUEUE_PERCENT = 50;
+    private static final int MAX_SLAB_SIZE = 64 * 1024 * 1024;
+
+    private final int pageSize;
+    private final int capacity;
+    private final int inCapacity;
+    private final int ghostCapacity;
+    private final int framesPerSlab;
+    private final byte[] emptyPage;
+    private final PageWriter writer;
+    private final LinkedHashMap<Integer, Frame> inQueue;
+    private final LinkedHashMap<Integer, Frame> mainQueue;
+    private final LinkedHashMap<Integer, Boolean> ghostQueue;
+    private final ArrayDeque<Frame> freeFrames;
+    private ByteBuffer slab;
+    private int allocatedFrames;
+    private int dirtyFrames;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxBytes budget of page frames, at least one frame is kept
+     * @param writer   writes dirty frames back to the file
+     */
+    BufferPool(long maxBytes, int pageSize, PageWriter writer) {
+        this.pageSize = pageSize;
+        this.capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / pageSize));
+        this.inCapacity = Math.max(1, capacity * IN_QUEUE_PERCENT / 100);
+        this.ghostCapacity = Math.max(1, capacity * GHOST_QUEUE_PERCENT / 100);
+        this.framesPerSlab = Math.max(1, Math.min(capacity, MAX_SLAB_SIZE / pageSize));
+        this.emptyPage = new byte[pageSize];
+        this.writer = writer;
+        this.inQueue = new LinkedHashMap<>();
+        this.mainQueue = new LinkedHashMap<>(16, 0.75f, true);
+        this.ghostQueue = new LinkedHashMap<>();
+        this.freeFrames = new ArrayDeque<>();
+    }
+
+    /**
+     * Pins frame of the page, loading it with given reader into zeroed frame, when the page is not in the pool.
+     *
+     * @return pinned frame or null, when all frames are pinned
+     */
+    Frame pin(int pageNumber, PageReader reader) throws IOException {
+        Frame frame;
+        boolean missed = false;
+        while (true) {
+            ByteBuffer content;
+            synchronized (this) {
+                while ((frame = resident(pageNumber)) != null && !frame.loaded) {
+                    awaitFrame();
+                }
+                if (frame != null) {
+                    frame.pinCount++;
+                    hits += missed ? 0 : 1;
+                    return frame;
+                }
+                if (!missed) {
+                    misses++;
+                    missed = true;
+                }
+                frame = freeFrame();
+                if (frame == null) {
+                    return null;
+                }
+                if (!frame.dirty) {
+                    frame.pageNumber = pageNumber;
+                    frame.pinCount = 1;
+                    frame.loaded = false;
+                    if (ghostQueue.remove(pageNumber) != null) {
+                        mainQueue.put(pageNumber, frame);
+                    } else {
+                        inQueue.put(pageNumber, frame);
+                    }
+                    break;
+                }
+                content = startWrite(frame);
+            }
+            write(frame, content);
+        }
+        try {
+            ByteBuffer buffer = frame.buffer();
+            buffer.put(emptyPage);
+            buffer.clear();
+            reader.read(pageNumber, buffer);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                release(frame);
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            frame.loaded = true;
+            notifyAll();
+        }
+        return frame;
+    }
+
+    synchronized void unpin(Frame frame) {
+        if (frame.pinCount == 0) {
+            throw new IllegalStateException(String.format("Frame of page %d is not pinned", frame.pageNumber));
+        }
+        frame.pinCount--;
+        if (frame.pinCount == 0 && frame.discarded) {
+            frame.discarded = false;
+            release(frame);
+        }
+    }
+
+    synchronized void markDirty(Frame frame) {
+        if (!frame.dirty) {
+            frame.dirty = true;
+            dirtyFrames++;
+        }
+    }
+
+    synchronized void markClean(Frame frame) {
+        clean(frame);
+    }
+
+    /**
+     * Copies page content into the frame of the page, when the page is in the pool and it is not the given frame.
+     * Frame which is being written stays dirty, as the earlier write may land after the content was written.
+     */
+    synchronized void update(int pageNumber, ByteBuffer content, Frame frame) {
+        Frame resident = resident(pageNumber);
+        if (resident != null && resident != frame && resident.loaded) {
+            ByteBuffer source = content.duplicate();
+            source.clear();
+            resident.buffer().put(source);
+            if (resident.writing) {
+                markDirty(resident);
+            } else {
+                clean(resident);
+            }
+        }
+    }
+
+    /**
+     * Drops the page without writing it, e.g. after it was cut off from the file. Frame which is still pinned,
+     * e.g. by an optimistic reader, is no longer found by page number and it is freed once it is unpinned.
+     */
+    synchronized void discard(int pageNumber) {
+        Frame frame = resident(pageNumber);
+        if (frame != null) {
+            if (frame.pinCount > 0) {
+                if (!mainQueue.remove(pageNumber, frame)) {
+                    inQueue.remove(pageNumber, frame);
+                }
+                clean(frame);
+                frame.discarded = true;
+            } else {
+                release(frame);
+            }
+        }
+        ghostQueue.remove(pageNumber);
+    }
+
+    /**
+     * Writes all dirty frames, in order of their pages.
+     */
+    void flush() throws IOException {
+        for (int pageNumber : dirtyPages()) {
+            flush(pageNumber);
+        }
+    }
+
+    /**
+     * @return numbers of pages with dirty frames, in ascending order
+     */
+    synchronized List<Integer> dirtyPages() {
+        var dirtyPages = new ArrayList<Integer>(dirtyFrames);
+        for (var frame : inQueue.values()) {
+            if (frame.dirty) {
+                dirtyPages.add(frame.pageNumber);
+            }
+        }
+        for (var frame : mainQueue.values()) {
+            if (frame.dirty) {
+                dirtyPages.add(frame.pageNumber);
+            }
+        }
+        dirtyPages.sort(null);
+        return dirtyPages;
+    }
+
+    /**
+     * Writes frame of the page, when it is still in the pool and dirty, after the write of the page
+     * which is in progress.
+     */
+    void flush(int pageNumber) throws IOException {
+        Frame frame;
+        ByteBuffer content;
+        synchronized (this) {
+            while ((frame = resident(pageNumber)) != null && frame.writing) {
+                awaitFrame();
+            }
+            if (frame == null || !frame.dirty) {
+                return;
+            }
+            content = startWrite(frame);
+        }
+        write(frame, content);
+    }
+
+    synchronized long dirtyBytes() {
+        return (long) dirtyFrames * pageSize;
+    }
+
+    /**
+     * Whether the page is in the pool, loaded or being loaded.
+     */
+    synchronized boolean contains(int pageNumber) {
+        return resident(pageNumber) != null;
+    }
+
+    synchronized int size() {
+        return inQueue.size() + mainQueue.size();
+    }
+
+    synchronized int pinned() {
+        int pinned = 0;
+        for (var frame : inQueue.values()) {
+            pinned += frame.pinCount > 0 ? 1 : 0;
+        }
+        for (var frame : mainQueue.values()) {
+            pinned += frame.pinCount > 0 ? 1 : 0;
+        }
+        return pinned;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    private Frame resident(int pageNumber) {
+        Frame frame = mainQueue.get(pageNumber);
+        return frame != null ? frame : inQueue.get(pageNumber);
+    }
+
+    /**
+     * @return free frame, dirty frame which has to be written before it is evicted, or null when all frames are pinned
+     */
+    private Frame freeFrame() {
+        if (!freeFrames.isEmpty()) {
+            return freeFrames.pop();
+        }
+        if (allocatedFrames < capacity) {
+            return allocateFrame();
+        }
+        Frame victim = inQueue.size() > inCapacity ? eldestUnpinned(inQueue) : null;
+        if (victim == null) {
+            victim = eldestUnpinned(mainQueue);
+        }
+        if (victim == null) {
+            victim = eldestUnpinned(inQueue);
+        }
+        if (victim != null && !victim.dirty) {
+            evict(victim);
+        }
+        return victim;
+    }
+
+    private Frame allocateFrame() {
+        int slabIndex = allocatedFrames % framesPerSlab;
+        if (slabIndex == 0) {
+            slab = ByteBuffer.allocateDirect(Math.min(framesPerSlab, capacity - allocatedFrames) * pageSize);
+        }
+        ByteBuffer frameBuffer = slab.duplicate();
+        frameBuffer.position(slabIndex * pageSize);
+        frameBuffer.limit(slabIndex * pageSize + pageSize);
+        allocatedFrames++;
+        return new Frame(frameBuffer.slice());
+    }
+
+    private static Frame eldestUnpinned(LinkedHashMap<Integer, Frame> queue) {
+        for (Frame frame : queue.values()) {
+            if (frame.pinCount == 0) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the frame from its queue, page evicted from the FIFO queue is remembered.
+     */
+    private void evict(Frame frame) {
+        if (mainQueue.remove(frame.pageNumber, frame)) {
+            return;
+        }
+        inQueue.remove(frame.pageNumber, frame);
+        ghostQueue.put(frame.pageNumber, Boolean.TRUE);
+        if (ghostQueue.size() > ghostCapacity) {
+            ghostQueue.remove(ghostQueue.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Pins the dirty frame for its write and marks it clean, changes made during the write make it dirty again.
+     *
+     * @return copy of the frame to write
+     */
+    private ByteBuffer startWrite(Frame frame) {
+        frame.pinCount++;
+        frame.writing = true;
+        clean(frame);
+        ByteBuffer content = ByteBuffer.allocate(pageSize);
+        content.put(frame.buffer()).flip();
+        return content;
+    }
+
+    /**
+     * Writes the copy taken by {@link #startWrite(Frame)} outside of the monitor, frame stays dirty
+     * when the write fails.
+     */
+    private void write(Frame frame, ByteBuffer content) throws IOException {
+        boolean written = false;
+        try {
+            writer.write(frame.pageNumber, content);
+            written = true;
+        } finally {
+            synchronized (this) {
+                frame.writing = false;
+                if (!written && !frame.discarded) {
+                    markDirty(frame);
+                }
+                unpin(frame);
+                notifyAll();
+            }
+        }
+    }
+
+    private void release(Frame frame) {
+        if (!mainQueue.remove(frame.pageNumber, frame)) {
+            inQueue.remove(frame.pageNumber, frame);
+        }
+        frame.pinCount = 0;
+        frame.loaded = false;
+        clean(frame);
+        freeFrames.push(frame);
+    }
+
+    private void clean(Frame frame) {
+        if (frame.dirty) {
+            frame.dirty = false;
+            dirtyFrames--;
+        }
+    }
+
+    private void awaitFrame() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for page load or write");
+        }
+    }
+
+    @FunctionalInterface
+    interface PageReader {
+        void read(int pageNumber, ByteBuffer buffer) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface PageWriter {
+        void write(int pageNumber, ByteBuffer buffer) throws IOException;
+    }
+
+    /**
+     * Off-heap buffer holding a single page, with its pin count and clean/dirty state guarded by the pool.
+     */
+    static final class Frame {
+        private final ByteBuffer buffer;
+        private int pageNumber;
+        private int pinCount;
+        private boolean loaded;
+        private boolean dirty;
+        private boolean writing;
+        private boolean discarded;
+
+        private Frame(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * New view of the frame, with its own position and limit.
+         */
+        ByteBuffer buffer() {
+            ByteBuffer view = buffer.duplicate();
+            view.clear();
+            return view;
+        }
+
+        int pageNumber() {
+            return pageNumber;
+        }
+
+        @Override
+        public String toString() {
+            return "Frame{" +
+                    "pageNumber=" + pageNumber +
+                    ", pinCount=" + pinCount +
+                    ", dirty=" + dirty +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.IntPredicate;
+
+/**
+ * Pages read and written with positional {@link FileChannel} calls, single syscall and copy per page.
+ */
+final class ChannelPageFile implements PageFile {
+    private final FileChannel fileChannel;
+    private final int pageSize;
+
+    ChannelPageFile(FileChannel fileChannel, int pageSize) {
+        this.fileChannel = fileChannel;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return fileChannel.size();
+    }
+
+    @Override
+    public ByteBuffer read(int pageNumber, ByteBuffer buffer) throws IOException {
+        fileChannel.read(buffer, fileOffset(pageNumber));
+        return buffer;
+    }
+
+    /**
+     * Single positional read, repeated only when the channel returns less, stale pages are read as well.
+     */
+    @Override
+    public void readPages(int firstPageNumber, ByteBuffer buffer, IntPredicate stale) throws IOException {
+        long position = fileOffset(firstPageNumber);
+        while (buffer.hasRemaining()) {
+            int read = fileChannel.read(buffer, position);
+            if (read < 0) {
+                return;
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void write(int pageNumber, ByteBuffer buffer) throws IOException {
+        fileChannel.write(buffer, fileOffset(pageNumber));
+    }
+
+    /**
+     * Single gathering write, as long as the channel accepts all buffers at once.
+     */
+    @Override
+    public void write(int firstPageNumber, ByteBuffer[] buffers) throws IOException {
+        long remaining = 0;
+        for (var buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        fileChannel.position(fileOffset(firstPageNumber));
+        while (remaining > 0) {
+            remaining -= fileChannel.write(buffers);
+        }
+    }
+
+    @Override
+    public void truncate(long size) throws IOException {
+        fileChannel.truncate(size);
+    }
+
+    @Override
+    public void force() throws IOException {
+        fileChannel.force(false);
+    }
+
+    @Override
+    public boolean inPlace() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    private long fileOffset(int pageNumber) {
+        return (pageNumber - 1L) * pageSize;
+    }
+}
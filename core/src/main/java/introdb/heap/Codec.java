@@ -0,0 +1,20 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Converts keys or values of {@link Entry} to bytes stored in {@link EntryRecord} and back.
+ * <p>
+ * Chosen per store with {@link HeapFileOptions#withKeyCodec(Codec)} and {@link HeapFileOptions#withValueCodec(Codec)},
+ * built-in implementations are in {@link Codecs}.
+ *
+ * @param <T> type of encoded objects
+ */
+interface Codec<T extends Serializable> {
+
+    byte[] encode(T object) throws IOException;
+
+    T decode(byte[] bytes) throws IOException, ClassNotFoundException;
+
+}
@@ -0,0 +1,188 @@
+package introdb.heap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Built-in {@link Codec}s. Java serialization works for any key or value and is the default,
+ * the others store only the bytes of the object, without class descriptors.
+ */
+final class Codecs {
+
+    static final Codec<Serializable> JAVA_SERIALIZATION = new JavaSerializationCodec();
+    static final Codec<byte[]> BYTE_ARRAY = new ByteArrayCodec();
+    static final Codec<String> STRING = new StringCodec();
+    static final Codec<Integer> INTEGER = new IntegerCodec();
+    static final Codec<Long> LONG = new LongCodec();
+    static final Codec<UUID> UUID = new UUIDCodec();
+
+    private Codecs() {
+    }
+
+    /**
+     * Codec which encodes every object into the same number of bytes, so it can encode into a reused array.
+     */
+    interface FixedSizeCodec<T extends Serializable> extends Codec<T> {
+
+        int size();
+
+        void encode(T object, byte[] bytes);
+
+        @Override
+        default byte[] encode(T object) {
+            byte[] bytes = new byte[size()];
+            encode(object, bytes);
+            return bytes;
+        }
+    }
+
+    private static void putLong(long value, byte[] bytes, int offset) {
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= Byte.SIZE;
+        }
+    }
+
+    private static final class JavaSerializationCodec implements Codec<Serializable> {
+
+        @Override
+        public byte[] encode(Serializable object) throws IOException {
+            try (var outStr = new ByteArrayOutputStream();
+                 var objOutStr = new ObjectOutputStream(outStr)) {
+                objOutStr.writeObject(object);
+                return outStr.toByteArray();
+            }
+        }
+
+        @Override
+        public Serializable decode(byte[] bytes) throws IOException, ClassNotFoundException {
+            try (var inStr = new ByteArrayInputStream(bytes);
+                 var objInStr = new ObjectInputStream(inStr)) {
+                return (Serializable) objInStr.readObject();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "JavaSerializationCodec";
+        }
+    }
+
+    private static final class ByteArrayCodec implements Codec<byte[]> {
+
+        @Override
+        public byte[] encode(byte[] object) {
+            return object.clone();
+        }
+
+        @Override
+        public byte[] decode(byte[] bytes) {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "ByteArrayCodec";
+        }
+    }
+
+    private static final class StringCodec implements Codec<String> {
+
+        @Override
+        public byte[] encode(String object) {
+            return object.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return "StringCodec";
+        }
+    }
+
+    private static final class IntegerCodec implements FixedSizeCodec<Integer> {
+
+        @Override
+        public int size() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void encode(Integer object, byte[] bytes) {
+            int value = object;
+            bytes[0] = (byte) (value >>> 24);
+            bytes[1] = (byte) (value >>> 16);
+            bytes[2] = (byte) (value >>> 8);
+            bytes[3] = (byte) value;
+        }
+
+        @Override
+        public Integer decode(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getInt();
+        }
+
+        @Override
+        public String toString() {
+            return "IntegerCodec";
+        }
+    }
+
+    private static final class LongCodec implements FixedSizeCodec<Long> {
+
+        @Override
+        public int size() {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void encode(Long object, byte[] bytes) {
+            putLong(object, bytes, 0);
+        }
+
+        @Override
+        public Long decode(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getLong();
+        }
+
+        @Override
+        public String toString() {
+            return "LongCodec";
+        }
+    }
+
+    private static final class UUIDCodec implements FixedSizeCodec<UUID> {
+
+        @Override
+        public int size() {
+            return 2 * Long.BYTES;
+        }
+
+        @Override
+        public void encode(UUID object, byte[] bytes) {
+            putLong(object.getMostSignificantBits(), bytes, 0);
+            putLong(object.getLeastSignificantBits(), bytes, Long.BYTES);
+        }
+
+        @Override
+        public UUID decode(byte[] bytes) {
+            var buffer = ByteBuffer.wrap(bytes);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        }
+
+        @Override
+        public String toString() {
+            return "UUIDCodec";
+        }
+    }
+}
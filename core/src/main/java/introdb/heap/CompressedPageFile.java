@@ -0,0 +1,428 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.IntPredicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pages compressed with {@link Deflater}, each stored in its own extent of the data file, found through the page
+ * table kept in a separate file, so a page is still read with a single positional read. Only compressed bytes
+ * go to and from the disk, {@link BufferPool} and readers of pages work with whole uncompressed pages.
+ * <p>
+ * Byte structure of an entry of the page table, entry of page n starts at (n - 1) * {@link #ENTRY_BYTES}:
+ * - offset of the extent in the data file as a long
+ * - size of the compressed page as an int, 0 for page which was never written, page size for page which
+ *   did not compress and is stored as it is
+ * - size of the extent as an int, multiple of {@link #EXTENT_ALIGNMENT}
+ * <p>
+ * Extents are never written in place. Changed page goes to a free extent and is published with a single write
+ * of its table entry, so a reader sees either the previous or the new content of the page. The extent left behind
+ * is still referenced by the page table on the disk until the table is forced, so it becomes free only after
+ * the next {@link #force()}, which also happens once extents left behind take a quarter of the data file.
+ * A reader which still reads a freed extent reads a stale page, see {@link #readPages(int, ByteBuffer, IntPredicate)}.
+ * Gaps between extents of an existing file are free when it is opened.
+ */
+final class CompressedPageFile implements PageFile {
+    static final int ENTRY_BYTES = 16;
+    static final int EXTENT_ALIGNMENT = 256;
+    static final int MIN_LEFT_BYTES = 16 * EXTENT_ALIGNMENT;
+
+    private final FileChannel dataChannel;
+    private final FileChannel tableChannel;
+    private final int pageSize;
+    private final int level;
+    private final byte[] emptyPage;
+    private final ConcurrentLinkedDeque<Compression> idleCompressions = new ConcurrentLinkedDeque<>();
+    private final TreeMap<Integer, ArrayDeque<Long>> freeExtents = new TreeMap<>();
+    private final ArrayList<long[]> leftExtents = new ArrayList<>();
+    private long leftBytes;
+    private long[] offsets;
+    private int[] lengths;
+    private int[] capacities;
+    private int nrOfPages;
+    private long dataEnd;
+
+    /**
+     * @param dataChannel  extents of compressed pages
+     * @param tableChannel page table
+     * @param level        compression level of {@link Deflater}
+     */
+    CompressedPageFile(FileChannel dataChannel, FileChannel tableChannel, int pageSize, int level) throws IOException {
+        if (dataChannel.size() > 0 && tableChannel.size() == 0) {
+            throw new IllegalStateException("File without page table does not hold compressed pages");
+        }
+        this.dataChannel = dataChannel;
+        this.tableChannel = tableChannel;
+        this.pageSize = pageSize;
+        this.level = level;
+        this.emptyPage = new byte[pageSize];
+        readTable();
+    }
+
+    /**
+     * Size of the uncompressed pages.
+     */
+    @Override
+    public synchronized long size() {
+        return (long) nrOfPages * pageSize;
+    }
+
+    @Override
+    public ByteBuffer read(int pageNumber, ByteBuffer buffer) throws IOException {
+        try {
+            readPage(pageNumber, buffer);
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("Page %d is corrupted", pageNumber), e);
+        }
+        return buffer;
+    }
+
+    /**
+     * Pages are read and decompressed one by one, stale pages are skipped, pages which were never written are zeros.
+     */
+    @Override
+    public void readPages(int firstPageNumber, ByteBuffer buffer, IntPredicate stale) throws IOException {
+        int lastPage;
+        synchronized (this) {
+            lastPage = nrOfPages;
+        }
+        for (int pageNumber = firstPageNumber; pageNumber <= lastPage && buffer.remaining() >= pageSize; pageNumber++) {
+            var page = buffer.slice();
+            page.limit(pageSize);
+            buffer.position(buffer.position() + pageSize);
+            if (stale.test(pageNumber)) {
+                continue;
+            }
+            try {
+                if (!readPage(pageNumber, page)) {
+                    page.put(emptyPage);
+                }
+            } catch (DataFormatException e) {
+                if (!stale.test(pageNumber)) {
+                    throw new IOException(String.format("Page %d is corrupted", pageNumber), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(int pageNumber, ByteBuffer buffer) throws IOException {
+        var compression = acquire();
+        try {
+            int length = compression.compress(buffer);
+            int capacity = (length + EXTENT_ALIGNMENT - 1) / EXTENT_ALIGNMENT * EXTENT_ALIGNMENT;
+            long offset;
+            synchronized (this) {
+                ensureCapacity(pageNumber);
+                offset = allocate(capacity);
+            }
+            writeFully(dataChannel, compression.compressed(length), offset);
+            var entry = ByteBuffer.allocate(ENTRY_BYTES).putLong(offset).putInt(length).putInt(capacity);
+            long[] left;
+            synchronized (this) {
+                int index = pageNumber - 1;
+                left = lengths[index] > 0 ? new long[]{offsets[index], capacities[index]} : null;
+                offsets[index] = offset;
+                lengths[index] = length;
+                capacities[index] = capacity;
+                nrOfPages = Math.max(nrOfPages, pageNumber);
+            }
+            writeFully(tableChannel, entry.flip(), (long) (pageNumber - 1) * ENTRY_BYTES);
+            if (left != null && leave(left)) {
+                force();
+            }
+        } finally {
+            idleCompressions.push(compression);
+        }
+    }
+
+    /**
+     * Pages are compressed into extents of their own, so they are written one by one.
+     */
+    @Override
+    public void write(int firstPageNumber, ByteBuffer[] buffers) throws IOException {
+        for (int i = 0; i < buffers.length; i++) {
+            write(firstPageNumber + i, buffers[i]);
+        }
+    }
+
+    /**
+     * Drops pages past given size of uncompressed pages, the data file is cut off after the last extent
+     * of the remaining pages.
+     */
+    @Override
+    public void truncate(long size) throws IOException {
+        long tableSize;
+        long extentsEnd = 0;
+        synchronized (this) {
+            int remainingPages = (int) Math.min(nrOfPages, size / pageSize);
+            for (int index = 0; index < remainingPages; index++) {
+                extentsEnd = Math.max(extentsEnd, offsets[index] + capacities[index]);
+            }
+            for (int index = remainingPages; index < nrOfPages; index++) {
+                if (lengths[index] > 0 && offsets[index] < extentsEnd) {
+                    leftExtents.add(new long[]{offsets[index], capacities[index]});
+                    leftBytes += capacities[index];
+                }
+                lengths[index] = 0;
+                capacities[index] = 0;
+            }
+            nrOfPages = remainingPages;
+            long end = extentsEnd;
+            freeExtents.values().forEach(extents -> extents.removeIf(offset -> offset >= end));
+            freeExtents.values().removeIf(ArrayDeque::isEmpty);
+            leftExtents.removeIf(extent -> extent[0] >= end);
+            leftBytes = leftExtents.stream().mapToLong(extent -> extent[1]).sum();
+            dataEnd = extentsEnd;
+            tableSize = (long) nrOfPages * ENTRY_BYTES;
+        }
+        tableChannel.truncate(tableSize);
+        dataChannel.truncate(extentsEnd);
+    }
+
+    /**
+     * Extents are forced before the page table, which points to them. Extents left behind by pages written
+     * before the table is forced are free afterwards, they stay left behind when forcing fails.
+     */
+    @Override
+    public void force() throws IOException {
+        long[][] left;
+        synchronized (this) {
+            left = leftExtents.toArray(new long[0][]);
+            leftExtents.clear();
+            leftBytes = 0;
+        }
+        boolean forced = false;
+        try {
+            dataChannel.force(false);
+            tableChannel.force(false);
+            forced = true;
+        } finally {
+            synchronized (this) {
+                for (var extent : left) {
+                    if (forced) {
+                        free(extent[0], (int) extent[1]);
+                    } else {
+                        leftExtents.add(extent);
+                        leftBytes += extent[1];
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean inPlace() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Compression compression;
+        while ((compression = idleCompressions.poll()) != null) {
+            compression.end();
+        }
+        try {
+            dataChannel.close();
+        } finally {
+            tableChannel.close();
+        }
+    }
+
+    /**
+     * @return false, when the page was never written and the buffer is left untouched
+     * @throws DataFormatException when the page does not decompress, it may have been read while its extent was reused
+     */
+    private boolean readPage(int pageNumber, ByteBuffer buffer) throws IOException, DataFormatException {
+        long offset;
+        int length;
+        synchronized (this) {
+            if (pageNumber < 1 || pageNumber > nrOfPages || lengths[pageNumber - 1] == 0) {
+                return false;
+            }
+            offset = offsets[pageNumber - 1];
+            length = lengths[pageNumber - 1];
+        }
+        var compression = acquire();
+        try {
+            var compressed = compression.compressed(length);
+            while (compressed.hasRemaining()) {
+                if (dataChannel.read(compressed, offset + compressed.position()) < 0) {
+                    throw new IOException(String.format("Extent of page %d is past the end of the file", pageNumber));
+                }
+            }
+            compression.decompress(length, buffer);
+            return true;
+        } finally {
+            idleCompressions.push(compression);
+        }
+    }
+
+    /**
+     * Extents which no page points to are free.
+     */
+    private void readTable() throws IOException {
+        int nrOfEntries = (int) (tableChannel.size() / ENTRY_BYTES);
+        var table = ByteBuffer.allocate(nrOfEntries * ENTRY_BYTES);
+        while (table.hasRemaining()) {
+            if (tableChannel.read(table, table.position()) < 0) {
+                throw new IOException("Page table is shorter than its size");
+            }
+        }
+        table.flip();
+        offsets = new long[Math.max(nrOfEntries, 16)];
+        lengths = new int[offsets.length];
+        capacities = new int[offsets.length];
+        var extents = new ArrayList<long[]>();
+        for (int index = 0; index < nrOfEntries; index++) {
+            offsets[index] = table.getLong();
+            lengths[index] = table.getInt();
+            capacities[index] = table.getInt();
+            if (lengths[index] > 0) {
+                nrOfPages = index + 1;
+                extents.add(new long[]{offsets[index], capacities[index]});
+            } else {
+                capacities[index] = 0;
+            }
+        }
+        extents.sort((first, second) -> Long.compare(first[0], second[0]));
+        for (var extent : extents) {
+            if (extent[0] > dataEnd) {
+                free(dataEnd, (int) (extent[0] - dataEnd));
+            }
+            dataEnd = Math.max(dataEnd, extent[0] + extent[1]);
+        }
+    }
+
+    /**
+     * Takes the smallest free extent which is big enough, the rest of it stays free, or extends the data file.
+     */
+    private long allocate(int capacity) {
+        var free = freeExtents.ceilingEntry(capacity);
+        if (free == null) {
+            long offset = dataEnd;
+            dataEnd += capacity;
+            return offset;
+        }
+        long offset = free.getValue().poll();
+        if (free.getValue().isEmpty()) {
+            freeExtents.remove(free.getKey());
+        }
+        if (free.getKey() > capacity) {
+            free(offset + capacity, free.getKey() - capacity);
+        }
+        return offset;
+    }
+
+    /**
+     * @return true, when extents left behind take enough of the data file to force it
+     */
+    private synchronized boolean leave(long[] extent) {
+        leftExtents.add(extent);
+        leftBytes += extent[1];
+        return leftBytes >= Math.max(MIN_LEFT_BYTES, dataEnd / 4);
+    }
+
+    private void free(long offset, int capacity) {
+        freeExtents.computeIfAbsent(capacity, size -> new ArrayDeque<>()).add(offset);
+    }
+
+    private void ensureCapacity(int pageNumber) {
+        if (pageNumber > offsets.length) {
+            int size = Math.max(pageNumber, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, size);
+            lengths = Arrays.copyOf(lengths, size);
+            capacities = Arrays.copyOf(capacities, size);
+        }
+    }
+
+    private Compression acquire() {
+        var compression = idleCompressions.poll();
+        return compression != null ? compression : new Compression(pageSize, level);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Compressor, decompressor and buffers used by a single thread at a time.
+     */
+    private static final class Compression {
+        private final Deflater deflater;
+        private final Inflater inflater = new Inflater();
+        private final byte[] page;
+        private final byte[] compressed;
+
+        private Compression(int pageSize, int level) {
+            this.deflater = new Deflater(level);
+            this.page = new byte[pageSize];
+            this.compressed = new byte[pageSize];
+        }
+
+        /**
+         * @return size of the compressed page, see {@link #compressed(int)}, or page size when it does not compress
+         */
+        private int compress(ByteBuffer buffer) {
+            int size = Math.min(buffer.remaining(), page.length);
+            buffer.duplicate().get(page, 0, size);
+            Arrays.fill(page, size, page.length, (byte) 0);
+            deflater.reset();
+            deflater.setInput(page);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished() && length < compressed.length) {
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            if (deflater.finished() && length < page.length) {
+                return length;
+            }
+            System.arraycopy(page, 0, compressed, 0, page.length);
+            return page.length;
+        }
+
+        private ByteBuffer compressed(int length) {
+            return ByteBuffer.wrap(compressed, 0, length);
+        }
+
+        /**
+         * Buffer is changed only when the whole page decompressed.
+         */
+        private void decompress(int length, ByteBuffer buffer) throws DataFormatException {
+            if (length == page.length) {
+                buffer.put(compressed, 0, length);
+                return;
+            }
+            inflater.reset();
+            inflater.setInput(compressed, 0, length);
+            int size = 0;
+            while (!inflater.finished() && size < page.length) {
+                int inflated = inflater.inflate(page, size, page.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (!inflater.finished() || size != page.length) {
+                throw new DataFormatException(String.format("Page inflated to %d bytes", size));
+            }
+            buffer.put(page);
+        }
+
+        private void end() {
+            deflater.end();
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Pair of {@link Codec}s used by a store for keys and values of its entries.
+ */
+final class EntryCodec {
+    static final EntryCodec DEFAULT = new EntryCodec(Codecs.JAVA_SERIALIZATION, Codecs.JAVA_SERIALIZATION);
+
+    private final Codec<Serializable> keyCodec;
+    private final Codec<Serializable> valueCodec;
+    private final Codecs.FixedSizeCodec<Serializable> fixedSizeKeyCodec;
+
+    @SuppressWarnings("unchecked")
+    EntryCodec(Codec<? extends Serializable> keyCodec, Codec<? extends Serializable> valueCodec) {
+        this.keyCodec = (Codec<Serializable>) keyCodec;
+        this.valueCodec = (Codec<Serializable>) valueCodec;
+        this.fixedSizeKeyCodec = keyCodec instanceof Codecs.FixedSizeCodec
+                ? (Codecs.FixedSizeCodec<Serializable>) keyCodec
+                : null;
+    }
+
+    byte[] encodeKey(Serializable key) throws IOException {
+        return keyCodec.encode(key);
+    }
+
+    /**
+     * Encodes key into given array when the key codec encodes keys of that size, see {@link Codecs.FixedSizeCodec}.
+     *
+     * @param reuse array to encode into, can be null
+     * @return given array or a new one
+     */
+    byte[] encodeKey(Serializable key, byte[] reuse) throws IOException {
+        if (fixedSizeKeyCodec == null) {
+            return keyCodec.encode(key);
+        }
+        if (reuse == null || reuse.length != fixedSizeKeyCodec.size()) {
+            reuse = new byte[fixedSizeKeyCodec.size()];
+        }
+        fixedSizeKeyCodec.encode(key, reuse);
+        return reuse;
+    }
+
+    byte[] encodeValue(Serializable value) throws IOException {
+        return valueCodec.encode(value);
+    }
+
+    Serializable decodeKey(byte[] bytes) throws IOException, ClassNotFoundException {
+        return keyCodec.decode(bytes);
+    }
+
+    Serializable decodeValue(byte[] bytes) throws IOException, ClassNotFoundException {
+        return valueCodec.decode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "EntryCodec{" +
+                "keyCodec=" + keyCodec +
+                ", valueCodec=" + valueCodec +
+                '}';
+    }
+}
@@ -1,6 +1,7 @@
 package introdb.heap;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
@@ -8,24 +9,14 @@ import java.util.Objects;
 /**
  * Physical representation of {@link Entry} in {@link UnorderedHeapFile}.
  * <p>
- * Byte structure:
- * - serialized bytes of {@link Entry#value()}
- * - serialized bytes of {@link Entry#key()}
- * - size of {@link Entry#value()} as a short number
- * - size of {@link Entry#key()} as a short number
- * - deleted boolean flag as a byte
- * - end marker equal to {@link #END_MARKER}
+ * Byte structure, in data area of {@link RecordPage}:
+ * - bytes of {@link Entry#value()} encoded by value {@link Codec}
+ * - bytes of {@link Entry#key()} encoded by key {@link Codec}
+ * <p>
+ * Sizes, hash of the key and deleted flag are kept in the slot of the record, so a record takes
+ * {@link RecordPage#SLOT_BYTES} more than its data.
  */
 final class EntryRecord {
-    private static final int END_MARKER_BYTES = 1;
-    private static final int DELETED_FLAG_BYTES = 1;
-    private static final int KEY_SIZE_BYTES = (Short.SIZE / Byte.SIZE);
-    private static final int VALUE_SIZE_BYTES = (Short.SIZE / Byte.SIZE);
-    private static final int META_DATA_BYTES = END_MARKER_BYTES + DELETED_FLAG_BYTES + KEY_SIZE_BYTES + VALUE_SIZE_BYTES;
-    private static final byte DELETED_TRUE = 1;
-    private static final byte DELETED_FALSE = 0;
-    static final byte END_MARKER = (byte) 255;
-    private static final int END_MARKER_NOT_FOUND_POSITION = -1;
 
     private final boolean deleted;
     private final byte[] keyBytes;
@@ -47,8 +38,20 @@ final class EntryRecord {
         return entry;
     }
 
+    byte[] keyBytes() {
+        return keyBytes;
+    }
+
+    byte[] valueBytes() {
+        return valueBytes;
+    }
+
     int recordSize() {
-        return META_DATA_BYTES + keyBytes.length + valueBytes.length;
+        return RecordPage.SLOT_BYTES + dataSize();
+    }
+
+    int dataSize() {
+        return keyBytes.length + valueBytes.length;
     }
 
     EntryRecord toDeleted() {
@@ -77,129 +80,115 @@ final class EntryRecord {
                 '}';
     }
 
-    void writeToBuffer(ByteBuffer buffer, int position) {
-        for (byte valueByte : valueBytes) {
-            buffer.put(position++, valueByte);
-        }
-        for (byte keyByte : keyBytes) {
-            buffer.put(position++, keyByte);
-        }
-        buffer.putShort(position, (short) valueBytes.length)
-                .putShort(position + VALUE_SIZE_BYTES, (short) keyBytes.length)
-                .put(position + VALUE_SIZE_BYTES + KEY_SIZE_BYTES, deleted ? DELETED_TRUE : DELETED_FALSE)
-                .put(position + VALUE_SIZE_BYTES + KEY_SIZE_BYTES + DELETED_FLAG_BYTES, END_MARKER);
-    }
-
     static EntryRecord fromEntry(Entry entry) throws IOException {
-        byte[] keyBytes = serialize(entry.key());
-        byte[] valueBytes = serialize(entry.value());
-        return new EntryRecord(false, keyBytes, valueBytes, entry);
-    }
-
-    static byte[] keyToBytes(Serializable key) throws IOException {
-        return serialize(key);
-    }
-
-    private static byte[] serialize(Serializable obj) throws IOException {
-        try (var outStr = new ByteArrayOutputStream();
-             var objOutStr = new ObjectOutputStream(outStr)) {
-            objOutStr.writeObject(obj);
-            return outStr.toByteArray();
-        }
+        return fromEntry(entry, EntryCodec.DEFAULT);
     }
 
-    private static Serializable deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
-        try (var inStr = new ByteArrayInputStream(bytes);
-             var objInStr = new ObjectInputStream(inStr)) {
-            return (Serializable) objInStr.readObject();
-        }
+    static EntryRecord fromEntry(Entry entry, EntryCodec codec) throws IOException {
+        byte[] keyBytes = codec.encodeKey(entry.key());
+        byte[] valueBytes = codec.encodeValue(entry.value());
+        return new EntryRecord(false, keyBytes, valueBytes, entry);
     }
 
-    static int findRemainingSpace(ByteBuffer byteBuffer, int pageSize) {
-        int endMarkerPosition = findEndMarkerPosition(byteBuffer, pageSize);
-        if (endMarkerPosition == END_MARKER_NOT_FOUND_POSITION) {
-            return pageSize;
-        } else {
-            return pageSize - (endMarkerPosition + END_MARKER_BYTES);
-        }
+    /**
+     * Record of already encoded key and value, it has no {@link Entry}.
+     */
+    static EntryRecord fromBytes(byte[] keyBytes, byte[] valueBytes) {
+        return new EntryRecord(false, keyBytes, valueBytes, null);
     }
 
-    private static int findEndMarkerPosition(ByteBuffer byteBuffer, int position) {
-        while (position > 0) {
-            position -= END_MARKER_BYTES;
-            byte nextByte = byteBuffer.get(position);
-            if (nextByte == END_MARKER) {
-                return position;
-            }
-        }
-        return END_MARKER_NOT_FOUND_POSITION;
+    static byte[] keyToBytes(Serializable key) throws IOException {
+        return keyToBytes(key, EntryCodec.DEFAULT);
     }
 
-    static PageRecord fromBuffer(ByteBuffer byteBuffer, int position) throws IOException, ClassNotFoundException {
-        PartialEntryRecord partialEntryRecord = partialFromBuffer(byteBuffer, position);
-        if (partialEntryRecord == null) {
-            return null;
-        } else {
-            return partialEntryRecord.toRecord();
-        }
+    static byte[] keyToBytes(Serializable key, EntryCodec codec) throws IOException {
+        return codec.encodeKey(key);
     }
 
-    static PartialEntryRecord partialFromBuffer(ByteBuffer byteBuffer, int position) {
-        int endMarkerPosition = findEndMarkerPosition(byteBuffer, position);
-        if (endMarkerPosition == END_MARKER_NOT_FOUND_POSITION) {
-            return null;
-        } else {
-            int offset = endMarkerPosition;
-            offset -= DELETED_FLAG_BYTES;
-            byte deletedFlag = byteBuffer.get(offset);
-            offset -= KEY_SIZE_BYTES;
-            short keySize = byteBuffer.getShort(offset);
-            offset -= VALUE_SIZE_BYTES;
-            short valueSize = byteBuffer.getShort(offset);
-            byte[] bufferBytes = byteBuffer.array();
-            byte[] keyBytes = Arrays.copyOfRange(bufferBytes, offset - keySize, offset);
-            offset -= keySize;
-            int pageOffset = offset - valueSize;
-            return PartialEntryRecord.fromBytes(keyBytes, valueSize, offset, bufferBytes, deletedFlag == DELETED_TRUE, pageOffset);
+    /**
+     * Copies bytes between absolute positions, buffer may be a direct one, e.g. a view of memory mapped file.
+     */
+    static byte[] copyOfRange(ByteBuffer byteBuffer, int from, int to) {
+        if (byteBuffer.hasArray()) {
+            int arrayOffset = byteBuffer.arrayOffset();
+            return Arrays.copyOfRange(byteBuffer.array(), arrayOffset + from, arrayOffset + to);
         }
+        byte[] bytes = new byte[to - from];
+        ByteBuffer source = byteBuffer.duplicate();
+        source.clear();
+        source.position(from);
+        source.get(bytes);
+        return bytes;
     }
 
     static final class PartialEntryRecord {
         private final byte[] keyBytes;
-        private final byte[] bufferBytes;
-        private final short valueSize;
+        private final ByteBuffer byteBuffer;
+        private final int valueSize;
         private final int offset;
         private final boolean deleted;
         private final int pageOffset;
+        private final int recordSize;
 
-        private PartialEntryRecord(byte[] keyBytes, short valueSize, int offset, byte[] bufferBytes, boolean deleted, int pageOffset) {
+        private PartialEntryRecord(byte[] keyBytes, int valueSize, int offset, ByteBuffer byteBuffer, boolean deleted, int pageOffset, int recordSize) {
             this.keyBytes = keyBytes;
             this.valueSize = valueSize;
             this.offset = offset;
-            this.bufferBytes = bufferBytes;
+            this.byteBuffer = byteBuffer;
             this.deleted = deleted;
             this.pageOffset = pageOffset;
+            this.recordSize = recordSize;
         }
 
         int pageOffset() {
             return pageOffset;
         }
 
-        static PartialEntryRecord fromBytes(byte[] keyBytes, short valueSize, int offset, byte[] bufferBytes, boolean deleted, int pageOffset) {
-            return new PartialEntryRecord(keyBytes, valueSize, offset, bufferBytes, deleted, pageOffset);
+        int recordSize() {
+            return recordSize;
+        }
+
+        byte[] keyBytes() {
+            return keyBytes;
+        }
+
+        boolean deleted() {
+            return deleted;
+        }
+
+        int valueSize() {
+            return valueSize;
+        }
+
+        /**
+         * Copy of encoded value bytes, without decoding them.
+         */
+        byte[] valueBytes() {
+            return copyOfRange(byteBuffer, offset - valueSize, offset);
+        }
+
+        Serializable value(EntryCodec codec) throws IOException, ClassNotFoundException {
+            return codec.decodeValue(valueBytes());
+        }
+
+        static PartialEntryRecord fromBytes(byte[] keyBytes, int valueSize, int offset, ByteBuffer byteBuffer, boolean deleted, int pageOffset, int recordSize) {
+            return new PartialEntryRecord(keyBytes, valueSize, offset, byteBuffer, deleted, pageOffset, recordSize);
         }
 
-        PageRecord toRecord() throws IOException, ClassNotFoundException {
-            byte[] valueBytes = Arrays.copyOfRange(bufferBytes, offset - valueSize, offset);
-            var key = deserialize(keyBytes);
-            var value = deserialize(valueBytes);
+        PageRecord toRecord(EntryCodec codec) throws IOException, ClassNotFoundException {
+            byte[] valueBytes = valueBytes();
+            var key = codec.decodeKey(keyBytes);
+            var value = codec.decodeValue(valueBytes);
             var entry = new Entry(key, value);
             var record = new EntryRecord(deleted, keyBytes, valueBytes, entry);
             return new PageRecord(record, pageOffset);
         }
 
-        boolean hasSameKey(byte[] keyBytes) {
-            return Arrays.equals(this.keyBytes, keyBytes);
+        /**
+         * Copies bytes of the record without deserialization, so the resulting record has no {@link Entry}.
+         */
+        EntryRecord toEntryRecord() {
+            return new EntryRecord(deleted, keyBytes, valueBytes(), null);
         }
 
         @Override
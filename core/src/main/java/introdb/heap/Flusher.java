@@ -0,0 +1,53 @@
+package introdb.heap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background flush of dirty pages of {@link UnorderedHeapFile} in write back mode, so pages do not stay dirty
+ * for longer than given interval when there are not enough writes to reach the dirty bytes threshold.
+ */
+final class Flusher implements Closeable {
+    private static final Logger LOG = Logger.getLogger("introdb.heap.flusher");
+
+    private final UnorderedHeapFile heapFile;
+    private final long intervalMillis;
+    private final ScheduledExecutorService executor;
+
+    Flusher(UnorderedHeapFile heapFile, long intervalMillis) {
+        this.heapFile = heapFile;
+        this.intervalMillis = intervalMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "introdb-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void start() {
+        executor.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush() {
+        try {
+            heapFile.flush();
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Flush of heap file failed", e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package introdb.heap;
+
+import java.util.Arrays;
+
+/**
+ * Tracks reclaimable bytes of every page, that is free space at the end of the page
+ * and space taken by records which are no longer live.
+ * <p>
+ * Similar to PostgreSQL's FSM, pages are leaves of a binary tree where every inner node keeps
+ * the maximum of its children, so page with enough room is found in logarithmic time.
+ * <p>
+ * Thread safe, guarded by its own monitor, as pages of {@link UnorderedHeapFile} are changed concurrently.
+ */
+final class FreeSpaceMap {
+    static final int NO_PAGE = 0;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] freeBytes;
+    private int[] deadBytes;
+    private int[] tree;
+    private int capacity;
+    private int nrOfPages;
+    private long totalDeadBytes;
+
+    FreeSpaceMap() {
+        this.capacity = INITIAL_CAPACITY;
+        this.freeBytes = new int[capacity];
+        this.deadBytes = new int[capacity];
+        this.tree = new int[2 * capacity];
+    }
+
+    /**
+     * Sets free space at the end of the page, leaving its dead bytes untouched.
+     */
+    synchronized void updateFreeBytes(int pageNumber, int bytes) {
+        ensureCapacity(pageNumber);
+        freeBytes[pageNumber - 1] = bytes;
+        updateTree(pageNumber);
+    }
+
+    synchronized void addDeadBytes(int pageNumber, int bytes) {
+        ensureCapacity(pageNumber);
+        deadBytes[pageNumber - 1] += bytes;
+        totalDeadBytes += bytes;
+        updateTree(pageNumber);
+    }
+
+    /**
+     * Called after page was compacted, all of its dead bytes became free.
+     */
+    synchronized void clearDeadBytes(int pageNumber) {
+        ensureCapacity(pageNumber);
+        totalDeadBytes -= deadBytes[pageNumber - 1];
+        deadBytes[pageNumber - 1] = 0;
+        updateTree(pageNumber);
+    }
+
+    synchronized int freeBytes(int pageNumber) {
+        return pageNumber <= nrOfPages ? freeBytes[pageNumber - 1] : 0;
+    }
+
+    synchronized int deadBytes(int pageNumber) {
+        return pageNumber <= nrOfPages ? deadBytes[pageNumber - 1] : 0;
+    }
+
+    synchronized long totalDeadBytes() {
+        return totalDeadBytes;
+    }
+
+    synchronized int nrOfPages() {
+        return nrOfPages;
+    }
+
+    /**
+     * Finds page with the lowest number which can fit given number of bytes, possibly after compaction.
+     *
+     * @return page number or {@link #NO_PAGE}, when there is no such page
+     */
+    synchronized int findPage(int requiredBytes) {
+        if (tree[1] < requiredBytes) {
+            return NO_PAGE;
+        }
+        int node = 1;
+        while (node < capacity) {
+            node = tree[2 * node] >= requiredBytes ? 2 * node : 2 * node + 1;
+        }
+        return node - capacity + 1;
+    }
+
+    /**
+     * Same as {@link #findPage(int)}, but only pages below given page number are taken into account.
+     */
+    synchronized int findPageBelow(int requiredBytes, int pageNumber) {
+        int found = findPage(requiredBytes);
+        return found < pageNumber ? found : NO_PAGE;
+    }
+
+    /**
+     * Forgets pages above given number, after they were cut off from the file.
+     */
+    synchronized void truncate(int nrOfPages) {
+        for (int page = nrOfPages + 1; page <= this.nrOfPages; page++) {
+            totalDeadBytes -= deadBytes[page - 1];
+            freeBytes[page - 1] = 0;
+            deadBytes[page - 1] = 0;
+            updateTree(page);
+        }
+        this.nrOfPages = Math.min(this.nrOfPages, nrOfPages);
+    }
+
+    private void updateTree(int pageNumber) {
+        int node = capacity + pageNumber - 1;
+        tree[node] = freeBytes[pageNumber - 1] + deadBytes[pageNumber - 1];
+        while (node > 1) {
+            node /= 2;
+            tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+    }
+
+    private void ensureCapacity(int pageNumber) {
+        if (pageNumber < 1) {
+            throw new IllegalArgumentException(String.format("Invalid page number %d", pageNumber));
+        }
+        if (pageNumber > capacity) {
+            int newCapacity = capacity;
+            while (newCapacity < pageNumber) {
+                newCapacity *= 2;
+            }
+            freeBytes = Arrays.copyOf(freeBytes, newCapacity);
+            deadBytes = Arrays.copyOf(deadBytes, newCapacity);
+            tree = new int[2 * newCapacity];
+            capacity = newCapacity;
+            for (int page = 1; page <= nrOfPages; page++) {
+                tree[capacity + page - 1] = freeBytes[page - 1] + deadBytes[page - 1];
+            }
+            for (int node = capacity - 1; node > 0; node--) {
+                tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+        nrOfPages = Math.max(nrOfPages, pageNumber);
+    }
+}
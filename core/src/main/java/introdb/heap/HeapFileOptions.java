@@ -0,0 +1,400 @@
+package introdb.heap;
+
+import java.io.Serializable;
+import java.util.zip.Deflater;
+
+/**
+ * Optional features of {@link UnorderedHeapFile}, everything is disabled by default.
+ * <p>
+ * Immutable, every {@code with} method returns changed copy.
+ */
+final class HeapFileOptions {
+    static final int DEFAULT_MAPPING_CHUNK_SIZE = 64 * 1024 * 1024;
+    static final long DEFAULT_BUFFER_POOL_SIZE = 16 * 1024 * 1024;
+    static final long DEFAULT_CHECKPOINT_BYTES = 64 * 1024 * 1024;
+    static final int DEFAULT_PAGE_FILTER_BYTES = 64;
+    static final int DEFAULT_SEARCH_CHUNK_PAGES = 256;
+    static final int DEFAULT_READAHEAD_BYTES = 256 * 1024;
+    private static final HeapFileOptions DEFAULTS = new HeapFileOptions();
+
+    private boolean keyIndex;
+    private boolean freeSpaceReuse;
+    private double vacuumDeadBytesRatio;
+    private long vacuumThrottleMillis;
+    private Codec<? extends Serializable> keyCodec = Codecs.JAVA_SERIALIZATION;
+    private Codec<? extends Serializable> valueCodec = Codecs.JAVA_SERIALIZATION;
+    private int mappingChunkSize;
+    private long bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE;
+    private long writeBackMaxDirtyBytes;
+    private long writeBackIntervalMillis;
+    private WriteAheadLog.Durability walDurability;
+    private long walSyncIntervalMillis;
+    private long walCheckpointBytes = DEFAULT_CHECKPOINT_BYTES;
+    private int pageFilterBytes;
+    private int searchParallelism;
+    private int searchChunkPages;
+    private int readaheadBytes;
+    private int compressionLevel;
+
+    private HeapFileOptions() {
+    }
+
+    private HeapFileOptions(HeapFileOptions copy) {
+        this.keyIndex = copy.keyIndex;
+        this.freeSpaceReuse = copy.freeSpaceReuse;
+        this.vacuumDeadBytesRatio = copy.vacuumDeadBytesRatio;
+        this.vacuumThrottleMillis = copy.vacuumThrottleMillis;
+        this.keyCodec = copy.keyCodec;
+        this.valueCodec = copy.valueCodec;
+        this.mappingChunkSize = copy.mappingChunkSize;
+        this.bufferPoolSize = copy.bufferPoolSize;
+        this.writeBackMaxDirtyBytes = copy.writeBackMaxDirtyBytes;
+        this.writeBackIntervalMillis = copy.writeBackIntervalMillis;
+        this.walDurability = copy.walDurability;
+        this.walSyncIntervalMillis = copy.walSyncIntervalMillis;
+        this.walCheckpointBytes = copy.walCheckpointBytes;
+        this.pageFilterBytes = copy.pageFilterBytes;
+        this.searchParallelism = copy.searchParallelism;
+        this.searchChunkPages = copy.searchChunkPages;
+        this.readaheadBytes = copy.readaheadBytes;
+        this.compressionLevel = copy.compressionLevel;
+    }
+
+    static HeapFileOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Keeps {@link KeyDirectory} in memory, so lookups go straight to the page holding the key.
+     */
+    HeapFileOptions withKeyIndex(boolean keyIndex) {
+        var options = new HeapFileOptions(this);
+        options.keyIndex = keyIndex;
+        return options;
+    }
+
+    /**
+     * Keeps {@link FreeSpaceMap}, so new records go to the first page with enough room instead of the last one.
+     * Requires key index, which tells where the superseded versions of the records are.
+     */
+    HeapFileOptions withFreeSpaceReuse(boolean freeSpaceReuse) {
+        var options = new HeapFileOptions(this);
+        options.freeSpaceReuse = freeSpaceReuse;
+        return options;
+    }
+
+    /**
+     * Runs {@link Vacuum} in background, whenever dead bytes take given part of the file.
+     * Requires free space reuse.
+     *
+     * @param deadBytesRatio part of the file taken by dead records, which triggers vacuum, between 0 and 1
+     * @param throttleMillis pause between pages processed by vacuum
+     */
+    HeapFileOptions withVacuum(double deadBytesRatio, long throttleMillis) {
+        var options = new HeapFileOptions(this);
+        options.vacuumDeadBytesRatio = deadBytesRatio;
+        options.vacuumThrottleMillis = throttleMillis;
+        return options;
+    }
+
+    /**
+     * Codec of keys, {@link Codecs#JAVA_SERIALIZATION} by default. Changing codec of existing file makes its keys unreadable.
+     */
+    HeapFileOptions withKeyCodec(Codec<? extends Serializable> keyCodec) {
+        var options = new HeapFileOptions(this);
+        options.keyCodec = keyCodec;
+        return options;
+    }
+
+    /**
+     * Codec of values, {@link Codecs#JAVA_SERIALIZATION} by default. Changing codec of existing file makes its values unreadable.
+     */
+    HeapFileOptions withValueCodec(Codec<? extends Serializable> valueCodec) {
+        var options = new HeapFileOptions(this);
+        options.valueCodec = valueCodec;
+        return options;
+    }
+
+    /**
+     * Accesses pages in place through {@link MappedPageFile}, instead of reading them with {@link java.nio.channels.FileChannel}.
+     *
+     * @param chunkSize size of a single mapped region, multiple of page size, e.g. {@link #DEFAULT_MAPPING_CHUNK_SIZE}
+     */
+    HeapFileOptions withMemoryMapping(int chunkSize) {
+        var options = new HeapFileOptions(this);
+        options.mappingChunkSize = chunkSize;
+        return options;
+    }
+
+    /**
+     * Budget of off-heap {@link BufferPool} in bytes, {@link #DEFAULT_BUFFER_POOL_SIZE} by default, 0 disables the pool.
+     */
+    HeapFileOptions withBufferPoolSize(long bufferPoolSize) {
+        var options = new HeapFileOptions(this);
+        options.bufferPoolSize = bufferPoolSize;
+        return options;
+    }
+
+    /**
+     * Keeps saved pages dirty in {@link BufferPool}, instead of writing them on every change. Dirty pages are written
+     * when they are evicted, on {@link UnorderedHeapFile#flush()}, when there are given number of dirty bytes,
+     * or by {@link Flusher} after given interval. Requires buffer pool.
+     *
+     * @param maxDirtyBytes  dirty bytes which trigger flush
+     * @param intervalMillis interval of background flush, 0 disables it
+     */
+    HeapFileOptions withWriteBack(long maxDirtyBytes, long intervalMillis) {
+        var options = new HeapFileOptions(this);
+        options.writeBackMaxDirtyBytes = maxDirtyBytes;
+        options.writeBackIntervalMillis = intervalMillis;
+        return options;
+    }
+
+    /**
+     * Logs puts and removes in {@link WriteAheadLog} next to the heap file, pages are kept dirty in {@link BufferPool}
+     * until the log is forced. Requires buffer pool.
+     *
+     * @param durability         when logged operation becomes durable
+     * @param syncIntervalMillis interval of background force in {@link WriteAheadLog.Durability#PERIODIC} mode
+     * @param checkpointBytes    size of the log which triggers checkpoint, e.g. {@link #DEFAULT_CHECKPOINT_BYTES}
+     */
+    HeapFileOptions withWriteAheadLog(WriteAheadLog.Durability durability, long syncIntervalMillis, long checkpointBytes) {
+        var options = new HeapFileOptions(this);
+        options.walDurability = durability;
+        options.walSyncIntervalMillis = syncIntervalMillis;
+        options.walCheckpointBytes = checkpointBytes;
+        return options;
+    }
+
+    /**
+     * Keeps {@link PageFilters} of keys of every page, so search for a key without key index skips pages
+     * which do not hold it. Not used with key index, which finds the page of a key directly.
+     * Either of them lets put replace the version of the key it finds, otherwise put only appends, see {@link Store#put(Entry)}.
+     *
+     * @param bytesPerPage size of filter of a single page, multiple of 8, e.g. {@link #DEFAULT_PAGE_FILTER_BYTES}
+     */
+    HeapFileOptions withPageFilters(int bytesPerPage) {
+        var options = new HeapFileOptions(this);
+        options.pageFilterBytes = bytesPerPage;
+        return options;
+    }
+
+    /**
+     * Searches chunks of pages for a key in parallel with {@link ParallelPageSearch}, when get finds a key
+     * without key index. Not used with key index, which finds the page of a key directly.
+     *
+     * @param parallelism number of search threads
+     * @param chunkPages  pages searched by a single task, e.g. {@link #DEFAULT_SEARCH_CHUNK_PAGES}
+     */
+    HeapFileOptions withParallelSearch(int parallelism, int chunkPages) {
+        var options = new HeapFileOptions(this);
+        options.searchParallelism = parallelism;
+        options.searchChunkPages = chunkPages;
+        return options;
+    }
+
+    /**
+     * Reads blocks of pages ahead with {@link Readahead}, when pages are read in order, on open and by streams
+     * of entries. Not used with memory mapping, which is read ahead by the operating system.
+     *
+     * @param maxBytes max size of a block, rounded down to whole pages, e.g. {@link #DEFAULT_READAHEAD_BYTES}
+     */
+    HeapFileOptions withReadahead(int maxBytes) {
+        var options = new HeapFileOptions(this);
+        options.readaheadBytes = maxBytes;
+        return options;
+    }
+
+    /**
+     * Stores pages compressed with {@link Deflater} in {@link CompressedPageFile}, with its page table
+     * next to the heap file. Not used with memory mapping, which accesses uncompressed pages in place.
+     * Changing it for existing file makes its pages unreadable.
+     *
+     * @param level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION},
+     *              0 disables compression
+     */
+    HeapFileOptions withPageCompression(int level) {
+        var options = new HeapFileOptions(this);
+        options.compressionLevel = level;
+        return options;
+    }
+
+    boolean keyIndex() {
+        return keyIndex;
+    }
+
+    boolean freeSpaceReuse() {
+        return freeSpaceReuse;
+    }
+
+    boolean vacuum() {
+        return vacuumDeadBytesRatio > 0;
+    }
+
+    double vacuumDeadBytesRatio() {
+        return vacuumDeadBytesRatio;
+    }
+
+    long vacuumThrottleMillis() {
+        return vacuumThrottleMillis;
+    }
+
+    Codec<? extends Serializable> keyCodec() {
+        return keyCodec;
+    }
+
+    Codec<? extends Serializable> valueCodec() {
+        return valueCodec;
+    }
+
+    boolean memoryMapping() {
+        return mappingChunkSize > 0;
+    }
+
+    int mappingChunkSize() {
+        return mappingChunkSize;
+    }
+
+    long bufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    boolean writeBack() {
+        return writeBackMaxDirtyBytes > 0;
+    }
+
+    long writeBackMaxDirtyBytes() {
+        return writeBackMaxDirtyBytes;
+    }
+
+    long writeBackIntervalMillis() {
+        return writeBackIntervalMillis;
+    }
+
+    boolean writeAheadLog() {
+        return walDurability != null;
+    }
+
+    WriteAheadLog.Durability walDurability() {
+        return walDurability;
+    }
+
+    long walSyncIntervalMillis() {
+        return walSyncIntervalMillis;
+    }
+
+    long walCheckpointBytes() {
+        return walCheckpointBytes;
+    }
+
+    boolean pageFilters() {
+        return pageFilterBytes > 0;
+    }
+
+    int pageFilterBytes() {
+        return pageFilterBytes;
+    }
+
+    boolean parallelSearch() {
+        return searchParallelism > 0;
+    }
+
+    int searchParallelism() {
+        return searchParallelism;
+    }
+
+    int searchChunkPages() {
+        return searchChunkPages;
+    }
+
+    int readaheadBytes() {
+        return readaheadBytes;
+    }
+
+    boolean pageCompression() {
+        return compressionLevel > 0;
+    }
+
+    int compressionLevel() {
+        return compressionLevel;
+    }
+
+    void validate() {
+        if (freeSpaceReuse && !keyIndex) {
+            throw new IllegalArgumentException("Free space reuse requires key index");
+        }
+        if (vacuumDeadBytesRatio < 0 || vacuumDeadBytesRatio > 1 || vacuumThrottleMillis < 0) {
+            throw new IllegalArgumentException(String.format("Invalid vacuum dead bytes ratio: %f or throttle: %d",
+                    vacuumDeadBytesRatio, vacuumThrottleMillis));
+        }
+        if (vacuum() && !freeSpaceReuse) {
+            throw new IllegalArgumentException("Vacuum requires free space reuse");
+        }
+        if (mappingChunkSize < 0) {
+            throw new IllegalArgumentException(String.format("Invalid mapping chunk size: %d", mappingChunkSize));
+        }
+        if (bufferPoolSize < 0) {
+            throw new IllegalArgumentException(String.format("Invalid buffer pool size: %d", bufferPoolSize));
+        }
+        if (writeBackMaxDirtyBytes < 0 || writeBackIntervalMillis < 0) {
+            throw new IllegalArgumentException(String.format("Invalid write back max dirty bytes: %d or interval: %d",
+                    writeBackMaxDirtyBytes, writeBackIntervalMillis));
+        }
+        if (writeBack() && (bufferPoolSize == 0 || memoryMapping())) {
+            throw new IllegalArgumentException("Write back requires buffer pool, which is not used with memory mapping");
+        }
+        if (writeAheadLog() && (bufferPoolSize == 0 || memoryMapping())) {
+            throw new IllegalArgumentException("Write ahead log requires buffer pool, which is not used with memory mapping");
+        }
+        if (walCheckpointBytes <= 0 || (walDurability == WriteAheadLog.Durability.PERIODIC && walSyncIntervalMillis <= 0)) {
+            throw new IllegalArgumentException(String.format("Invalid write ahead log checkpoint bytes: %d or sync interval: %d",
+                    walCheckpointBytes, walSyncIntervalMillis));
+        }
+        if (pageFilterBytes < 0 || pageFilterBytes % Long.BYTES != 0) {
+            throw new IllegalArgumentException(String.format("Invalid page filter size: %d", pageFilterBytes));
+        }
+        if (pageFilters() && keyIndex) {
+            throw new IllegalArgumentException("Page filters are not used with key index");
+        }
+        if (searchParallelism < 0 || (parallelSearch() && searchChunkPages <= 0)) {
+            throw new IllegalArgumentException(String.format("Invalid search parallelism: %d or chunk pages: %d",
+                    searchParallelism, searchChunkPages));
+        }
+        if (readaheadBytes < 0) {
+            throw new IllegalArgumentException(String.format("Invalid readahead size: %d", readaheadBytes));
+        }
+        if (parallelSearch() && keyIndex) {
+            throw new IllegalArgumentException("Parallel search is not used with key index");
+        }
+        if (compressionLevel < 0 || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException(String.format("Invalid compression level: %d", compressionLevel));
+        }
+        if (pageCompression() && memoryMapping()) {
+            throw new IllegalArgumentException("Page compression is not used with memory mapping");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HeapFileOptions{" +
+                "keyIndex=" + keyIndex +
+                ", freeSpaceReuse=" + freeSpaceReuse +
+                ", vacuumDeadBytesRatio=" + vacuumDeadBytesRatio +
+                ", vacuumThrottleMillis=" + vacuumThrottleMillis +
+                ", keyCodec=" + keyCodec +
+                ", valueCodec=" + valueCodec +
+                ", mappingChunkSize=" + mappingChunkSize +
+                ", bufferPoolSize=" + bufferPoolSize +
+                ", writeBackMaxDirtyBytes=" + writeBackMaxDirtyBytes +
+                ", writeBackIntervalMillis=" + writeBackIntervalMillis +
+                ", walDurability=" + walDurability +
+                ", walSyncIntervalMillis=" + walSyncIntervalMillis +
+                ", walCheckpointBytes=" + walCheckpointBytes +
+                ", pageFilterBytes=" + pageFilterBytes +
+                ", searchParallelism=" + searchParallelism +
+                ", searchChunkPages=" + searchChunkPages +
+                ", readaheadBytes=" + readaheadBytes +
+                ", compressionLevel=" + compressionLevel +
+                '}';
+    }
+}
@@ -0,0 +1,74 @@
+package introdb.heap;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory hash index from serialized key bytes to {@link RecordLocation} of the newest live record.
+ * <p>
+ * Thread safe, location of a key is changed under the latch of the page it points to, see {@link UnorderedHeapFile}.
+ */
+final class KeyDirectory {
+    private final ConcurrentHashMap<Key, RecordLocation> keysToLocations;
+
+    KeyDirectory() {
+        this.keysToLocations = new ConcurrentHashMap<>();
+    }
+
+    RecordLocation get(byte[] keyBytes) {
+        return keysToLocations.get(new Key(keyBytes));
+    }
+
+    /**
+     * @return previous location of the key or null
+     */
+    RecordLocation put(byte[] keyBytes, RecordLocation location) {
+        return keysToLocations.put(new Key(keyBytes), location);
+    }
+
+    /**
+     * Changes location of the key only when it still points to the expected one.
+     *
+     * @return true, when location was changed
+     */
+    boolean replace(byte[] keyBytes, RecordLocation expected, RecordLocation location) {
+        return keysToLocations.replace(new Key(keyBytes), expected, location);
+    }
+
+    void remove(byte[] keyBytes) {
+        keysToLocations.remove(new Key(keyBytes));
+    }
+
+    int size() {
+        return keysToLocations.size();
+    }
+
+    /**
+     * Serialized key bytes with content based equality.
+     */
+    static final class Key {
+        private final byte[] bytes;
+        private final int hash;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package introdb.heap;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fixed number of {@link StampedLock}s, shared by page numbers or keys which hash to the same stripe,
+ * so there is no per page or per key bookkeeping. Latches are not reentrant, so a thread holds at most one latch
+ * of given instance at a time.
+ */
+final class Latches {
+    private final StampedLock[] stripes;
+    private final int mask;
+
+    /**
+     * @param nrOfStripes rounded up to power of two
+     */
+    Latches(int nrOfStripes) {
+        if (nrOfStripes < 1) {
+            throw new IllegalArgumentException(String.format("Invalid number of stripes: %d", nrOfStripes));
+        }
+        int size = Integer.highestOneBit(nrOfStripes);
+        size = size < nrOfStripes ? size << 1 : size;
+        this.stripes = new StampedLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new StampedLock();
+        }
+        this.mask = size - 1;
+    }
+
+    StampedLock latch(int hash) {
+        return stripes[spread(hash) & mask];
+    }
+
+    int nrOfStripes() {
+        return stripes.length;
+    }
+
+    /**
+     * Mixes high bits into low ones, as consecutive page numbers and array based key hashes differ mostly in low bits.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
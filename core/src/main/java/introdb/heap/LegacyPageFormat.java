@@ -0,0 +1,224 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Page layout of files written before {@link RecordPage#VERSION}, kept only to migrate them.
+ * <p>
+ * Records follow each other from the beginning of the page, without page header. Byte structure of a record:
+ * - bytes of value
+ * - bytes of key
+ * - size of value as a short number
+ * - size of key as a short number
+ * - deleted boolean flag as a byte
+ * - end marker equal to {@link #END_MARKER}
+ * <p>
+ * Records are found by scanning backwards from the end of the page for the end marker.
+ */
+final class LegacyPageFormat {
+    static final byte END_MARKER = (byte) 255;
+    private static final int END_MARKER_BYTES = 1;
+    private static final int DELETED_FLAG_BYTES = 1;
+    private static final int KEY_SIZE_BYTES = (Short.SIZE / Byte.SIZE);
+    private static final int VALUE_SIZE_BYTES = (Short.SIZE / Byte.SIZE);
+    static final int META_DATA_BYTES = END_MARKER_BYTES + DELETED_FLAG_BYTES + KEY_SIZE_BYTES + VALUE_SIZE_BYTES;
+    private static final byte DELETED_TRUE = 1;
+    private static final byte DELETED_FALSE = 0;
+    private static final int END_MARKER_NOT_FOUND_POSITION = -1;
+
+    private LegacyPageFormat() {
+    }
+
+    /**
+     * Rewrites file of legacy pages into a new file of slotted pages, which replaces it. Legacy files may hold
+     * many live versions of a key, only the version found by a lookup is copied, records are copied in the order
+     * they were appended. Old file stays untouched until the new one is complete, an interrupted migration
+     * is started over on next open.
+     *
+     * @return true, when the file was migrated
+     */
+    static boolean migrate(Path path, int pageSize) throws IOException {
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return false;
+        }
+        var migratedPath = path.resolveSibling(path.getFileName() + ".migrating");
+        try (var oldChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var oldFile = new ChannelPageFile(oldChannel, pageSize);
+            var firstPage = oldFile.read(1, ByteBuffer.allocate(pageSize));
+            if (!isLegacy(firstPage)) {
+                return false;
+            }
+            int nrOfPages = (int) ((oldFile.size() + pageSize - 1) / pageSize);
+            var visible = visibleRecords(oldFile, nrOfPages, pageSize);
+            try (var newChannel = FileChannel.open(migratedPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                var newFile = new ChannelPageFile(newChannel, pageSize);
+                var oldBuffer = ByteBuffer.allocate(pageSize);
+                var newPage = new RecordPage(pageSize, ByteBuffer.allocate(pageSize), 1);
+                for (int pageNumber = 1; pageNumber <= nrOfPages; pageNumber++) {
+                    oldBuffer.clear();
+                    Arrays.fill(oldBuffer.array(), (byte) 0);
+                    oldFile.read(pageNumber, oldBuffer);
+                    for (var record : records(oldBuffer, pageSize)) {
+                        if (!visible.contains(position(pageNumber, record))) {
+                            continue;
+                        }
+                        var entryRecord = record.toEntryRecord();
+                        if (entryRecord.recordSize() > pageSize - RecordPage.HEADER_BYTES) {
+                            throw new IllegalStateException(String.format("Record of %d bytes on page %d does not fit into"
+                                    + " page of version %d", entryRecord.recordSize(), pageNumber, RecordPage.VERSION));
+                        }
+                        if (newPage.remainingSpace() < entryRecord.recordSize()) {
+                            writePage(newFile, newPage);
+                            newPage = new RecordPage(pageSize, ByteBuffer.allocate(pageSize), newPage.pageNumber() + 1);
+                        }
+                        newPage.append(entryRecord);
+                    }
+                }
+                if (newPage.recordCount() > 0) {
+                    writePage(newFile, newPage);
+                }
+                newFile.force();
+            }
+        }
+        Files.move(migratedPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Pages are read newest first, the newest record of a key in a page is visible when it is live,
+     * when it is deleted older pages are searched, as they were by lookups of legacy files.
+     *
+     * @return positions of visible records, see {@link #position(int, EntryRecord.PartialEntryRecord)}
+     */
+    private static Set<Long> visibleRecords(PageFile pageFile, int nrOfPages, int pageSize) throws IOException {
+        var buffer = ByteBuffer.allocate(pageSize);
+        var visible = new HashSet<Long>();
+        var foundKeys = new HashSet<KeyDirectory.Key>();
+        var seenInPage = new HashSet<KeyDirectory.Key>();
+        for (int pageNumber = nrOfPages; pageNumber > 0; pageNumber--) {
+            buffer.clear();
+            Arrays.fill(buffer.array(), (byte) 0);
+            pageFile.read(pageNumber, buffer);
+            var records = records(buffer, pageSize);
+            seenInPage.clear();
+            for (int i = records.size() - 1; i >= 0; i--) {
+                var record = records.get(i);
+                var key = new KeyDirectory.Key(record.keyBytes());
+                if (!foundKeys.contains(key) && seenInPage.add(key) && !record.deleted()) {
+                    foundKeys.add(key);
+                    visible.add(position(pageNumber, record));
+                }
+            }
+        }
+        return visible;
+    }
+
+    private static long position(int pageNumber, EntryRecord.PartialEntryRecord record) {
+        return ((long) pageNumber << Integer.SIZE) | record.pageOffset();
+    }
+
+    /**
+     * Empty page is not legacy, legacy page has no header of slotted page and ends its last record with end marker.
+     */
+    static boolean isLegacy(ByteBuffer page) {
+        return !RecordPage.hasHeader(page) && findEndMarkerPosition(page, page.capacity()) != END_MARKER_NOT_FOUND_POSITION;
+    }
+
+    /**
+     * Returns all records of the page, in the order they were appended.
+     */
+    static List<EntryRecord.PartialEntryRecord> records(ByteBuffer byteBuffer, int pageSize) {
+        var records = new ArrayList<EntryRecord.PartialEntryRecord>();
+        EntryRecord.PartialEntryRecord partial;
+        int bufferPosition = pageSize;
+        while ((partial = partialFromBuffer(byteBuffer, bufferPosition)) != null) {
+            if (partial.pageOffset() < 0 || partial.pageOffset() >= bufferPosition) {
+                throw new IllegalStateException(String.format("Record at offset %d does not start before %d",
+                        partial.pageOffset(), bufferPosition));
+            }
+            bufferPosition = partial.pageOffset();
+            records.add(partial);
+        }
+        Collections.reverse(records);
+        return records;
+    }
+
+    /**
+     * Writes record ending the already written ones at given position.
+     */
+    static void write(ByteBuffer buffer, int position, byte[] keyBytes, byte[] valueBytes, boolean deleted) {
+        for (byte valueByte : valueBytes) {
+            buffer.put(position++, valueByte);
+        }
+        for (byte keyByte : keyBytes) {
+            buffer.put(position++, keyByte);
+        }
+        buffer.putShort(position, (short) valueBytes.length)
+                .putShort(position + VALUE_SIZE_BYTES, (short) keyBytes.length)
+                .put(position + VALUE_SIZE_BYTES + KEY_SIZE_BYTES, deleted ? DELETED_TRUE : DELETED_FALSE)
+                .put(position + VALUE_SIZE_BYTES + KEY_SIZE_BYTES + DELETED_FLAG_BYTES, END_MARKER);
+    }
+
+    static int findRemainingSpace(ByteBuffer byteBuffer, int pageSize) {
+        int endMarkerPosition = findEndMarkerPosition(byteBuffer, pageSize);
+        if (endMarkerPosition == END_MARKER_NOT_FOUND_POSITION) {
+            return pageSize;
+        } else {
+            return pageSize - (endMarkerPosition + END_MARKER_BYTES);
+        }
+    }
+
+    /**
+     * Reads record ending before given position, or returns null when there is none.
+     */
+    static EntryRecord.PartialEntryRecord partialFromBuffer(ByteBuffer byteBuffer, int position) {
+        int endMarkerPosition = findEndMarkerPosition(byteBuffer, position);
+        if (endMarkerPosition == END_MARKER_NOT_FOUND_POSITION) {
+            return null;
+        } else {
+            int offset = endMarkerPosition;
+            offset -= DELETED_FLAG_BYTES;
+            byte deletedFlag = byteBuffer.get(offset);
+            offset -= KEY_SIZE_BYTES;
+            short keySize = byteBuffer.getShort(offset);
+            offset -= VALUE_SIZE_BYTES;
+            short valueSize = byteBuffer.getShort(offset);
+            byte[] keyBytes = EntryRecord.copyOfRange(byteBuffer, offset - keySize, offset);
+            offset -= keySize;
+            int pageOffset = offset - valueSize;
+            int recordSize = endMarkerPosition + END_MARKER_BYTES - pageOffset;
+            return EntryRecord.PartialEntryRecord.fromBytes(keyBytes, valueSize, offset, byteBuffer, deletedFlag == DELETED_TRUE,
+                    pageOffset, recordSize);
+        }
+    }
+
+    private static int findEndMarkerPosition(ByteBuffer byteBuffer, int position) {
+        while (position > 0) {
+            position -= END_MARKER_BYTES;
+            byte nextByte = byteBuffer.get(position);
+            if (nextByte == END_MARKER) {
+                return position;
+            }
+        }
+        return END_MARKER_NOT_FOUND_POSITION;
+    }
+
+    private static void writePage(PageFile pageFile, RecordPage page) throws IOException {
+        var buffer = page.buffer();
+        buffer.clear();
+        pageFile.write(page.pageNumber(), buffer);
+    }
+}
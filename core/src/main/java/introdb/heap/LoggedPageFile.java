@@ -0,0 +1,103 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Forces {@link WriteAheadLog} before any page is written or the file is truncated, so operations which changed
+ * the page are durable before the page is, and can be replayed when the page write is lost.
+ * <p>
+ * Log is forced only up to the LSN of the page, the last one logged when the page was changed, so writes of pages
+ * changed by already durable operations do not force the log again. First write of a page since the last checkpoint
+ * logs the image of the page as well, which undoes the write when it is torn by a crash.
+ */
+final class LoggedPageFile implements PageFile {
+    private final PageFile pageFile;
+    private final WriteAheadLog writeAheadLog;
+    private final ConcurrentHashMap<Integer, Long> pageLsns;
+
+    LoggedPageFile(PageFile pageFile, WriteAheadLog writeAheadLog) {
+        this.pageFile = pageFile;
+        this.writeAheadLog = writeAheadLog;
+        this.pageLsns = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public long size() throws IOException {
+        return pageFile.size();
+    }
+
+    @Override
+    public ByteBuffer read(int pageNumber, ByteBuffer buffer) throws IOException {
+        return pageFile.read(pageNumber, buffer);
+    }
+
+    @Override
+    public void readPages(int firstPageNumber, ByteBuffer buffer, IntPredicate stale) throws IOException {
+        pageFile.readPages(firstPageNumber, buffer, stale);
+    }
+
+    @Override
+    public void changed(int pageNumber) {
+        pageLsns.merge(pageNumber, writeAheadLog.appendedLsn(), Math::max);
+        pageFile.changed(pageNumber);
+    }
+
+    /**
+     * LSN of the page is forgotten once the page is written, unless the page changed again meanwhile.
+     */
+    @Override
+    public void write(int pageNumber, ByteBuffer buffer) throws IOException {
+        Long pageLsn = pageLsns.get(pageNumber);
+        long lsn = writeAheadLog.logPageImage(pageNumber, buffer);
+        writeAheadLog.syncUpTo(pageLsn != null ? Math.max(pageLsn, lsn) : lsn);
+        pageFile.write(pageNumber, buffer);
+        if (pageLsn != null) {
+            pageLsns.remove(pageNumber, pageLsn);
+        }
+    }
+
+    @Override
+    public void write(int firstPageNumber, ByteBuffer[] buffers) throws IOException {
+        var pageLsns = new Long[buffers.length];
+        long lsn = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            pageLsns[i] = this.pageLsns.get(firstPageNumber + i);
+            lsn = Math.max(lsn, writeAheadLog.logPageImage(firstPageNumber + i, buffers[i]));
+            if (pageLsns[i] != null) {
+                lsn = Math.max(lsn, pageLsns[i]);
+            }
+        }
+        writeAheadLog.syncUpTo(lsn);
+        pageFile.write(firstPageNumber, buffers);
+        for (int i = 0; i < buffers.length; i++) {
+            if (pageLsns[i] != null) {
+                this.pageLsns.remove(firstPageNumber + i, pageLsns[i]);
+            }
+        }
+    }
+
+    @Override
+    public void truncate(long size) throws IOException {
+        writeAheadLog.sync();
+        pageFile.truncate(size);
+        writeAheadLog.truncated();
+    }
+
+    @Override
+    public void force() throws IOException {
+        pageFile.force();
+    }
+
+    @Override
+    public boolean inPlace() {
+        return pageFile.inPlace();
+    }
+
+    @Override
+    public void close() throws IOException {
+        pageFile.close();
+    }
+}
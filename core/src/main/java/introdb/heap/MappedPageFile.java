@@ -0,0 +1,139 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+
+/**
+ * Pages accessed in place, through {@link MappedByteBuffer} regions of the file, without a syscall or a copy per page.
+ * <p>
+ * File is mapped in chunks of fixed size and new chunks are mapped as the file grows. Mapping a chunk extends the file
+ * to the end of the chunk, so the file is cut down to the last written page on {@link #close()}.
+ * Pages never written before are all zeros, which {@link PageProvider} skips when it recovers the file.
+ */
+final class MappedPageFile implements PageFile {
+    private final FileChannel fileChannel;
+    private final int pageSize;
+    private final int chunkSize;
+    private volatile MappedByteBuffer[] chunks;
+    private final AtomicLong size;
+
+    MappedPageFile(FileChannel fileChannel, int pageSize, int chunkSize) throws IOException {
+        if (chunkSize < pageSize || chunkSize % pageSize != 0) {
+            throw new IllegalArgumentException(String.format("Chunk size %d is not a multiple of page size %d", chunkSize, pageSize));
+        }
+        this.fileChannel = fileChannel;
+        this.pageSize = pageSize;
+        this.chunkSize = chunkSize;
+        this.chunks = new MappedByteBuffer[0];
+        long fileSize = fileChannel.size();
+        this.size = new AtomicLong(fileSize);
+        if (fileSize > 0) {
+            ensureMapped(chunkIndex(fileSize - 1));
+        }
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public ByteBuffer read(int pageNumber, ByteBuffer buffer) throws IOException {
+        return slice(pageNumber);
+    }
+
+    @Override
+    public void readPages(int firstPageNumber, ByteBuffer buffer, IntPredicate stale) throws IOException {
+        long size = this.size.get();
+        for (int pageNumber = firstPageNumber; buffer.remaining() >= pageSize && (long) pageNumber * pageSize <= size; pageNumber++) {
+            buffer.put(slice(pageNumber));
+        }
+    }
+
+    /**
+     * Copies the buffer into the mapped page, when the buffer is the view returned by {@link #read(int, ByteBuffer)}
+     * it is copied onto itself. Pages are written concurrently, so the size only ever grows here.
+     */
+    @Override
+    public void write(int pageNumber, ByteBuffer buffer) throws IOException {
+        slice(pageNumber).put(buffer);
+        size.accumulateAndGet((long) pageNumber * pageSize, Math::max);
+    }
+
+    @Override
+    public void write(int firstPageNumber, ByteBuffer[] buffers) throws IOException {
+        for (int i = 0; i < buffers.length; i++) {
+            write(firstPageNumber + i, buffers[i]);
+        }
+    }
+
+    /**
+     * Zeroes the pages above given size instead of cutting them off, as the chunks stay mapped.
+     */
+    @Override
+    public void truncate(long size) throws IOException {
+        byte[] emptyPage = new byte[pageSize];
+        long currentSize = this.size.get();
+        for (long offset = size; offset < currentSize; offset += pageSize) {
+            slice((int) (offset / pageSize) + 1).put(emptyPage);
+        }
+        this.size.accumulateAndGet(size, Math::min);
+    }
+
+    @Override
+    public void force() throws IOException {
+        for (var chunk : chunks) {
+            chunk.force();
+        }
+        fileChannel.force(false);
+    }
+
+    @Override
+    public boolean inPlace() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            fileChannel.truncate(size.get());
+        } finally {
+            chunks = new MappedByteBuffer[0];
+            fileChannel.close();
+        }
+    }
+
+    private ByteBuffer slice(int pageNumber) throws IOException {
+        long fileOffset = (pageNumber - 1L) * pageSize;
+        int chunkIndex = chunkIndex(fileOffset);
+        var chunks = this.chunks;
+        var chunk = chunkIndex < chunks.length ? chunks[chunkIndex] : ensureMapped(chunkIndex);
+        int chunkOffset = (int) (fileOffset % chunkSize);
+        ByteBuffer view = chunk.duplicate();
+        view.limit(chunkOffset + pageSize);
+        view.position(chunkOffset);
+        return view.slice();
+    }
+
+    private synchronized MappedByteBuffer ensureMapped(int chunkIndex) throws IOException {
+        var chunks = this.chunks;
+        if (chunkIndex >= chunks.length) {
+            var extended = Arrays.copyOf(chunks, chunkIndex + 1);
+            for (int i = chunks.length; i <= chunkIndex; i++) {
+                extended[i] = fileChannel.map(FileChannel.MapMode.READ_WRITE, (long) i * chunkSize, chunkSize);
+            }
+            this.chunks = extended;
+            return extended[chunkIndex];
+        }
+        return chunks[chunkIndex];
+    }
+
+    private int chunkIndex(long fileOffset) {
+        return (int) (fileOffset / chunkSize);
+    }
+}
@@ -0,0 +1,65 @@
+package introdb.heap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.IntPredicate;
+
+/**
+ * Storage of fixed size pages used by {@link PageProvider}, pages are numbered from 1.
+ */
+interface PageFile extends Closeable {
+
+    /**
+     * Size of the file in bytes, including pages which were never written.
+     */
+    long size() throws IOException;
+
+    /**
+     * Returns content of the page, either read into given buffer or, when pages are accessed in place,
+     * a view of the file itself. Changes made to the view reach the file without {@link #write(int, ByteBuffer)}.
+     */
+    ByteBuffer read(int pageNumber, ByteBuffer buffer) throws IOException;
+
+    /**
+     * Reads consecutive pages, starting from given one, until the buffer is full or the end of the file,
+     * with as few reads as possible. Buffer is filled even when pages are accessed in place.
+     * <p>
+     * Content of stale pages, which the caller is not going to use, is undefined. Files which decode pages
+     * do not decode them, and a page which fails to decode is not an error when it became stale meanwhile.
+     *
+     * @param stale whether the caller is not going to use the page, as it may change while it is read
+     */
+    void readPages(int firstPageNumber, ByteBuffer buffer, IntPredicate stale) throws IOException;
+
+    /**
+     * Called once the page was changed in memory, before it is written.
+     */
+    default void changed(int pageNumber) {
+    }
+
+    /**
+     * Writes whole buffer as the content of the page.
+     */
+    void write(int pageNumber, ByteBuffer buffer) throws IOException;
+
+    /**
+     * Writes consecutive pages, starting from given one, each buffer is the whole content of a page.
+     */
+    void write(int firstPageNumber, ByteBuffer[] buffers) throws IOException;
+
+    /**
+     * Cuts off everything after given number of bytes.
+     */
+    void truncate(long size) throws IOException;
+
+    /**
+     * Makes written pages durable.
+     */
+    void force() throws IOException;
+
+    /**
+     * Whether {@link #read(int, ByteBuffer)} returns views of the file, which are not worth caching.
+     */
+    boolean inPlace();
+}
@@ -0,0 +1,157 @@
+package introdb.heap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Bloom filter over key bytes of every page, so search for a key skips pages which certainly do not hold it.
+ * Keys are only added, records deleted from a page stay in its filter until it is rebuilt.
+ * <p>
+ * Filters are kept in memory and written to a file next to the heap file on close. The file is read and deleted
+ * when heap file is opened, so filters which missed changes made after a crash are never used.
+ * <p>
+ * Bits of a page are changed under exclusive latch of the page, readers check them under the latch,
+ * or validate what they read against its stamp, see {@link UnorderedHeapFile}.
+ */
+final class PageFilters {
+    private static final int MAGIC = 0x50464c54;
+    private static final int NR_OF_HASHES = 3;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int nrOfBits;
+    private volatile long[][] filters;
+
+    /**
+     * @param bytesPerPage size of filter of a single page, multiple of 8
+     */
+    PageFilters(int bytesPerPage) {
+        if (bytesPerPage <= 0 || bytesPerPage % Long.BYTES != 0) {
+            throw new IllegalArgumentException(String.format("Invalid page filter size: %d", bytesPerPage));
+        }
+        this.nrOfBits = bytesPerPage * Byte.SIZE;
+        this.filters = new long[INITIAL_CAPACITY][];
+    }
+
+    /**
+     * Hash of the key, computed once per lookup and used with filters of all pages.
+     */
+    static long hash(byte[] keyBytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte keyByte : keyBytes) {
+            hash ^= keyByte;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    void add(int pageNumber, long keyHash) {
+        var bits = bitsOf(pageNumber);
+        int hash1 = (int) keyHash;
+        int hash2 = (int) (keyHash >>> 32);
+        for (int i = 0; i < NR_OF_HASHES; i++) {
+            int bit = Math.floorMod(hash1 + i * hash2, nrOfBits);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false only when the key was never added to the page, true for pages without filter
+     */
+    boolean mightContain(int pageNumber, long keyHash) {
+        var filters = this.filters;
+        if (pageNumber > filters.length || filters[pageNumber - 1] == null) {
+            return true;
+        }
+        var bits = filters[pageNumber - 1];
+        int hash1 = (int) keyHash;
+        int hash2 = (int) (keyHash >>> 32);
+        for (int i = 0; i < NR_OF_HASHES; i++) {
+            int bit = Math.floorMod(hash1 + i * hash2, nrOfBits);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes filters of given number of pages, nothing is written when any of them has no filter.
+     */
+    void write(Path path, int nrOfPages) throws IOException {
+        var filters = this.filters;
+        for (int page = 1; page <= nrOfPages; page++) {
+            if (page > filters.length || filters[page - 1] == null) {
+                return;
+            }
+        }
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(nrOfBits);
+            output.writeInt(nrOfPages);
+            for (int page = 1; page <= nrOfPages; page++) {
+                for (long word : filters[page - 1]) {
+                    output.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return filters read from the file, or null when there is no file or it does not match the heap file
+     */
+    static PageFilters read(Path path, int bytesPerPage, int nrOfPages) throws IOException {
+        long expectedSize = 3L * Integer.BYTES + (long) nrOfPages * bytesPerPage;
+        if (!Files.exists(path) || Files.size(path) != expectedSize) {
+            return null;
+        }
+        var pageFilters = new PageFilters(bytesPerPage);
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC || input.readInt() != pageFilters.nrOfBits || input.readInt() != nrOfPages) {
+                return null;
+            }
+            for (int page = 1; page <= nrOfPages; page++) {
+                var bits = pageFilters.bitsOf(page);
+                for (int word = 0; word < bits.length; word++) {
+                    bits[word] = input.readLong();
+                }
+            }
+        }
+        return pageFilters;
+    }
+
+    /**
+     * Filter of the page is created on first use, before the page becomes visible to readers.
+     */
+    private long[] bitsOf(int pageNumber) {
+        var filters = this.filters;
+        if (pageNumber <= filters.length && filters[pageNumber - 1] != null) {
+            return filters[pageNumber - 1];
+        }
+        synchronized (this) {
+            filters = this.filters;
+            if (pageNumber > filters.length) {
+                int newCapacity = filters.length;
+                while (newCapacity < pageNumber) {
+                    newCapacity *= 2;
+                }
+                filters = Arrays.copyOf(filters, newCapacity);
+            }
+            if (filters[pageNumber - 1] == null) {
+                filters[pageNumber - 1] = new long[nrOfBits / Long.SIZE];
+            }
+            this.filters = filters;
+            return filters[pageNumber - 1];
+        }
+    }
+}
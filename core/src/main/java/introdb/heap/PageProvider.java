@@ -4,64 +4,315 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
+/**
+ * Pages are guarded by latches, see {@link #latch(int)}, which callers take around reading and changing a page.
+ * The number of pages only grows under {@link #allocationLock()}.
+ */
 final class PageProvider {
+    private static final int NR_OF_LATCHES = 1024;
+
     private final byte[] emptyPage;
     private final ThreadLocal<ByteBuffer> threadLocalBuffer;
     private final int pageSize;
     private final int maxNrPages;
-    private final FileChannel fileChannel;
-    private final PageCache pageCache;
-    private int pageNumber;
+    private final PageFile pageFile;
+    private final BufferPool bufferPool;
+    private final long maxDirtyBytes;
+    private final int readaheadPages;
+    private final Latches latches;
+    private final ReentrantLock allocationLock;
+    private final BufferPool.PageReader pageReader;
+    private volatile int pageNumber;
+
+    PageProvider(int maxNrPages, int pageSize, FileChannel fileChannel) throws IOException {
+        this(maxNrPages, pageSize, new ChannelPageFile(fileChannel, pageSize), HeapFileOptions.DEFAULT_BUFFER_POOL_SIZE, 0);
+    }
 
-    PageProvider(int maxNrPages, int pageSize, FileChannel fileChannel) {
+    /**
+     * Pages of {@link PageFile} accessed in place are not pooled, as they are not copied on read.
+     *
+     * @param bufferPoolSize budget of {@link BufferPool} in bytes, limited by the max number of pages, 0 disables the pool
+     * @param maxDirtyBytes  when positive, saved pages of the pool are only marked dirty, until there are that many
+     *                       dirty bytes, see {@link #flushIfNeeded()}
+     */
+    PageProvider(int maxNrPages, int pageSize, PageFile pageFile, long bufferPoolSize, long maxDirtyBytes) throws IOException {
+        this(maxNrPages, pageSize, pageFile, bufferPoolSize, maxDirtyBytes, 0);
+    }
+
+    /**
+     * @param readaheadPages max number of pages read at once by {@link Readahead}, less than 2 disables readahead
+     */
+    PageProvider(int maxNrPages, int pageSize, PageFile pageFile, long bufferPoolSize, long maxDirtyBytes, int readaheadPages)
+            throws IOException {
         this.pageSize = pageSize;
         this.maxNrPages = maxNrPages;
-        this.fileChannel = fileChannel;
-        this.pageCache = new PageCache(maxNrPages, pageSize);
-        this.pageNumber = 0;
+        this.pageFile = pageFile;
+        this.maxDirtyBytes = maxDirtyBytes;
+        this.readaheadPages = readaheadPages;
+        long poolSize = Math.min(bufferPoolSize, (long) maxNrPages * pageSize);
+        this.bufferPool = pageFile.inPlace() || poolSize < pageSize ? null : new BufferPool(poolSize, pageSize, pageFile::write);
         this.threadLocalBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(pageSize));
         this.emptyPage = new byte[pageSize];
+        this.latches = new Latches(NR_OF_LATCHES);
+        this.allocationLock = new ReentrantLock();
+        this.pageReader = this::readFully;
+        this.pageNumber = recoverPageNumber();
+    }
+
+    int pageNumber() {
+        return pageNumber;
+    }
+
+    /**
+     * Latch of the page, held in read mode while the page is read and in write mode while it is changed and saved.
+     * Pages which hash to the same stripe share the latch, so a thread must not hold two page latches at once.
+     */
+    StampedLock latch(int pageNumber) {
+        return latches.latch(pageNumber);
+    }
+
+    /**
+     * Held while pages are added or cut off, callers appending to the last page hold it as well,
+     * so the last page does not change under them.
+     */
+    Lock allocationLock() {
+        return allocationLock;
     }
 
+    /**
+     * @return pool of pages or null, when pages are not pooled
+     */
+    BufferPool bufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Pages returned by the iterator have to be closed by the caller. Pages are read ahead, when enabled.
+     */
     Iterator<RecordPage> iterator() {
         return new PageIterator(pageNumber);
     }
 
+    /**
+     * State of readahead of a single reader, which is not shared between threads.
+     *
+     * @return readahead or null, when it is disabled or pages are accessed in place
+     */
+    Readahead readahead() {
+        if (readaheadPages < 2 || pageFile.inPlace()) {
+            return null;
+        }
+        return new Readahead(pageFile, pageSize, readaheadPages, latches::latch,
+                page -> bufferPool != null && bufferPool.contains(page));
+    }
+
+    /**
+     * Same as {@link #page(int)}, served from a block read ahead when possible, see {@link Readahead}.
+     *
+     * @param readahead readahead of the caller or null
+     */
+    RecordPage page(int pageNumber, Readahead readahead) {
+        if (readahead != null && pageNumber >= 1 && pageNumber <= this.pageNumber) {
+            try {
+                var content = readahead.page(pageNumber, this.pageNumber);
+                if (content != null) {
+                    return new RecordPage(pageSize, content, pageNumber);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading page of entries", e);
+            }
+        }
+        return page(pageNumber);
+    }
+
+    /**
+     * Pins single page in {@link BufferPool}, reads it into thread local buffer, shared with pages returned
+     * by {@link #iterator()}, when pages are not pooled, or returns view of the page when it is accessed in place.
+     * Returned page has to be closed by the caller.
+     */
+    RecordPage page(int pageNumber) {
+        if (pageNumber < 1 || pageNumber > this.pageNumber) {
+            throw new IllegalArgumentException(String.format("Cannot read page %d, while there are %d pages in file",
+                    pageNumber, this.pageNumber));
+        }
+        return readPage(pageNumber, pageFile.inPlace() || bufferPool != null ? null : getClearPage());
+    }
+
     RecordPage pageForAppending(int recordSize) throws IOException {
         validateRecordSize(recordSize);
         if (pageNumber == 0) {
-            return new RecordPage(pageSize, ByteBuffer.allocate(pageSize), 1);
-        } else {
-            ByteBuffer byteBuffer = ByteBuffer.allocate(pageSize);
-            fileChannel.read(byteBuffer, getFileOffset(pageNumber));
-            int remainingSpace = EntryRecord.findRemainingSpace(byteBuffer, pageSize);
-            if (remainingSpace >= recordSize) {
-                return new RecordPage(pageSize, byteBuffer, pageNumber);
-            } else {
-                int newPageNumber = pageNumber + 1;
-                validateMaxNrPages(newPageNumber, maxNrPages);
-                return new RecordPage(pageSize, ByteBuffer.allocate(pageSize), newPageNumber);
-            }
+            return newPage(1);
         }
+        RecordPage lastPage = bufferPool != null
+                ? page(pageNumber)
+                : new RecordPage(pageSize, pageFile.read(pageNumber, ByteBuffer.allocate(pageSize)), pageNumber);
+        if (lastPage.remainingSpace() >= recordSize) {
+            return lastPage;
+        }
+        lastPage.close();
+        int newPageNumber = pageNumber + 1;
+        validateMaxNrPages(newPageNumber, maxNrPages);
+        return newPage(newPageNumber);
     }
 
+    /**
+     * New page, following the last page of the file, is saved under {@link #allocationLock()}.
+     */
     void save(RecordPage recordPage) throws IOException {
         int recordPageNumber = recordPage.pageNumber();
-        int nextPage = pageNumber + 1;
         validateMaxNrPages(recordPageNumber, maxNrPages);
-        validateRecordPageNumber(recordPageNumber, nextPage);
-        ByteBuffer buffer = recordPage.buffer();
-        buffer.clear();
-        fileChannel.write(buffer, getFileOffset(recordPageNumber));
-        boolean newPage = recordPageNumber == nextPage;
-        pageCache.remove(recordPageNumber);
-        if (newPage) {
-            pageNumber++;
+        boolean locked = recordPageNumber > pageNumber;
+        if (locked) {
+            allocationLock.lock();
+        }
+        try {
+            validateRecordPageNumber(recordPageNumber, pageNumber + 1);
+            boolean newPage = recordPageNumber == pageNumber + 1;
+            pageFile.changed(recordPageNumber);
+            if (maxDirtyBytes > 0 && recordPage.frame() != null) {
+                bufferPool.markDirty(recordPage.frame());
+            } else {
+                ByteBuffer buffer = recordPage.buffer();
+                buffer.clear();
+                pageFile.write(recordPageNumber, buffer);
+                if (bufferPool != null) {
+                    bufferPool.update(recordPageNumber, buffer, recordPage.frame());
+                }
+            }
+            if (newPage) {
+                pageNumber++;
+            }
+        } finally {
+            if (locked) {
+                allocationLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Appends run of new pages, following the last page of the file, in a single write.
+     */
+    void saveNewPages(List<RecordPage> recordPages) throws IOException {
+        if (recordPages.isEmpty()) {
+            return;
+        }
+        int firstPageNumber = recordPages.get(0).pageNumber();
+        var buffers = new ByteBuffer[recordPages.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            var recordPage = recordPages.get(i);
+            if (recordPage.pageNumber() != firstPageNumber + i) {
+                throw new IllegalArgumentException(String.format("Cannot save page %d after page %d",
+                        recordPage.pageNumber(), firstPageNumber + i - 1));
+            }
+            validateMaxNrPages(recordPage.pageNumber(), maxNrPages);
+            pageFile.changed(recordPage.pageNumber());
+            buffers[i] = recordPage.buffer();
+            buffers[i].clear();
+        }
+        allocationLock.lock();
+        try {
+            if (firstPageNumber != pageNumber + 1) {
+                throw new IllegalArgumentException(String.format("Cannot save new page %d, while there are %d pages in file",
+                        firstPageNumber, pageNumber));
+            }
+            pageFile.write(firstPageNumber, buffers);
+            pageNumber += buffers.length;
+        } finally {
+            allocationLock.unlock();
         }
     }
 
+    /**
+     * Cuts off pages above given number, they have to be empty already.
+     */
+    void truncate(int nrOfPages) throws IOException {
+        allocationLock.lock();
+        try {
+            if (nrOfPages > pageNumber) {
+                throw new IllegalArgumentException(String.format("Cannot truncate to %d pages, while there are %d pages in file",
+                        nrOfPages, pageNumber));
+            }
+            pageFile.truncate((long) nrOfPages * pageSize);
+            if (bufferPool != null) {
+                for (int page = nrOfPages + 1; page <= pageNumber; page++) {
+                    bufferPool.discard(page);
+                }
+            }
+            pageNumber = nrOfPages;
+        } finally {
+            allocationLock.unlock();
+        }
+    }
+
+    /**
+     * Writes dirty pages of the pool, each under read latch of the page, so a page is never written while it changes.
+     * Must not be called with any page latch held.
+     */
+    void flush() throws IOException {
+        if (bufferPool != null) {
+            for (int dirtyPage : bufferPool.dirtyPages()) {
+                var latch = latch(dirtyPage);
+                long stamp = latch.readLock();
+                try {
+                    bufferPool.flush(dirtyPage);
+                } finally {
+                    latch.unlockRead(stamp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes the pool when saved pages left at least max dirty bytes in it.
+     * Must not be called with any page latch held.
+     */
+    void flushIfNeeded() throws IOException {
+        if (maxDirtyBytes > 0 && bufferPool != null && bufferPool.dirtyBytes() >= maxDirtyBytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Makes written pages durable, dirty pages of the pool have to be flushed first.
+     */
+    void force() throws IOException {
+        pageFile.force();
+    }
+
+    void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            pageFile.close();
+        }
+    }
+
+    /**
+     * Counts pages of already existing file, partially written page is counted as well,
+     * while trailing pages without any record (e.g. extended but never written) are skipped.
+     */
+    private int recoverPageNumber() throws IOException {
+        int nrOfPages = (int) ((pageFile.size() + pageSize - 1) / pageSize);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(pageSize);
+        while (nrOfPages > 0) {
+            byteBuffer.clear();
+            byteBuffer.put(emptyPage);
+            byteBuffer.clear();
+            ByteBuffer content = pageFile.read(nrOfPages, byteBuffer);
+            if (RecordPage.recordCount(content, pageSize) > 0) {
+                break;
+            }
+            nrOfPages--;
+        }
+        return nrOfPages;
+    }
+
     private void validateRecordPageNumber(int recordPageNumber, int nextPage) {
         if (recordPageNumber > nextPage) {
             throw new IllegalArgumentException(String.format("Cannot save page %d, while there are %d pages in file",
@@ -78,16 +329,15 @@ final class PageProvider {
         }
     }
 
-    private void validateRecordSize(int recordSize) {
-        if (recordSize > pageSize) {
+    /**
+     * Record has to fit into an empty page, next to its header.
+     */
+    void validateRecordSize(int recordSize) {
+        if (recordSize > pageSize - RecordPage.HEADER_BYTES) {
             throw new IllegalArgumentException(String.format("Cannot store record taking: %d bytes when on page size: %d", recordSize, pageSize));
         }
     }
 
-    private long getFileOffset(int pageNumber) {
-        return (pageNumber - 1L) * pageSize;
-    }
-
     private ByteBuffer getClearPage() {
         ByteBuffer byteBuffer = threadLocalBuffer.get();
         byteBuffer.clear();
@@ -96,15 +346,53 @@ final class PageProvider {
         return byteBuffer;
     }
 
+    private RecordPage readPage(int pageNumber, ByteBuffer byteBuffer) {
+        try {
+            if (bufferPool != null) {
+                var frame = bufferPool.pin(pageNumber, pageReader);
+                if (frame != null) {
+                    return new RecordPage(pageSize, frame.buffer(), pageNumber, bufferPool, frame);
+                }
+                byteBuffer = ByteBuffer.allocate(pageSize);
+            } else if (byteBuffer != null) {
+                byteBuffer.clear();
+            }
+            return new RecordPage(pageSize, pageFile.read(pageNumber, byteBuffer), pageNumber);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading page of entries", e);
+        }
+    }
+
+    /**
+     * Empty page which is not in the file yet, pinned in {@link BufferPool} when pages are pooled.
+     */
+    private RecordPage newPage(int pageNumber) throws IOException {
+        if (bufferPool != null) {
+            var frame = bufferPool.pin(pageNumber, (number, buffer) -> {
+            });
+            if (frame != null) {
+                return new RecordPage(pageSize, frame.buffer(), pageNumber, bufferPool, frame);
+            }
+        }
+        return new RecordPage(pageSize, ByteBuffer.allocate(pageSize), pageNumber);
+    }
+
+    private void readFully(int pageNumber, ByteBuffer buffer) throws IOException {
+        pageFile.read(pageNumber, buffer);
+        buffer.clear();
+    }
+
     private class PageIterator implements Iterator<RecordPage> {
 
         private final ByteBuffer byteBuffer;
+        private final Readahead readahead;
         private int currentPage;
 
 
         PageIterator(int pageNumber) {
             this.currentPage = pageNumber;
-            this.byteBuffer = getClearPage();
+            this.byteBuffer = pageFile.inPlace() || bufferPool != null ? null : getClearPage();
+            this.readahead = readahead();
         }
 
         @Override
@@ -117,16 +405,7 @@ final class PageProvider {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-            RecordPage recordPage = pageCache.get(currentPage, byteBuffer);
-            if (recordPage == null) {
-                try {
-                    fileChannel.read(byteBuffer, getFileOffset(currentPage));
-                    recordPage = new RecordPage(pageSize, byteBuffer, currentPage);
-                    pageCache.put(currentPage, recordPage);
-                } catch (IOException e) {
-                    throw new RuntimeException("Error reading page of entries", e);
-                }
-            }
+            RecordPage recordPage = readahead != null ? page(currentPage, readahead) : readPage(currentPage, byteBuffer);
             currentPage--;
             return recordPage;
         }
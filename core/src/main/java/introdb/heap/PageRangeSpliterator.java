@@ -0,0 +1,80 @@
+package introdb.heap;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Spliterator over elements read from a range of pages, a page at a time. Splits hand out the first half
+ * of pages not read yet, so parallel streams read disjoint ranges of pages on threads of the fork join pool.
+ * Elements of a page are read at once and kept until they are consumed, so no page stays latched
+ * between elements.
+ * <p>
+ * Every spliterator, split off ones included, reads pages with its own reader, created on first read,
+ * so a reader may keep state of the range it reads, e.g. {@link Readahead}.
+ */
+final class PageRangeSpliterator<T> implements Spliterator<T> {
+    private final Supplier<IntFunction<List<T>>> pageReaders;
+    private final int endPage;
+    private int nextPage;
+    private IntFunction<List<T>> pageReader;
+    private Iterator<T> pageElements = Collections.emptyIterator();
+
+    /**
+     * @param pageReaders creates reader of elements of a single page
+     * @param firstPage   first page of the range
+     * @param endPage     page following the last page of the range
+     */
+    PageRangeSpliterator(Supplier<IntFunction<List<T>>> pageReaders, int firstPage, int endPage) {
+        this.pageReaders = pageReaders;
+        this.nextPage = firstPage;
+        this.endPage = endPage;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (!pageElements.hasNext()) {
+            if (nextPage >= endPage) {
+                return false;
+            }
+            if (pageReader == null) {
+                pageReader = pageReaders.get();
+            }
+            pageElements = pageReader.apply(nextPage++).iterator();
+        }
+        action.accept(pageElements.next());
+        return true;
+    }
+
+    /**
+     * Elements of a page already read stay with this spliterator.
+     */
+    @Override
+    public Spliterator<T> trySplit() {
+        int remainingPages = endPage - nextPage;
+        if (remainingPages < 2) {
+            return null;
+        }
+        int splitPage = nextPage + remainingPages / 2;
+        var prefix = new PageRangeSpliterator<>(pageReaders, nextPage, splitPage);
+        nextPage = splitPage;
+        return prefix;
+    }
+
+    /**
+     * Number of pages not read yet, as number of elements of a page is not known until it is read.
+     */
+    @Override
+    public long estimateSize() {
+        return endPage - nextPage;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+}
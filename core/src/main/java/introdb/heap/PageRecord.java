@@ -1,6 +1,5 @@
 package introdb.heap;
 
-import java.nio.ByteBuffer;
 import java.util.Objects;
 
 final class PageRecord {
@@ -16,6 +15,10 @@ final class PageRecord {
         return pageOffset;
     }
 
+    int recordSize() {
+        return entryRecord.recordSize();
+    }
+
     Entry entry() {
         return entryRecord.entry();
     }
@@ -28,10 +31,6 @@ final class PageRecord {
         return new PageRecord(entryRecord.toDeleted(), pageOffset);
     }
 
-    void writeToBuffer(ByteBuffer buffer) {
-        entryRecord.writeToBuffer(buffer, pageOffset);
-    }
-
     @Override
     public int hashCode() {
         return Objects.hash(entryRecord, pageOffset);
@@ -0,0 +1,126 @@
+package introdb.heap;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Searches pages of a file for the newest page matching a search, with chunks of pages searched in parallel
+ * on a dedicated {@link ForkJoinPool}.
+ * <p>
+ * Range of pages is split in halves until it is not longer than a chunk, the newer half is searched by the splitting
+ * thread and the older one is forked. Every chunk is searched newest page first, and stops as soon as a newer page
+ * matched, so once a match is found only chunks of newer pages keep going.
+ */
+final class ParallelPageSearch implements AutoCloseable {
+    private final ForkJoinPool pool;
+    private final int chunkPages;
+
+    /**
+     * @param parallelism number of threads of the pool
+     * @param chunkPages  number of pages searched by a single task, files which are not longer are searched
+     *                    by the calling thread
+     */
+    ParallelPageSearch(int parallelism, int chunkPages) {
+        if (parallelism < 1 || chunkPages < 1) {
+            throw new IllegalArgumentException(String.format("Invalid parallelism: %d or chunk pages: %d", parallelism, chunkPages));
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.chunkPages = chunkPages;
+    }
+
+    /**
+     * @param lastPage   number of the newest page, pages are numbered from 1
+     * @param pageSearch returns result of a single page, or null when it does not match
+     * @return result of the newest matching page, or null
+     */
+    <T> T search(int lastPage, IntFunction<T> pageSearch) {
+        if (lastPage <= chunkPages) {
+            for (int pageNumber = lastPage; pageNumber > 0; pageNumber--) {
+                var result = pageSearch.apply(pageNumber);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        }
+        var search = new Search<>(pageSearch);
+        pool.invoke(new PageRangeSearch<>(search, 1, lastPage, chunkPages));
+        return search.result;
+    }
+
+    /**
+     * Waits for running searches, new searches fail.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Search<T> {
+        private final IntFunction<T> pageSearch;
+        private final AtomicInteger matchedPage = new AtomicInteger();
+        private T result;
+
+        private Search(IntFunction<T> pageSearch) {
+            this.pageSearch = pageSearch;
+        }
+
+        /**
+         * Result is read once the search is joined, which makes it visible to the calling thread.
+         */
+        private synchronized void matched(int pageNumber, T result) {
+            if (pageNumber > matchedPage.get()) {
+                this.result = result;
+                matchedPage.set(pageNumber);
+            }
+        }
+
+        private boolean newerMatched(int pageNumber) {
+            return matchedPage.get() > pageNumber;
+        }
+    }
+
+    private static final class PageRangeSearch<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Search<T> search;
+        private final int firstPage;
+        private final int lastPage;
+        private final int chunkPages;
+
+        private PageRangeSearch(Search<T> search, int firstPage, int lastPage, int chunkPages) {
+            this.search = search;
+            this.firstPage = firstPage;
+            this.lastPage = lastPage;
+            this.chunkPages = chunkPages;
+        }
+
+        @Override
+        protected void compute() {
+            if (search.newerMatched(lastPage)) {
+                return;
+            }
+            if (lastPage - firstPage + 1 > chunkPages) {
+                int middlePage = (firstPage + lastPage) >>> 1;
+                invokeAll(new PageRangeSearch<>(search, middlePage + 1, lastPage, chunkPages),
+                        new PageRangeSearch<>(search, firstPage, middlePage, chunkPages));
+                return;
+            }
+            for (int pageNumber = lastPage; pageNumber >= firstPage && !search.newerMatched(pageNumber); pageNumber--) {
+                var result = search.pageSearch.apply(pageNumber);
+                if (result != null) {
+                    search.matched(pageNumber, result);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Reads blocks of consecutive pages with a single positional read and serves following reads of pages from the block,
+ * for a single reader going through pages in order, see {@link PageProvider#readahead()}.
+ * <p>
+ * Size of the block adapts to the access pattern: it doubles, up to the max, whenever a block was used up by reads
+ * of consecutive pages, in either direction, and drops back to a single page when a page is read out of order.
+ * <p>
+ * Page served from the block has to be the same as in the file. Before the block is read, optimistic stamp
+ * of the latch of every page is taken, a page is served only while its stamp is valid, so pages changed since then
+ * are read again. Pages which are in {@link BufferPool} when the block is read are never served from the block,
+ * as the pool may hold changes not written to the file yet.
+ */
+final class Readahead {
+    private final PageFile pageFile;
+    private final int pageSize;
+    private final int maxPages;
+    private final IntFunction<StampedLock> latches;
+    private final IntPredicate pooled;
+    private ByteBuffer block;
+    private long[] stamps;
+    private int firstPage;
+    private int nrOfPages;
+    private int windowPages = 1;
+    private int lastPage;
+
+    /**
+     * @param maxPages max number of pages read at once
+     * @param latches  latch of a page
+     * @param pooled   whether a page is in buffer pool
+     */
+    Readahead(PageFile pageFile, int pageSize, int maxPages, IntFunction<StampedLock> latches, IntPredicate pooled) {
+        this.pageFile = pageFile;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.latches = latches;
+        this.pooled = pooled;
+    }
+
+    /**
+     * @param pageNumber  page to read
+     * @param lastPage    number of the last page of the file, block does not go past it
+     * @return content of the page, or null when it has to be read without readahead
+     */
+    ByteBuffer page(int pageNumber, int lastPage) throws IOException {
+        if (pageNumber < firstPage || pageNumber >= firstPage + nrOfPages) {
+            if (pooled.test(pageNumber)) {
+                // no block is read for a page which is served by the pool anyway
+                this.lastPage = pageNumber;
+                return null;
+            }
+            readBlock(pageNumber, lastPage);
+        }
+        this.lastPage = pageNumber;
+        if (stale(pageNumber)) {
+            return null;
+        }
+        int index = pageNumber - firstPage;
+        ByteBuffer page = block.duplicate();
+        page.limit((index + 1) * pageSize);
+        page.position(index * pageSize);
+        return page.slice();
+    }
+
+    int windowPages() {
+        return windowPages;
+    }
+
+    /**
+     * Page which was pooled or changed since its stamp was taken is never served from the block.
+     */
+    private boolean stale(int pageNumber) {
+        long stamp = stamps[pageNumber - firstPage];
+        return stamp == 0 || !latches.apply(pageNumber).validate(stamp);
+    }
+
+    private void readBlock(int pageNumber, int lastPage) throws IOException {
+        boolean backward = pageNumber == this.lastPage - 1;
+        boolean forward = pageNumber == this.lastPage + 1;
+        windowPages = backward || forward ? Math.min(windowPages * 2, maxPages) : 1;
+        firstPage = backward ? Math.max(1, pageNumber - windowPages + 1) : pageNumber;
+        nrOfPages = backward ? pageNumber - firstPage + 1 : Math.max(1, Math.min(windowPages, lastPage - pageNumber + 1));
+        if (block == null || block.capacity() < nrOfPages * pageSize) {
+            block = ByteBuffer.allocate(windowPages * pageSize);
+            stamps = new long[windowPages];
+        }
+        for (int i = 0; i < nrOfPages; i++) {
+            stamps[i] = latches.apply(firstPage + i).tryOptimisticRead();
+            if (pooled.test(firstPage + i)) {
+                stamps[i] = 0;
+            }
+        }
+        block.clear();
+        block.limit(nrOfPages * pageSize);
+        pageFile.readPages(firstPage, block, this::stale);
+        Arrays.fill(block.array(), block.position(), block.limit(), (byte) 0);
+    }
+}
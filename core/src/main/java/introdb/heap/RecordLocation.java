@@ -0,0 +1,54 @@
+package introdb.heap;
+
+import java.util.Objects;
+
+/**
+ * Position of {@link EntryRecord} inside {@link UnorderedHeapFile}.
+ */
+final class RecordLocation {
+    private final int pageNumber;
+    private final int pageOffset;
+    private final int recordSize;
+
+    RecordLocation(int pageNumber, int pageOffset, int recordSize) {
+        this.pageNumber = pageNumber;
+        this.pageOffset = pageOffset;
+        this.recordSize = recordSize;
+    }
+
+    int pageNumber() {
+        return pageNumber;
+    }
+
+    int pageOffset() {
+        return pageOffset;
+    }
+
+    int recordSize() {
+        return recordSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RecordLocation that = (RecordLocation) o;
+        return pageNumber == that.pageNumber &&
+                pageOffset == that.pageOffset &&
+                recordSize == that.recordSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(pageNumber, pageOffset, recordSize);
+    }
+
+    @Override
+    public String toString() {
+        return "RecordLocation{" +
+                "pageNumber=" + pageNumber +
+                ", pageOffset=" + pageOffset +
+                ", recordSize=" + recordSize +
+                '}';
+    }
+}
@@ -2,24 +2,72 @@ package introdb.heap;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Slotted page. Header at the beginning of the page holds number of records and the end of record data,
+ * data of records follows it in the order they were appended, see {@link EntryRecord}, while their slots grow
+ * from the end of the page towards the data, slot of the first record is the last one.
+ * <p>
+ * Byte structure of the header:
+ * - magic number equal to {@link #MAGIC} as an int
+ * - version of the layout equal to {@link #VERSION} as a byte, pages of older files are migrated on open,
+ *   see {@link LegacyPageFormat}
+ * - unused byte
+ * - number of records as an unsigned short
+ * - end of record data, where free space starts, as an unsigned short
+ * - unused short
+ * <p>
+ * Byte structure of a slot:
+ * - offset of record data as an unsigned short
+ * - size of value as an unsigned short
+ * - size of key as an unsigned short
+ * - {@link Arrays#hashCode(byte[])} of the key as an int
+ * - flags as a byte, with {@link #DELETED_FLAG} set for deleted record
+ * - unused byte
+ * <p>
+ * Page which is all zeros, never written or compacted to nothing, has no header and no records.
+ */
+class RecordPage implements AutoCloseable {
+    static final int MAGIC = 0x534c5054;
+    static final byte VERSION = 2;
+    static final int HEADER_BYTES = 12;
+    static final int SLOT_BYTES = 12;
+    /**
+     * Offsets and sizes within the page, up to the end of record data of a full page, are unsigned shorts.
+     */
+    static final int MAX_PAGE_SIZE = 0xFFFF;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RECORD_COUNT_OFFSET = 6;
+    private static final int DATA_END_OFFSET = 8;
+    private static final int SLOT_VALUE_SIZE_OFFSET = 2;
+    private static final int SLOT_KEY_SIZE_OFFSET = 4;
+    private static final int SLOT_KEY_HASH_OFFSET = 6;
+    private static final int SLOT_FLAGS_OFFSET = 10;
+    private static final byte DELETED_FLAG = 1;
 
-class RecordPage {
     private final int pageSize;
     private final ByteBuffer byteBuffer;
     private final int pageNumber;
+    private final BufferPool bufferPool;
+    private BufferPool.Frame frame;
 
     RecordPage(int pageSize, ByteBuffer byteBuffer, int pageNumber) {
-        this.pageSize = pageSize;
-        this.byteBuffer = byteBuffer;
-        this.pageNumber = pageNumber;
+        this(pageSize, byteBuffer, pageNumber, null, null);
     }
 
-    RecordPage(RecordPage copy, ByteBuffer byteBuffer) {
-        this.pageSize = copy.pageSize;
-        this.pageNumber = copy.pageNumber;
+    /**
+     * Page working on pinned frame of {@link BufferPool}, which is unpinned on {@link #close()}.
+     */
+    RecordPage(int pageSize, ByteBuffer byteBuffer, int pageNumber, BufferPool bufferPool, BufferPool.Frame frame) {
+        this.pageSize = pageSize;
         this.byteBuffer = byteBuffer;
-        copy.byteBuffer.rewind();
-        this.byteBuffer.put(copy.byteBuffer);
+        this.pageNumber = pageNumber;
+        this.bufferPool = bufferPool;
+        this.frame = frame;
     }
 
     ByteBuffer buffer() {
@@ -30,33 +78,327 @@ class RecordPage {
         return pageNumber;
     }
 
-    void append(EntryRecord entryRecord) {
-        int remainingSpace = EntryRecord.findRemainingSpace(byteBuffer, pageSize);
+    /**
+     * @return pinned frame of the page or null, when page is not backed by {@link BufferPool}
+     */
+    BufferPool.Frame frame() {
+        return frame;
+    }
+
+    /**
+     * Unpins frame of the page, page must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (frame != null) {
+            bufferPool.unpin(frame);
+            frame = null;
+        }
+    }
+
+    PageRecord append(EntryRecord entryRecord) {
+        int remainingSpace = remainingSpace();
         if (entryRecord.recordSize() > remainingSpace) {
             throw new IllegalArgumentException(String.format("Record %s too large," +
                     "size: %d, remaining space: %d", entryRecord, entryRecord.recordSize(), remainingSpace));
         }
-        int writePosition = pageSize - remainingSpace;
-        var record = new PageRecord(entryRecord, writePosition);
-        record.writeToBuffer(byteBuffer);
+        int recordCount = recordCount();
+        int writePosition = dataEnd();
+        ByteBuffer data = byteBuffer.duplicate();
+        data.clear();
+        data.position(writePosition);
+        data.put(entryRecord.valueBytes());
+        data.put(entryRecord.keyBytes());
+        int slot = slotPosition(recordCount);
+        byteBuffer.putShort(slot, (short) writePosition)
+                .putShort(slot + SLOT_VALUE_SIZE_OFFSET, (short) entryRecord.valueBytes().length)
+                .putShort(slot + SLOT_KEY_SIZE_OFFSET, (short) entryRecord.keyBytes().length)
+                .putInt(slot + SLOT_KEY_HASH_OFFSET, Arrays.hashCode(entryRecord.keyBytes()))
+                .put(slot + SLOT_FLAGS_OFFSET, entryRecord.notDeleted() ? 0 : DELETED_FLAG);
+        writeHeader(recordCount + 1, writePosition + entryRecord.dataSize());
+        return new PageRecord(entryRecord, writePosition);
     }
 
 
     PageRecord search(byte[] keyBytes) throws IOException, ClassNotFoundException {
-        byteBuffer.clear();
-        EntryRecord.PartialEntryRecord partial;
-        int bufferPosition = pageSize;
-        while ((partial = EntryRecord.partialFromBuffer(byteBuffer, bufferPosition)) != null) {
-            bufferPosition = partial.pageOffset();
-            if (partial.hasSameKey(keyBytes)) {
-                return partial.toRecord();
+        return search(keyBytes, EntryCodec.DEFAULT);
+    }
+
+    PageRecord search(byte[] keyBytes, EntryCodec codec) throws IOException, ClassNotFoundException {
+        var partial = find(keyBytes);
+        return partial != null ? partial.toRecord(codec) : null;
+    }
+
+    /**
+     * Finds the newest record of given key, without decoding it. Only hashes of the keys in the slots are compared,
+     * until one of them matches, then the key itself is compared in place, see {@link #hasKey(int, byte[])},
+     * so nothing is allocated for records of other keys.
+     */
+    EntryRecord.PartialEntryRecord find(byte[] keyBytes) {
+        int slot = findSlot(keyBytes);
+        return slot >= 0 ? read(slot) : null;
+    }
+
+    /**
+     * Reads record starting at given offset, returns null when there is no such record or it is not a record of given key.
+     */
+    EntryRecord.PartialEntryRecord findAt(int pageOffset, byte[] keyBytes) {
+        int slot = findSlotAt(pageOffset, keyBytes);
+        return slot >= 0 ? read(slot) : null;
+    }
+
+    /**
+     * Same as {@link #find(byte[])}, without reading the record.
+     *
+     * @return slot of the newest record of given key, or -1
+     */
+    int findSlot(byte[] keyBytes) {
+        int keyHash = Arrays.hashCode(keyBytes);
+        for (int slot = recordCount() - 1; slot >= 0; slot--) {
+            if (byteBuffer.getInt(slotPosition(slot) + SLOT_KEY_HASH_OFFSET) == keyHash && hasKey(slot, keyBytes)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same as {@link #findAt(int, byte[])}, without reading the record.
+     *
+     * @return slot of the record of given key starting at given offset, or -1
+     */
+    int findSlotAt(int pageOffset, byte[] keyBytes) {
+        int slot = slotOf(pageOffset);
+        return slot >= 0 && hasKey(slot, keyBytes) ? slot : -1;
+    }
+
+    boolean deleted(int slot) {
+        return (byteBuffer.get(slotPosition(slot) + SLOT_FLAGS_OFFSET) & DELETED_FLAG) != 0;
+    }
+
+    /**
+     * Read-only view of the whole page, for {@link #valueView(int, ByteBuffer)}. It views the memory of
+     * {@link #viewSource()}, so it can be reused for other pages of the same source.
+     */
+    ByteBuffer readOnlyView() {
+        return byteBuffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Frame of the pool which holds the page, or the buffer of the page when it is not pooled.
+     */
+    Object viewSource() {
+        return frame != null ? frame : byteBuffer;
+    }
+
+    /**
+     * Limits given view, see {@link #readOnlyView()}, to encoded value bytes of the record in given slot,
+     * valid until page buffer is reused.
+     *
+     * @return the view, with value bytes between its position and limit
+     */
+    ByteBuffer valueView(int slot, ByteBuffer view) {
+        int slotPosition = slotPosition(slot);
+        int pageOffset = Short.toUnsignedInt(byteBuffer.getShort(slotPosition));
+        int valueSize = Short.toUnsignedInt(byteBuffer.getShort(slotPosition + SLOT_VALUE_SIZE_OFFSET));
+        int keySize = Short.toUnsignedInt(byteBuffer.getShort(slotPosition + SLOT_KEY_SIZE_OFFSET));
+        checkFits(slot, pageOffset, pageOffset + valueSize + keySize);
+        view.clear();
+        view.limit(pageOffset + valueSize);
+        view.position(pageOffset);
+        return view;
+    }
+
+    /**
+     * Returns all records of the page, starting from the newest one.
+     */
+    List<EntryRecord.PartialEntryRecord> records() {
+        int recordCount = recordCount();
+        var records = new ArrayList<EntryRecord.PartialEntryRecord>(recordCount);
+        for (int slot = recordCount - 1; slot >= 0; slot--) {
+            records.add(read(slot));
+        }
+        return records;
+    }
+
+    /**
+     * Kept in the header, so it is known without reading any record.
+     */
+    int remainingSpace() {
+        return pageSize - recordCount() * SLOT_BYTES - dataEnd();
+    }
+
+    int recordCount() {
+        return recordCount(byteBuffer, pageSize);
+    }
+
+    /**
+     * Rewrites page with records accepted by given filter moved to its beginning, in their original order.
+     * Offsets of the kept records change, so they have to be read again with {@link #records()}.
+     *
+     * @return number of reclaimed bytes
+     */
+    int compact(Predicate<EntryRecord.PartialEntryRecord> keep) {
+        int usedSpace = pageSize - remainingSpace();
+        var kept = new ArrayList<EntryRecord>();
+        for (int slot = 0; slot < recordCount(); slot++) {
+            var record = read(slot);
+            if (keep.test(record)) {
+                kept.add(record.toEntryRecord());
             }
         }
-        return null;
+        byteBuffer.clear();
+        byteBuffer.put(new byte[pageSize]);
+        byteBuffer.clear();
+        for (var record : kept) {
+            append(record);
+        }
+        return usedSpace - (pageSize - remainingSpace());
+    }
+
+    /**
+     * Replaces value of live record starting at given offset with the value of given record of the same key,
+     * when it is not longer than the current one. Record keeps its offset, bytes left after its new data are dead
+     * until the page is compacted.
+     *
+     * @return false, when new value does not fit or there is no live record of the key at given offset
+     */
+    boolean overwrite(int pageOffset, EntryRecord record) {
+        int slot = slotOf(pageOffset);
+        if (slot < 0 || !hasKey(slot, record.keyBytes())) {
+            return false;
+        }
+        var current = read(slot);
+        if (current.deleted() || record.dataSize() > current.recordSize() - SLOT_BYTES) {
+            return false;
+        }
+        ByteBuffer data = byteBuffer.duplicate();
+        data.clear();
+        data.position(pageOffset);
+        data.put(record.valueBytes());
+        data.put(record.keyBytes());
+        byteBuffer.putShort(slotPosition(slot) + SLOT_VALUE_SIZE_OFFSET, (short) record.valueBytes().length);
+        return true;
+    }
+
+    void markDeleted(int pageOffset) {
+        int slot = slotOf(pageOffset);
+        if (slot < 0) {
+            throw new IllegalStateException(String.format("There is no record at offset %d of page %d", pageOffset, pageNumber));
+        }
+        int flags = slotPosition(slot) + SLOT_FLAGS_OFFSET;
+        byteBuffer.put(flags, (byte) (byteBuffer.get(flags) | DELETED_FLAG));
     }
 
     void delete(PageRecord record) {
-        var deleted = record.toDeleted();
-        deleted.writeToBuffer(byteBuffer);
+        markDeleted(record.pageOffset());
+    }
+
+    static boolean hasHeader(ByteBuffer page) {
+        return page.getInt(0) == MAGIC && page.get(VERSION_OFFSET) == VERSION;
+    }
+
+    /**
+     * Page is read without latch by optimistic readers, so values of the header are checked before they are used.
+     */
+    static int recordCount(ByteBuffer page, int pageSize) {
+        if (!hasHeader(page)) {
+            return 0;
+        }
+        int recordCount = Short.toUnsignedInt(page.getShort(RECORD_COUNT_OFFSET));
+        if (recordCount > (pageSize - HEADER_BYTES) / SLOT_BYTES) {
+            throw new IllegalStateException(String.format("Page header holds invalid number of records: %d", recordCount));
+        }
+        return recordCount;
+    }
+
+    private int dataEnd() {
+        if (!hasHeader(byteBuffer)) {
+            return HEADER_BYTES;
+        }
+        int dataEnd = Short.toUnsignedInt(byteBuffer.getShort(DATA_END_OFFSET));
+        if (dataEnd < HEADER_BYTES || dataEnd > pageSize) {
+            throw new IllegalStateException(String.format("Header of page %d holds invalid end of data: %d", pageNumber, dataEnd));
+        }
+        return dataEnd;
+    }
+
+    private void writeHeader(int recordCount, int dataEnd) {
+        byteBuffer.putInt(0, MAGIC)
+                .put(VERSION_OFFSET, VERSION)
+                .putShort(RECORD_COUNT_OFFSET, (short) recordCount)
+                .putShort(DATA_END_OFFSET, (short) dataEnd);
+    }
+
+    private int slotPosition(int slot) {
+        return pageSize - (slot + 1) * SLOT_BYTES;
+    }
+
+    /**
+     * Record which does not fit into data area means the page is corrupted, or it was changed while read without latch.
+     */
+    private void checkFits(int slot, int pageOffset, int recordEnd) {
+        if (pageOffset < HEADER_BYTES || recordEnd > dataEnd()) {
+            throw new IllegalStateException(String.format("Record in slot %d of page %d does not fit into data of the page",
+                    slot, pageNumber));
+        }
+    }
+
+    /**
+     * @return slot of the record starting at given offset, or -1
+     */
+    private int slotOf(int pageOffset) {
+        for (int slot = recordCount() - 1; slot >= 0; slot--) {
+            if (Short.toUnsignedInt(byteBuffer.getShort(slotPosition(slot))) == pageOffset) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares key of the record in given slot with given key where it is stored in the page, without copying it.
+     */
+    private boolean hasKey(int slot, byte[] keyBytes) {
+        int keySize = Short.toUnsignedInt(byteBuffer.getShort(slotPosition(slot) + SLOT_KEY_SIZE_OFFSET));
+        if (keySize != keyBytes.length) {
+            return false;
+        }
+        int keyOffset = keyOffset(slot);
+        if (byteBuffer.hasArray()) {
+            int from = byteBuffer.arrayOffset() + keyOffset;
+            return Arrays.equals(byteBuffer.array(), from, from + keySize, keyBytes, 0, keySize);
+        }
+        for (int i = 0; i < keySize; i++) {
+            if (byteBuffer.get(keyOffset + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return offset of the key of the record in given slot, which follows its value
+     */
+    private int keyOffset(int slot) {
+        int slotPosition = slotPosition(slot);
+        int pageOffset = Short.toUnsignedInt(byteBuffer.getShort(slotPosition));
+        int valueEnd = pageOffset + Short.toUnsignedInt(byteBuffer.getShort(slotPosition + SLOT_VALUE_SIZE_OFFSET));
+        int keySize = Short.toUnsignedInt(byteBuffer.getShort(slotPosition + SLOT_KEY_SIZE_OFFSET));
+        checkFits(slot, pageOffset, valueEnd + keySize);
+        return valueEnd;
+    }
+
+    private EntryRecord.PartialEntryRecord read(int slot) {
+        int slotPosition = slotPosition(slot);
+        int pageOffset = Short.toUnsignedInt(byteBuffer.getShort(slotPosition));
+        int valueSize = Short.toUnsignedInt(byteBuffer.getShort(slotPosition + SLOT_VALUE_SIZE_OFFSET));
+        int keySize = Short.toUnsignedInt(byteBuffer.getShort(slotPosition + SLOT_KEY_SIZE_OFFSET));
+        boolean deleted = deleted(slot);
+        int valueEnd = pageOffset + valueSize;
+        checkFits(slot, pageOffset, valueEnd + keySize);
+        byte[] keyBytes = EntryRecord.copyOfRange(byteBuffer, valueEnd, valueEnd + keySize);
+        return EntryRecord.PartialEntryRecord.fromBytes(keyBytes, valueSize, valueEnd, byteBuffer, deleted, pageOffset,
+                SLOT_BYTES + valueSize + keySize);
     }
 }
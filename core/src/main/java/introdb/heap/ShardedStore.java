@@ -0,0 +1,231 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Store partitioned by hash of serialized key into fixed number of independent {@link UnorderedHeapFile} shards,
+ * each with its own file, locks and buffer pool, so lookups scan a part of the data and writes to different shards
+ * do not share the last page.
+ * <p>
+ * Shards are kept in a directory, with the number of shards recorded next to them, as a key always goes
+ * to the same shard only as long as the number of shards does not change. Budget of {@link BufferPool}
+ * is split evenly between the shards, each shard gets at least a page, so no shard is left without a pool.
+ */
+final class ShardedStore implements Store {
+    static final String SHARDS_FILE = "shards";
+
+    private final UnorderedHeapFile[] shards;
+    private final EntryCodec codec;
+
+    /**
+     * @param directory   directory of shards, created when it does not exist
+     * @param nrOfShards  number of shards, has to match the number the directory was created with
+     * @param maxNrPages  max number of pages of a single shard
+     */
+    ShardedStore(Path directory, int nrOfShards, int maxNrPages, int pageSize, HeapFileOptions options) {
+        if (nrOfShards < 1) {
+            throw new IllegalArgumentException(String.format("Invalid number of shards: %d", nrOfShards));
+        }
+        options.validate();
+        try {
+            Files.createDirectories(directory);
+            validateNrOfShards(directory.resolve(SHARDS_FILE), nrOfShards);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.codec = new EntryCodec(options.keyCodec(), options.valueCodec());
+        long shardPoolSize = options.bufferPoolSize() > 0 ? Math.max(pageSize, options.bufferPoolSize() / nrOfShards) : 0;
+        var shardOptions = options.withBufferPoolSize(shardPoolSize);
+        this.shards = new UnorderedHeapFile[nrOfShards];
+        try {
+            for (int shard = 0; shard < nrOfShards; shard++) {
+                shards[shard] = new UnorderedHeapFile(directory.resolve(shardFileName(shard)), maxNrPages, pageSize, shardOptions);
+            }
+        } catch (RuntimeException e) {
+            closeQuietly(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Object remove(Serializable key) throws IOException, ClassNotFoundException {
+        return shardOf(key).remove(key);
+    }
+
+    @Override
+    public Object get(Serializable key) throws IOException, ClassNotFoundException {
+        return shardOf(key).get(key);
+    }
+
+    /**
+     * Keys are grouped by shard, every shard is asked once.
+     */
+    @Override
+    public Map<Serializable, Object> getAll(Collection<? extends Serializable> keys) throws IOException, ClassNotFoundException {
+        var keysByShard = new HashMap<Integer, List<Serializable>>();
+        for (var key : keys) {
+            keysByShard.computeIfAbsent(shardIndex(EntryRecord.keyToBytes(key, codec)), shard -> new ArrayList<>()).add(key);
+        }
+        var values = new HashMap<Serializable, Object>();
+        for (var shardKeys : keysByShard.entrySet()) {
+            values.putAll(shards[shardKeys.getKey()].getAll(shardKeys.getValue()));
+        }
+        return values;
+    }
+
+    @Override
+    public byte[] getBytes(Serializable key) throws IOException {
+        return shardOf(key).getBytes(key);
+    }
+
+    @Override
+    public boolean getView(Serializable key, Consumer<ByteBuffer> consumer) throws IOException {
+        return shardOf(key).getView(key, consumer);
+    }
+
+    @Override
+    public Stream<Entry> entries() {
+        return concat(UnorderedHeapFile::entries, 0, shards.length);
+    }
+
+    @Override
+    public Stream<Serializable> keys() {
+        return concat(UnorderedHeapFile::keys, 0, shards.length);
+    }
+
+    @Override
+    public Stream<EntryRecord> encodedEntries() {
+        return concat(UnorderedHeapFile::encodedEntries, 0, shards.length);
+    }
+
+    /**
+     * Entry is encoded once, its key bytes pick the shard.
+     */
+    @Override
+    public Object put(Entry entry) throws IOException, ClassNotFoundException {
+        var record = EntryRecord.fromEntry(entry, codec);
+        return shards[shardIndex(record.keyBytes())].put(record);
+    }
+
+    /**
+     * Entries are grouped by shard, in iteration order, and put with a single call to every shard.
+     * All of them are validated first, so nothing is put when any of them exceeds page size.
+     * Entries of different shards are not put atomically.
+     */
+    @Override
+    public void putAll(Collection<Entry> entries) throws IOException {
+        var recordsByShard = new HashMap<Integer, List<EntryRecord>>();
+        for (var entry : entries) {
+            var record = EntryRecord.fromEntry(entry, codec);
+            int shard = shardIndex(record.keyBytes());
+            shards[shard].validateRecordSize(record);
+            recordsByShard.computeIfAbsent(shard, index -> new ArrayList<>()).add(record);
+        }
+        for (var shardRecords : recordsByShard.entrySet()) {
+            shards[shardRecords.getKey()].putAll(shardRecords.getValue());
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (var shard : shards) {
+            shard.flush();
+        }
+    }
+
+    /**
+     * Closes all shards, even when some of them fail to close.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (var shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    int nrOfShards() {
+        return shards.length;
+    }
+
+    UnorderedHeapFile shard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * Spreads high bits of the hash, so shards do not depend only on the last bytes of the key.
+     */
+    int shardIndex(byte[] keyBytes) {
+        int hash = Arrays.hashCode(keyBytes);
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    static String shardFileName(int shard) {
+        return String.format("shard-%03d", shard);
+    }
+
+    private UnorderedHeapFile shardOf(Serializable key) throws IOException {
+        return shards[shardIndex(EntryRecord.keyToBytes(key, codec))];
+    }
+
+    /**
+     * Streams of shards are concatenated as a balanced tree, so a parallel stream splits between halves of the shards
+     * first and then by ranges of pages of every shard.
+     */
+    private <T> Stream<T> concat(Function<UnorderedHeapFile, Stream<T>> stream, int fromShard, int toShard) {
+        if (toShard - fromShard == 1) {
+            return stream.apply(shards[fromShard]);
+        }
+        int middle = (fromShard + toShard) >>> 1;
+        return Stream.concat(concat(stream, fromShard, middle), concat(stream, middle, toShard));
+    }
+
+    private static void validateNrOfShards(Path shardsFile, int nrOfShards) throws IOException {
+        if (Files.exists(shardsFile)) {
+            var recorded = new String(Files.readAllBytes(shardsFile), StandardCharsets.US_ASCII).trim();
+            if (!recorded.equals(Integer.toString(nrOfShards))) {
+                throw new IllegalArgumentException(String.format("Store was created with %s shards, cannot open it with %d",
+                        recorded, nrOfShards));
+            }
+        } else {
+            Files.write(shardsFile, Integer.toString(nrOfShards).getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private void closeQuietly(RuntimeException cause) {
+        for (var shard : shards) {
+            if (shard != null) {
+                try {
+                    shard.close();
+                } catch (IOException | RuntimeException e) {
+                    cause.addSuppressed(e);
+                }
+            }
+        }
+    }
+}
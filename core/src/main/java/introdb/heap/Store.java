@@ -1,22 +1,101 @@
 package introdb.heap;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-interface Store {
+interface Store extends Closeable {
 
 	Object remove(Serializable key) throws IOException, ClassNotFoundException;
 
 	Object get(Serializable key) throws IOException, ClassNotFoundException;
 
 	/**
+	 * Gets values of many keys at once, walking pages of the store once for all of them.
+	 * 
+	 * @param keys
+	 * @return values of found keys, keys which are not found are absent
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	Map<Serializable, Object> getAll(Collection<? extends Serializable> keys) throws IOException, ClassNotFoundException;
+
+	/**
+	 * Returns value bytes, as encoded by value codec, without decoding them.
+	 * 
+	 * @param key
+	 * @return encoded value or null when there is no such key
+	 * @throws IOException
+	 */
+	byte[] getBytes(Serializable key) throws IOException;
+
+	/**
+	 * Passes read-only view of encoded value bytes to the consumer, without copying them.
+	 * Value bytes lie between position and limit of the view, which is valid only until consumer returns.
+	 * 
+	 * @param key
+	 * @param consumer
+	 * @return false when there is no such key and consumer was not called
+	 * @throws IOException
+	 */
+	boolean getView(Serializable key, Consumer<ByteBuffer> consumer) throws IOException;
+
+	/**
+	 * Lazy stream of all live entries, in no particular order. Parallel stream splits by ranges of pages.
+	 * Stream is weakly consistent, entries put or removed while it is consumed may be missed or seen in either version,
+	 * it has to be consumed before the store is closed.
+	 * 
+	 * @return stream of entries
+	 */
+	Stream<Entry> entries();
+
+	/**
+	 * Like {@link #entries()}, without decoding values.
+	 * 
+	 * @return stream of keys
+	 */
+	Stream<Serializable> keys();
+
+	/**
+	 * Like {@link #entries()}, with keys and values encoded by codecs of the store, without decoding them.
+	 * 
+	 * @return stream of encoded entries
+	 */
+	Stream<EntryRecord> encodedEntries();
+
+	/**
+	 * Puts value of the key, replacing its previous value, like {@link Map#put(Object, Object)}.
 	 * 
 	 * @param entry
+	 * @return previous value of the key or null when there was none, or when the store does not look it up,
+	 *         as files without key index or page filters do
 	 * @throws ClassNotFoundException 
 	 * @throws IOException 
 	 * @throws IllegalArgumentException
 	 *             when entry exceeds page size
 	 */
-	void put(Entry entry) throws IOException, ClassNotFoundException;
+	Object put(Entry entry) throws IOException, ClassNotFoundException;
+
+	/**
+	 * Puts all entries, as if they were put one by one in iteration order, under a single lock.
+	 * 
+	 * @param entries
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             when any entry exceeds page size, nothing is put then
+	 */
+	void putAll(Collection<Entry> entries) throws IOException;
+
+	/**
+	 * Writes changes which are still buffered in memory to the file.
+	 * 
+	 * @throws IOException
+	 */
+	void flush() throws IOException;
 
 }
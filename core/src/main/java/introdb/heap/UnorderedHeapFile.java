@@ -2,113 +2,1489 @@ package introdb.heap;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Operations latch only the pages they read or change, see {@link PageProvider#latch(int)}, while operations on the same
+ * key are ordered by key latches. The file lock is held in shared mode by every operation, exclusively only by
+ * operations on the whole file: checkpoint, bulk load, cutting off pages by vacuum and close.
+ * <p>
+ * Latches are taken in order: file lock, key latch, allocation lock, page latch, and a single page latch at a time.
+ * Gets take neither the file lock nor page latches, they validate what they read against the stamps of both.
+ * With key index a put appends the new version of the record first and deletes the superseded one after,
+ * so the key is never missing for concurrent readers.
+ */
 class UnorderedHeapFile implements Store {
+    private static final int BULK_RUN_PAGES = 256;
+    private static final int NR_OF_KEY_LATCHES = 1024;
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+
     private final PageProvider pageProvider;
-    private final ReentrantReadWriteLock lock;
+    private final StampedLock lock;
+    private final Latches keyLatches;
+    private final KeyDirectory keyDirectory;
+    private final FreeSpaceMap freeSpaceMap;
+    private final PageFilters pageFilters;
+    private final Path pageFiltersPath;
+    private final ParallelPageSearch parallelSearch;
+    private final Vacuum vacuum;
+    private final Flusher flusher;
+    private final WriteAheadLog writeAheadLog;
+    private final long checkpointBytes;
+    private final EntryCodec codec;
+    private final int pageSize;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ThreadLocal<ViewBuffers> viewBuffers = ThreadLocal.withInitial(ViewBuffers::new);
 
     UnorderedHeapFile(Path path, int maxNrPages, int pageSize) {
+        this(path, maxNrPages, pageSize, HeapFileOptions.defaults());
+    }
+
+    UnorderedHeapFile(Path path, int maxNrPages, int pageSize, HeapFileOptions options) {
+        if (pageSize > RecordPage.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException(String.format("Page size %d is above max page size %d",
+                    pageSize, RecordPage.MAX_PAGE_SIZE));
+        }
+        options.validate();
+        if ((options.writeBack() || options.writeAheadLog()) && options.bufferPoolSize() < pageSize) {
+            throw new IllegalArgumentException(String.format("Buffer pool of %d bytes does not hold a page of %d bytes, "
+                    + "which write back and write ahead log require", options.bufferPoolSize(), pageSize));
+        }
         try {
+            this.pageFiltersPath = path.resolveSibling(path.getFileName() + ".filters");
+            var pageTablePath = path.resolveSibling(path.getFileName() + ".pages");
+            boolean existingData = Files.exists(path) && Files.size(path) > 0;
+            if (!options.pageCompression() && Files.exists(pageTablePath)) {
+                if (Files.size(pageTablePath) > 0) {
+                    throw new IllegalArgumentException("Pages of the file are compressed, it requires page compression");
+                }
+                Files.delete(pageTablePath);
+            }
+            if (options.pageCompression() && existingData && !Files.exists(pageTablePath)) {
+                throw new IllegalArgumentException("Pages of the file are not compressed, it can not use page compression");
+            }
+            if (!options.pageCompression() && LegacyPageFormat.migrate(path, pageSize)) {
+                Files.deleteIfExists(pageFiltersPath);
+            }
             FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
-            this.pageProvider = new PageProvider(maxNrPages, pageSize, fileChannel);
-            this.lock = new ReentrantReadWriteLock();
+            PageFile pageFile;
+            if (options.memoryMapping()) {
+                pageFile = new MappedPageFile(fileChannel, pageSize, options.mappingChunkSize());
+            } else if (options.pageCompression()) {
+                pageFile = compressedPageFile(fileChannel, pageTablePath, !existingData, pageSize, options.compressionLevel());
+            } else {
+                pageFile = new ChannelPageFile(fileChannel, pageSize);
+            }
+            long maxDirtyBytes = options.writeBackMaxDirtyBytes();
+            if (options.writeAheadLog()) {
+                this.writeAheadLog = new WriteAheadLog(path.resolveSibling(path.getFileName() + ".wal"),
+                        options.walDurability(), options.walSyncIntervalMillis());
+                writeAheadLog.restorePages(pageFile);
+                pageFile = new LoggedPageFile(pageFile, writeAheadLog);
+                maxDirtyBytes = options.writeBack() ? maxDirtyBytes : Long.MAX_VALUE;
+            } else {
+                this.writeAheadLog = null;
+            }
+            this.checkpointBytes = options.walCheckpointBytes();
+            this.pageProvider = new PageProvider(maxNrPages, pageSize, pageFile, options.bufferPoolSize(), maxDirtyBytes,
+                    options.readaheadBytes() / pageSize);
+            this.lock = new StampedLock();
+            this.keyLatches = new Latches(NR_OF_KEY_LATCHES);
+            this.keyDirectory = options.keyIndex() ? new KeyDirectory() : null;
+            this.freeSpaceMap = options.freeSpaceReuse() ? new FreeSpaceMap() : null;
+            var storedPageFilters = options.pageFilters()
+                    ? PageFilters.read(pageFiltersPath, options.pageFilterBytes(), pageProvider.pageNumber()) : null;
+            this.pageFilters = storedPageFilters != null || !options.pageFilters()
+                    ? storedPageFilters : new PageFilters(options.pageFilterBytes());
+            Files.deleteIfExists(pageFiltersPath);
+            this.parallelSearch = options.parallelSearch()
+                    ? new ParallelPageSearch(options.searchParallelism(), options.searchChunkPages()) : null;
+            this.vacuum = options.vacuum() ? new Vacuum(this, options.vacuumDeadBytesRatio(), options.vacuumThrottleMillis()) : null;
+            this.flusher = options.writeBack() && options.writeBackIntervalMillis() > 0
+                    ? new Flusher(this, options.writeBackIntervalMillis()) : null;
+            this.codec = new EntryCodec(options.keyCodec(), options.valueCodec());
+            this.pageSize = pageSize;
+            recover(pageFilters != null && storedPageFilters == null);
+            if (writeAheadLog != null) {
+                replayLog();
+            }
+            if (vacuum != null) {
+                vacuum.start();
+            }
+            if (flusher != null) {
+                flusher.start();
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Page table is created only along with a new data file, both channels are closed when the file does not open.
+     */
+    private static PageFile compressedPageFile(FileChannel fileChannel, Path pageTablePath, boolean newFile, int pageSize,
+                                               int level) throws IOException {
+        FileChannel tableChannel = null;
+        try {
+            tableChannel = newFile
+                    ? FileChannel.open(pageTablePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ)
+                    : FileChannel.open(pageTablePath, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            return new CompressedPageFile(fileChannel, tableChannel, pageSize, level);
+        } catch (IOException | RuntimeException e) {
+            try {
+                fileChannel.close();
+                if (tableChannel != null) {
+                    tableChannel.close();
+                }
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * With write ahead log, put waits for the log to become durable after latches are released,
+     * so concurrent puts can share a single force of the log.
+     */
     @Override
-    public void put(Entry entry) throws IOException {
-        var record = EntryRecord.fromEntry(entry);
-        lock.writeLock().lock();
+    public Object put(Entry entry) throws IOException, ClassNotFoundException {
+        return put(EntryRecord.fromEntry(entry, codec));
+    }
+
+    /**
+     * Puts record already encoded with the codecs of this file.
+     *
+     * @return decoded previous value of the key or null
+     */
+    Object put(EntryRecord record) throws IOException, ClassNotFoundException {
+        validateRecordSize(record);
+        byte[] previous;
+        long lsn = 0;
+        long fileStamp = lock.readLock();
         try {
-            lock.readLock().lock();
-            RecordPage page;
+            var keyLatch = keyLatches.latch(Arrays.hashCode(record.keyBytes()));
+            long keyStamp = keyLatch.writeLock();
             try {
-                page = pageProvider.pageForAppending(record.recordSize());
+                if (writeAheadLog != null) {
+                    lsn = writeAheadLog.logPut(record.keyBytes(), record.valueBytes());
+                }
+                previous = putRecord(record);
             } finally {
-                lock.readLock().unlock();
+                keyLatch.unlockWrite(keyStamp);
             }
-            page.append(record);
-            pageProvider.save(page);
+            pageProvider.flushIfNeeded();
         } finally {
-            lock.writeLock().unlock();
+            lock.unlockRead(fileStamp);
+        }
+        checkpointIfNeeded();
+        if (writeAheadLog != null) {
+            writeAheadLog.awaitDurable(lsn);
+        }
+        return previous != null ? codec.decodeValue(previous) : null;
+    }
+
+    /**
+     * Entries are encoded before the file lock is taken exclusively. Records which fit go to the last page, others
+     * are packed into new pages in memory, written in runs of {@link #BULK_RUN_PAGES} with a single gathering write.
+     * Only the last entry of a key is stored, as earlier ones would be superseded anyway.
+     */
+    @Override
+    public void putAll(Collection<Entry> entries) throws IOException {
+        var records = new ArrayList<EntryRecord>(entries.size());
+        for (var entry : entries) {
+            records.add(EntryRecord.fromEntry(entry, codec));
+        }
+        putAll(records);
+    }
+
+    /**
+     * Puts records already encoded with the codecs of this file, see {@link #putAll(Collection)}.
+     */
+    void putAll(List<EntryRecord> entryRecords) throws IOException {
+        var records = new LinkedHashMap<KeyDirectory.Key, EntryRecord>();
+        for (var record : entryRecords) {
+            validateRecordSize(record);
+            var key = new KeyDirectory.Key(record.keyBytes());
+            records.remove(key);
+            records.put(key, record);
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        long lsn = 0;
+        long fileStamp = lock.writeLock();
+        try {
+            if (writeAheadLog != null) {
+                for (var record : records.values()) {
+                    lsn = writeAheadLog.logPut(record.keyBytes(), record.valueBytes());
+                }
+            }
+            appendAll(records.values());
+        } finally {
+            lock.unlockWrite(fileStamp);
+        }
+        checkpointIfNeeded();
+        if (writeAheadLog != null) {
+            writeAheadLog.awaitDurable(lsn);
         }
     }
 
+    /**
+     * Reads without taking any lock, see {@link #findValueBytes(byte[])}, value is decoded once it is validated.
+     */
     @Override
     public Object get(Serializable key) throws IOException, ClassNotFoundException {
-        lock.readLock().lock();
+        var valueBytes = findValueBytes(EntryRecord.keyToBytes(key, codec));
+        return valueBytes != null ? codec.decodeValue(valueBytes) : null;
+    }
+
+    /**
+     * Without key index pages are scanned once, newest first, until all keys are found, with key index
+     * every page holding any of the keys is read once.
+     */
+    @Override
+    public Map<Serializable, Object> getAll(Collection<? extends Serializable> keys) throws IOException, ClassNotFoundException {
+        var pending = new HashMap<KeyDirectory.Key, Serializable>();
+        for (var key : keys) {
+            pending.put(new KeyDirectory.Key(EntryRecord.keyToBytes(key, codec)), key);
+        }
+        var values = new HashMap<Serializable, Object>();
+        long fileStamp = lock.readLock();
         try {
-            var pageWithRecord = findPageWithRecord(key);
-            if (pageWithRecord != null) {
-                return pageWithRecord.record().entry().value();
+            if (keyDirectory != null) {
+                getAllIndexed(pending, values);
+            } else {
+                getAllScanning(pending, values);
             }
         } finally {
-            lock.readLock().unlock();
+            lock.unlockRead(fileStamp);
         }
-        return null;
+        return values;
     }
 
+    @Override
+    public byte[] getBytes(Serializable key) throws IOException {
+        return findValueBytes(EntryRecord.keyToBytes(key, codec));
+    }
+
+    /**
+     * Key is matched in place and the view is reused by the thread, so nothing is allocated per call for keys
+     * of {@link Codecs.FixedSizeCodec}, when pages are pooled or read into the page buffer of the thread.
+     * Pages of memory mapped file are viewed by a new buffer each.
+     */
+    @Override
+    public boolean getView(Serializable key, Consumer<ByteBuffer> consumer) throws IOException {
+        var buffers = viewBuffers.get();
+        if (buffers.inUse) {
+            // called by the consumer of another view
+            buffers = new ViewBuffers();
+        }
+        buffers.keyBytes = codec.encodeKey(key, buffers.keyBytes);
+        buffers.inUse = true;
+        long fileStamp = lock.readLock();
+        try {
+            return keyDirectory != null ? viewIndexedValue(buffers, consumer) : viewScannedValue(buffers, consumer);
+        } finally {
+            lock.unlockRead(fileStamp);
+            buffers.inUse = false;
+        }
+    }
+
+    /**
+     * Page of the record is latched exclusively only once it is found, so removes of records on different pages
+     * run in parallel.
+     */
     @Override
     public Object remove(Serializable key) throws IOException, ClassNotFoundException {
-        lock.writeLock().lock();
+        var keyBytes = EntryRecord.keyToBytes(key, codec);
+        Object value = null;
+        long lsn = 0;
+        long fileStamp = lock.readLock();
         try {
-            lock.readLock().lock();
-            PageWithRecord pageWithRecord;
+            var keyLatch = keyLatches.latch(Arrays.hashCode(keyBytes));
+            long keyStamp = keyLatch.writeLock();
             try {
-                pageWithRecord = findPageWithRecord(key);
+                RecordLocation newest = null;
+                try (var pageWithRecord = findPageWithRecord(keyBytes, true)) {
+                    if (pageWithRecord == null) {
+                        return null;
+                    }
+                    value = pageWithRecord.record().value(codec);
+                    if (writeAheadLog != null) {
+                        lsn = writeAheadLog.logRemove(keyBytes);
+                    }
+                    if (keyDirectory != null || pageFilters != null) {
+                        removeRecord(pageWithRecord);
+                    } else {
+                        newest = locationOf(pageWithRecord.page().pageNumber(), pageWithRecord.record());
+                    }
+                }
+                if (newest != null) {
+                    removeVersions(keyBytes, newest);
+                }
             } finally {
-                lock.readLock().unlock();
+                keyLatch.unlockWrite(keyStamp);
             }
-            if (pageWithRecord != null) {
-                var page = pageWithRecord.page();
-                page.delete(pageWithRecord.record());
-                pageProvider.save(page);
+            pageProvider.flushIfNeeded();
+        } finally {
+            lock.unlockRead(fileStamp);
+        }
+        checkpointIfNeeded();
+        if (writeAheadLog != null) {
+            writeAheadLog.awaitDurable(lsn);
+        }
+        return value;
+    }
+
+    /**
+     * Keys and values are decoded after the page is released, on the thread consuming the stream.
+     */
+    @Override
+    public Stream<Entry> entries() {
+        return scan(EntryRecord.PartialEntryRecord::toEntryRecord).map(record -> new Entry(
+                decode(codec::decodeKey, record.keyBytes()), decode(codec::decodeValue, record.valueBytes())));
+    }
+
+    /**
+     * Value bytes are not even copied out of pages.
+     */
+    @Override
+    public Stream<Serializable> keys() {
+        return scan(EntryRecord.PartialEntryRecord::keyBytes).map(keyBytes -> decode(codec::decodeKey, keyBytes));
+    }
+
+    @Override
+    public Stream<EntryRecord> encodedEntries() {
+        return scan(EntryRecord.PartialEntryRecord::toEntryRecord);
+    }
+
+    /**
+     * Writes pages which are still dirty in write back mode, every page is latched only while it is written.
+     */
+    @Override
+    public void flush() throws IOException {
+        long fileStamp = lock.readLock();
+        try {
+            pageProvider.flush();
+        } finally {
+            lock.unlockRead(fileStamp);
+        }
+    }
+
+    /**
+     * Closing a closed file has no effect.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (flusher != null) {
+            flusher.close();
+        }
+        if (vacuum != null) {
+            vacuum.close();
+        }
+        long fileStamp = lock.writeLock();
+        try {
+            if (writeAheadLog != null) {
+                checkpointLocked();
+            }
+            int nrOfPages = pageProvider.pageNumber();
+            if (parallelSearch != null) {
+                parallelSearch.close();
+            }
+            pageProvider.close();
+            if (writeAheadLog != null) {
+                writeAheadLog.close();
+            }
+            if (pageFilters != null) {
+                pageFilters.write(pageFiltersPath, nrOfPages);
             }
+        } finally {
+            lock.unlockWrite(fileStamp);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when record does not fit into a page
+     */
+    void validateRecordSize(EntryRecord record) {
+        pageProvider.validateRecordSize(record.recordSize());
+    }
+
+    /**
+     * Makes all pages durable in the heap file and drops the write ahead log.
+     */
+    void checkpoint() throws IOException {
+        if (writeAheadLog == null) {
+            throw new IllegalStateException("Write ahead log is not enabled");
+        }
+        long fileStamp = lock.writeLock();
+        try {
+            checkpointLocked();
+        } finally {
+            lock.unlockWrite(fileStamp);
+        }
+    }
+
+    /**
+     * Runs vacuum on caller's thread, regardless of the amount of dead bytes.
+     */
+    void vacuum() throws IOException, InterruptedException {
+        if (vacuum == null) {
+            throw new IllegalStateException("Vacuum is not enabled");
+        }
+        vacuum.run();
+    }
+
+    /**
+     * @return pool of pages or null, when pages are not pooled
+     */
+    BufferPool bufferPool() {
+        return pageProvider.bufferPool();
+    }
+
+    int nrOfPages() {
+        return pageProvider.pageNumber();
+    }
+
+    double deadBytesRatio() {
+        int nrOfPages = pageProvider.pageNumber();
+        return nrOfPages == 0 ? 0 : (double) freeSpaceMap.totalDeadBytes() / ((long) nrOfPages * pageSize);
+    }
+
+    /**
+     * Only the page is latched, concurrent operations on other pages are not blocked.
+     *
+     * @return true, when page had dead records and was compacted
+     */
+    boolean compactPage(int pageNumber) throws IOException {
+        long fileStamp = lock.readLock();
+        try {
+            if (pageNumber > pageProvider.pageNumber() || freeSpaceMap.deadBytes(pageNumber) == 0) {
+                return false;
+            }
+            var latch = pageProvider.latch(pageNumber);
+            long stamp = latch.writeLock();
+            try (var page = pageProvider.page(pageNumber)) {
+                compact(page);
+            } finally {
+                latch.unlockWrite(stamp);
+            }
+            return true;
+        } finally {
+            lock.unlockRead(fileStamp);
+        }
+    }
+
+    /**
+     * Moves live records of the last page to free space of lower pages and cuts off the last page,
+     * under exclusive file lock.
+     *
+     * @return true, when file was truncated by one page
+     */
+    boolean shrinkTail() throws IOException {
+        long fileStamp = lock.writeLock();
+        try {
+            int tailPageNumber = pageProvider.pageNumber();
+            if (tailPageNumber == 0) {
+                return false;
+            }
+            var liveRecords = new ArrayList<EntryRecord>();
+            try (var tailPage = pageProvider.page(tailPageNumber)) {
+                for (var record : tailPage.records()) {
+                    if (isCurrent(tailPageNumber, record)) {
+                        liveRecords.add(record.toEntryRecord());
+                    }
+                }
+            }
+            for (var record : liveRecords) {
+                int pageNumber = freeSpaceMap.findPageBelow(record.recordSize(), tailPageNumber);
+                if (pageNumber == FreeSpaceMap.NO_PAGE) {
+                    return false;
+                }
+                if (writeAheadLog != null) {
+                    writeAheadLog.logPut(record.keyBytes(), record.valueBytes());
+                }
+                RecordLocation superseded;
+                try (var page = pageProvider.page(pageNumber)) {
+                    if (page.remainingSpace() < record.recordSize()) {
+                        compact(page);
+                    }
+                    superseded = append(page, record);
+                }
+                if (superseded != null) {
+                    deleteSuperseded(record.keyBytes(), superseded);
+                }
+            }
+            pageProvider.truncate(tailPageNumber - 1);
+            freeSpaceMap.truncate(tailPageNumber - 1);
+            return true;
+        } finally {
+            lock.unlockWrite(fileStamp);
+        }
+    }
+
+    /**
+     * Called with key latch held. Live version of the key is overwritten in place when the new value is not longer,
+     * otherwise the record is appended and the old version is deleted afterwards, so the key is never missing
+     * for concurrent readers. Either way a key has a single live record.
+     * <p>
+     * Without key index or page filters finding the live version would take a scan of the file, so the record
+     * is only appended, older versions stay behind it until the key is removed, see {@link #removeVersions(byte[], RecordLocation)}.
+     *
+     * @return value bytes of the replaced version, or null when it was not looked up
+     */
+    private byte[] putRecord(EntryRecord record) throws IOException {
+        if (keyDirectory == null && pageFilters == null) {
+            appendRecord(record);
+            return null;
+        }
+        byte[] previous = null;
+        RecordLocation replaced = null;
+        try (var pageWithRecord = findPageWithRecord(record.keyBytes(), true)) {
             if (pageWithRecord != null) {
-                return pageWithRecord.record().entry().value();
+                previous = pageWithRecord.record().valueBytes();
+                if (overwrite(pageWithRecord, record)) {
+                    return previous;
+                }
+                replaced = locationOf(pageWithRecord.page().pageNumber(), pageWithRecord.record());
+            }
+        }
+        var superseded = appendRecord(record);
+        if (superseded == null && keyDirectory == null) {
+            superseded = replaced;
+        }
+        if (superseded != null) {
+            deleteSuperseded(record.keyBytes(), superseded);
+        }
+        return previous;
+    }
+
+    /**
+     * Called with key latch and exclusive latch of the page held. Record keeps its offset, so only its size changes
+     * in key index, bytes left after the new value are dead until the page is compacted.
+     *
+     * @return false, when the new value does not fit into the current record
+     */
+    private boolean overwrite(PageWithRecord pageWithRecord, EntryRecord record) throws IOException {
+        var page = pageWithRecord.page();
+        var current = pageWithRecord.record();
+        if (!page.overwrite(current.pageOffset(), record)) {
+            return false;
+        }
+        if (keyDirectory != null) {
+            keyDirectory.put(record.keyBytes(), new RecordLocation(page.pageNumber(), current.pageOffset(), record.recordSize()));
+        }
+        pageProvider.save(page);
+        if (freeSpaceMap != null) {
+            freeSpaceMap.addDeadBytes(page.pageNumber(), current.recordSize() - record.recordSize());
+        }
+        return true;
+    }
+
+    /**
+     * Called with key latch and exclusive latch of the page held. Key is dropped from key index before the record
+     * is marked deleted, so readers never find deleted record under current location.
+     */
+    private void removeRecord(PageWithRecord pageWithRecord) throws IOException {
+        var page = pageWithRecord.page();
+        if (keyDirectory != null) {
+            keyDirectory.remove(pageWithRecord.keyBytes());
+        }
+        page.markDeleted(pageWithRecord.record().pageOffset());
+        pageProvider.save(page);
+        if (freeSpaceMap != null) {
+            freeSpaceMap.addDeadBytes(page.pageNumber(), pageWithRecord.record().recordSize());
+        }
+    }
+
+    /**
+     * Removes the key from file without key index or page filters, where put leaves older versions of the key live
+     * behind the newest one, with key latch held. Older versions are deleted first, so readers find the newest
+     * version until it is deleted at last, and never an older one.
+     */
+    private void removeVersions(byte[] keyBytes, RecordLocation newest) throws IOException {
+        for (int pageNumber = newest.pageNumber(); pageNumber > 0; pageNumber--) {
+            var latch = pageProvider.latch(pageNumber);
+            long stamp = latch.writeLock();
+            try (var page = pageProvider.page(pageNumber)) {
+                boolean deleted = false;
+                for (var record : page.records()) {
+                    if (!record.deleted() && Arrays.equals(record.keyBytes(), keyBytes)
+                            && !locationOf(pageNumber, record).equals(newest)) {
+                        page.markDeleted(record.pageOffset());
+                        deleted = true;
+                    }
+                }
+                if (deleted) {
+                    pageProvider.save(page);
+                }
+            } finally {
+                latch.unlockWrite(stamp);
+            }
+        }
+        deleteSuperseded(keyBytes, newest);
+    }
+
+    /**
+     * Applies operations logged since the last checkpoint, which may be already applied in full or in part,
+     * as puts and removes replace the whole value of a key, applying them again in order gives the same result.
+     */
+    private void replayLog() throws IOException {
+        int operations = writeAheadLog.replay(new WriteAheadLog.Replayer() {
+            @Override
+            public void put(byte[] keyBytes, byte[] valueBytes) throws IOException {
+                putRecord(EntryRecord.fromBytes(keyBytes, valueBytes));
+            }
+
+            @Override
+            public void remove(byte[] keyBytes) throws IOException {
+                RecordLocation newest = null;
+                try (var pageWithRecord = findPageWithRecord(keyBytes, true)) {
+                    if (pageWithRecord == null) {
+                        return;
+                    }
+                    if (keyDirectory != null || pageFilters != null) {
+                        removeRecord(pageWithRecord);
+                    } else {
+                        newest = locationOf(pageWithRecord.page().pageNumber(), pageWithRecord.record());
+                    }
+                }
+                if (newest != null) {
+                    removeVersions(keyBytes, newest);
+                }
+            }
+        });
+        if (operations > 0) {
+            checkpointLocked();
+        }
+    }
+
+    /**
+     * Called without the file lock, which is taken exclusively only when the log is big enough.
+     */
+    private void checkpointIfNeeded() throws IOException {
+        if (writeAheadLog == null || writeAheadLog.size() < checkpointBytes) {
+            return;
+        }
+        long fileStamp = lock.writeLock();
+        try {
+            if (writeAheadLog.size() >= checkpointBytes) {
+                checkpointLocked();
             }
         } finally {
-            lock.writeLock().unlock();
+            lock.unlockWrite(fileStamp);
+        }
+    }
+
+    /**
+     * Log is forced before dirty pages are written, pages are forced before the log is dropped.
+     */
+    private void checkpointLocked() throws IOException {
+        writeAheadLog.sync();
+        pageProvider.flush();
+        pageProvider.force();
+        writeAheadLog.checkpoint();
+    }
+
+    /**
+     * Appends the record to the first page with enough room or to the last page. Superseded version of the record
+     * on the same page is deleted right away, under the latch of the page.
+     *
+     * @return location of superseded version of the record on another page, or null
+     */
+    private RecordLocation appendRecord(EntryRecord record) throws IOException {
+        int recordSize = record.recordSize();
+        if (freeSpaceMap != null) {
+            int pageNumber = freeSpaceMap.findPage(recordSize);
+            if (pageNumber != FreeSpaceMap.NO_PAGE) {
+                var latch = pageProvider.latch(pageNumber);
+                long stamp = latch.writeLock();
+                try (var page = pageProvider.page(pageNumber)) {
+                    if (page.remainingSpace() < recordSize) {
+                        compact(page);
+                    }
+                    if (page.remainingSpace() >= recordSize) {
+                        return append(page, record);
+                    }
+                } finally {
+                    latch.unlockWrite(stamp);
+                }
+            }
+        }
+        var allocationLock = pageProvider.allocationLock();
+        allocationLock.lock();
+        try {
+            // new page is not visible to others until it is saved, so the latch of the last page is enough
+            var latch = pageProvider.latch(pageProvider.pageNumber());
+            long stamp = latch.writeLock();
+            try (var page = pageProvider.pageForAppending(recordSize)) {
+                return append(page, record);
+            } finally {
+                latch.unlockWrite(stamp);
+            }
+        } finally {
+            allocationLock.unlock();
         }
-        return null;
     }
 
-    private PageWithRecord findPageWithRecord(Serializable key) throws IOException, ClassNotFoundException {
+    private RecordLocation append(RecordPage page, EntryRecord record) throws IOException {
+        var pageRecord = appendUnsaved(page, record);
+        pageProvider.save(page);
+        updateFreeBytes(page);
+        return publish(page.pageNumber(), record, pageRecord);
+    }
+
+    /**
+     * Current version of the record on the same page is deleted right away, the new location of the record
+     * is not published yet, see {@link #publish(int, EntryRecord, PageRecord)}.
+     */
+    private PageRecord appendUnsaved(RecordPage page, EntryRecord record) {
+        var pageRecord = page.append(record);
+        if (pageFilters != null) {
+            pageFilters.add(page.pageNumber(), PageFilters.hash(record.keyBytes()));
+        }
+        if (keyDirectory == null) {
+            return pageRecord;
+        }
+        var current = keyDirectory.get(record.keyBytes());
+        if (current != null && current.pageNumber() == page.pageNumber()) {
+            page.markDeleted(current.pageOffset());
+            if (freeSpaceMap != null) {
+                freeSpaceMap.addDeadBytes(current.pageNumber(), current.recordSize());
+            }
+        }
+        return pageRecord;
+    }
+
+    /**
+     * Puts location of the record into key index once its page is saved, so readers following the index never
+     * reach a new page before it is counted in the file.
+     *
+     * @return location of superseded version of the record on another page, or null
+     */
+    private RecordLocation publish(int pageNumber, EntryRecord record, PageRecord pageRecord) {
+        if (keyDirectory == null) {
+            return null;
+        }
+        var superseded = keyDirectory.put(record.keyBytes(), new RecordLocation(pageNumber, pageRecord.pageOffset(), pageRecord.recordSize()));
+        return superseded != null && superseded.pageNumber() != pageNumber ? superseded : null;
+    }
+
+    private void updateFreeBytes(RecordPage page) {
+        if (freeSpaceMap != null) {
+            freeSpaceMap.updateFreeBytes(page.pageNumber(), page.remainingSpace());
+        }
+    }
+
+    /**
+     * Called under exclusive file lock. Superseded versions of the records are deleted once all new pages are saved,
+     * without key index they are found with a single scan of the file before anything is appended.
+     */
+    private void appendAll(Collection<EntryRecord> records) throws IOException {
+        var pending = new ArrayDeque<>(records);
+        var superseded = new LinkedHashMap<KeyDirectory.Key, RecordLocation>();
+        if (keyDirectory == null) {
+            var keys = new HashSet<KeyDirectory.Key>();
+            for (var record : records) {
+                keys.add(new KeyDirectory.Key(record.keyBytes()));
+            }
+            scanLiveRecords(keys, (pageNumber, key, record) -> superseded.put(key, locationOf(pageNumber, record)));
+        }
+        if (pageProvider.pageNumber() > 0) {
+            try (var lastPage = pageProvider.page(pageProvider.pageNumber())) {
+                int remainingSpace = lastPage.remainingSpace();
+                while (!pending.isEmpty() && lastPage.remainingSpace() >= pending.peek().recordSize()) {
+                    appendUnsavedTracking(lastPage, pending.poll(), superseded);
+                }
+                if (lastPage.remainingSpace() != remainingSpace) {
+                    pageProvider.save(lastPage);
+                    updateFreeBytes(lastPage);
+                }
+            }
+        }
+        var buffers = new ArrayList<ByteBuffer>();
+        var run = new ArrayList<RecordPage>();
+        RecordPage page = null;
+        while (!pending.isEmpty()) {
+            var record = pending.poll();
+            if (page == null || page.remainingSpace() < record.recordSize()) {
+                if (run.size() == BULK_RUN_PAGES) {
+                    saveRun(run);
+                }
+                if (buffers.size() == run.size()) {
+                    buffers.add(ByteBuffer.allocate(pageSize));
+                }
+                var buffer = buffers.get(run.size());
+                Arrays.fill(buffer.array(), (byte) 0);
+                buffer.clear();
+                page = new RecordPage(pageSize, buffer, pageProvider.pageNumber() + run.size() + 1);
+                run.add(page);
+            }
+            appendUnsavedTracking(page, record, superseded);
+        }
+        saveRun(run);
+        for (var location : superseded.entrySet()) {
+            deleteSuperseded(location.getKey().bytes(), location.getValue());
+        }
+    }
+
+    /**
+     * Location is published before the page is saved, which is safe only under exclusive file lock.
+     */
+    private void appendUnsavedTracking(RecordPage page, EntryRecord record, Map<KeyDirectory.Key, RecordLocation> superseded) {
+        var location = publish(page.pageNumber(), record, appendUnsaved(page, record));
+        if (location != null) {
+            superseded.put(new KeyDirectory.Key(record.keyBytes()), location);
+        }
+    }
+
+    private void saveRun(List<RecordPage> run) throws IOException {
+        pageProvider.saveNewPages(run);
+        for (var page : run) {
+            updateFreeBytes(page);
+        }
+        run.clear();
+    }
+
+    /**
+     * Deletes version of the record superseded by a newer one, with key latch held. With key index the newer one
+     * is on another page and compaction may have moved or dropped the version in the meantime, so it is looked up
+     * by the key, any live record of the key on that page is superseded. Without key index records never move,
+     * but the newer one may be on the same page, so the version is looked up at its offset.
+     */
+    private void deleteSuperseded(byte[] keyBytes, RecordLocation superseded) throws IOException {
+        int pageNumber = superseded.pageNumber();
+        var latch = pageProvider.latch(pageNumber);
+        long stamp = latch.writeLock();
+        try (var page = pageProvider.page(pageNumber)) {
+            var record = keyDirectory != null ? page.find(keyBytes) : page.findAt(superseded.pageOffset(), keyBytes);
+            if (record != null && !record.deleted()) {
+                page.markDeleted(record.pageOffset());
+                pageProvider.save(page);
+                if (freeSpaceMap != null) {
+                    freeSpaceMap.addDeadBytes(pageNumber, record.recordSize());
+                }
+            }
+        } finally {
+            latch.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Drops deleted and superseded records from the page, with exclusive latch of the page held. Records which stay
+     * get their new locations, unless a concurrent put already moved the key to another page, then the record
+     * is deleted by that put.
+     */
+    private void compact(RecordPage page) throws IOException {
+        int pageNumber = page.pageNumber();
+        var locations = new HashMap<KeyDirectory.Key, RecordLocation>();
+        page.compact(record -> {
+            if (!isCurrent(pageNumber, record)) {
+                return false;
+            }
+            locations.put(new KeyDirectory.Key(record.keyBytes()), locationOf(pageNumber, record));
+            return true;
+        });
+        pageProvider.save(page);
+        for (var record : page.records()) {
+            var location = locations.get(new KeyDirectory.Key(record.keyBytes()));
+            keyDirectory.replace(record.keyBytes(), location, locationOf(pageNumber, record));
+        }
+        freeSpaceMap.clearDeadBytes(pageNumber);
+        freeSpaceMap.updateFreeBytes(pageNumber, page.remainingSpace());
+    }
+
+    /**
+     * Rebuilds in-memory structures from pages of already existing file. Pages and their records are visited
+     * newest first, so the first live record of a key wins and all other records of the page are dead.
+     * Page filters are rebuilt only when they were not stored on close.
+     */
+    private void recover(boolean rebuildPageFilters) {
+        if ((keyDirectory == null && !rebuildPageFilters) || pageProvider.pageNumber() == 0) {
+            return;
+        }
         var pageIterator = pageProvider.iterator();
-        var keyBytes = EntryRecord.keyToBytes(key);
         while (pageIterator.hasNext()) {
-            var page = pageIterator.next();
-            var pageRecord = page.search(keyBytes);
-            if (pageRecord != null && pageRecord.notDeleted()) {
-                return new PageWithRecord(page, pageRecord);
+            try (var page = pageIterator.next()) {
+                int liveBytes = 0;
+                for (var record : page.records()) {
+                    if (rebuildPageFilters) {
+                        pageFilters.add(page.pageNumber(), PageFilters.hash(record.keyBytes()));
+                    }
+                    if (keyDirectory == null) {
+                        continue;
+                    }
+                    if (!record.deleted() && keyDirectory.get(record.keyBytes()) == null) {
+                        keyDirectory.put(record.keyBytes(), locationOf(page.pageNumber(), record));
+                        liveBytes += record.recordSize();
+                    }
+                }
+                if (freeSpaceMap != null) {
+                    int freeBytes = page.remainingSpace();
+                    freeSpaceMap.updateFreeBytes(page.pageNumber(), freeBytes);
+                    freeSpaceMap.addDeadBytes(page.pageNumber(), pageSize - RecordPage.HEADER_BYTES - freeBytes - liveBytes);
+                }
             }
         }
+    }
+
+    private boolean isCurrent(int pageNumber, EntryRecord.PartialEntryRecord record) {
+        return !record.deleted() && locationOf(pageNumber, record).equals(keyDirectory.get(record.keyBytes()));
+    }
+
+    private static RecordLocation locationOf(int pageNumber, EntryRecord.PartialEntryRecord record) {
+        return new RecordLocation(pageNumber, record.pageOffset(), record.recordSize());
+    }
+
+    /**
+     * Keys are grouped by page, location of a key is checked again under the latch of the page,
+     * keys moved in the meantime are looked up one by one.
+     */
+    private void getAllIndexed(Map<KeyDirectory.Key, Serializable> pending, Map<Serializable, Object> values)
+            throws IOException, ClassNotFoundException {
+        var locationsByPage = new TreeMap<Integer, List<KeyDirectory.Key>>();
+        for (var key : pending.keySet()) {
+            var location = keyDirectory.get(key.bytes());
+            if (location != null) {
+                locationsByPage.computeIfAbsent(location.pageNumber(), pageNumber -> new ArrayList<>()).add(key);
+            }
+        }
+        var moved = new ArrayList<KeyDirectory.Key>();
+        for (var pageKeys : locationsByPage.entrySet()) {
+            int pageNumber = pageKeys.getKey();
+            var latch = pageProvider.latch(pageNumber);
+            long stamp = latch.readLock();
+            try (var page = pageProvider.page(pageNumber)) {
+                for (var key : pageKeys.getValue()) {
+                    var location = keyDirectory.get(key.bytes());
+                    if (location == null) {
+                        continue;
+                    }
+                    if (location.pageNumber() != pageNumber) {
+                        moved.add(key);
+                        continue;
+                    }
+                    var record = page.findAt(location.pageOffset(), key.bytes());
+                    if (record == null || record.deleted()) {
+                        throw new IllegalStateException(String.format("Key directory points to %s, which does not hold live record",
+                                location));
+                    }
+                    values.put(pending.get(key), record.value(codec));
+                }
+            } finally {
+                latch.unlockRead(stamp);
+            }
+        }
+        for (var key : moved) {
+            try (var pageWithRecord = findIndexedPageWithRecord(key.bytes(), false)) {
+                if (pageWithRecord != null) {
+                    values.put(pending.get(key), pageWithRecord.record().value(codec));
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream over pages which are in the file when it is created, records are read from every page
+     * under the file lock in shared mode and the latch of the page, and copied by the reader before both are released,
+     * see {@link PageRangeSpliterator}. With key index only current records of keys are read.
+     * Every range of pages is read ahead on its own.
+     * <p>
+     * Without key index or page filters older versions of a key stay live behind the newest one, see
+     * {@link #putRecord(EntryRecord)}, so pages are read newest first and only the first live record of a key is read,
+     * which takes the keys read so far. Pages are read by a single thread then, even for a parallel stream.
+     */
+    private <T> Stream<T> scan(Function<EntryRecord.PartialEntryRecord, T> reader) {
+        if (keyDirectory == null && pageFilters == null) {
+            var readKeys = new HashSet<KeyDirectory.Key>();
+            var readahead = pageProvider.readahead();
+            var pages = IntStream.iterate(pageProvider.pageNumber(), pageNumber -> pageNumber > 0, pageNumber -> pageNumber - 1)
+                    .mapToObj(pageNumber -> readLiveRecords(pageNumber, reader, readahead, readKeys))
+                    .iterator();
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED), false)
+                    .flatMap(List::stream);
+        }
+        var spliterator = new PageRangeSpliterator<>(() -> {
+            var readahead = pageProvider.readahead();
+            return pageNumber -> readLiveRecords(pageNumber, reader, readahead, null);
+        }, 1, pageProvider.pageNumber() + 1);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * @param readKeys keys of records read so far, which are not read again, newest records of the page are read first,
+     *                 null when every live record is read
+     * @return live records of the page in the order they were appended, none when the file was shrunk in the meantime
+     */
+    private <T> List<T> readLiveRecords(int pageNumber, Function<EntryRecord.PartialEntryRecord, T> reader, Readahead readahead,
+                                        Set<KeyDirectory.Key> readKeys) {
+        var liveRecords = new ArrayList<T>();
+        long fileStamp = lock.readLock();
+        try {
+            if (pageNumber > pageProvider.pageNumber()) {
+                return liveRecords;
+            }
+            var latch = pageProvider.latch(pageNumber);
+            long stamp = latch.readLock();
+            try (var page = pageProvider.page(pageNumber, readahead)) {
+                for (var record : page.records()) {
+                    boolean live = keyDirectory != null ? isCurrent(pageNumber, record) : !record.deleted();
+                    if (live && (readKeys == null || readKeys.add(new KeyDirectory.Key(record.keyBytes())))) {
+                        liveRecords.add(reader.apply(record));
+                    }
+                }
+                Collections.reverse(liveRecords);
+            } finally {
+                latch.unlockRead(stamp);
+            }
+        } finally {
+            lock.unlockRead(fileStamp);
+        }
+        return liveRecords;
+    }
+
+    private static Serializable decode(Decoder decoder, byte[] bytes) {
+        try {
+            return decoder.decode(bytes);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Error decoding entry", e);
+        }
+    }
+
+    /**
+     * Value bytes are copied under latches and decoded once the scan is done.
+     */
+    private void getAllScanning(Map<KeyDirectory.Key, Serializable> pending, Map<Serializable, Object> values)
+            throws IOException, ClassNotFoundException {
+        var valueBytes = new HashMap<Serializable, byte[]>();
+        scanLiveRecords(pending.keySet(), (pageNumber, key, record) -> valueBytes.put(pending.get(key), record.valueBytes()));
+        for (var found : valueBytes.entrySet()) {
+            values.put(found.getKey(), codec.decodeValue(found.getValue()));
+        }
+    }
+
+    /**
+     * Follows {@link #findPageWithRecord(byte[], boolean)} for many keys in a single pass over pages, only the newest
+     * record of a key in a page counts, when it is deleted older pages are searched. Found keys are removed from
+     * the given set, after the consumer is called under shared latch of the page.
+     */
+    private void scanLiveRecords(Set<KeyDirectory.Key> pending, LiveRecordConsumer consumer) {
+        var keyHashes = new HashMap<KeyDirectory.Key, Long>();
+        if (pageFilters != null) {
+            for (var key : pending) {
+                keyHashes.put(key, PageFilters.hash(key.bytes()));
+            }
+        }
+        var seenInPage = new HashSet<KeyDirectory.Key>();
+        var readahead = pageProvider.readahead();
+        for (int pageNumber = pageProvider.pageNumber(); !pending.isEmpty() && pageNumber > 0; pageNumber--) {
+            var latch = pageProvider.latch(pageNumber);
+            long stamp = latch.readLock();
+            if (pageFilters != null && !mightContainAny(pageNumber, pending, keyHashes)) {
+                latch.unlockRead(stamp);
+                continue;
+            }
+            try (var page = pageProvider.page(pageNumber, readahead)) {
+                seenInPage.clear();
+                for (var record : page.records()) {
+                    var key = new KeyDirectory.Key(record.keyBytes());
+                    if (pending.contains(key) && seenInPage.add(key) && !record.deleted()) {
+                        consumer.accept(pageNumber, key, record);
+                        pending.remove(key);
+                    }
+                }
+            } finally {
+                latch.unlockRead(stamp);
+            }
+        }
+    }
+
+    private boolean mightContainAny(int pageNumber, Collection<KeyDirectory.Key> keys, Map<KeyDirectory.Key, Long> keyHashes) {
+        for (var key : keys) {
+            if (pageFilters.mightContain(pageNumber, keyHashes.get(key))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Optimistic lookup, pages are read without the file lock and validated against the stamp taken before,
+     * the lookup is repeated under the file lock in shared mode only when an operation on the whole file ran
+     * in the meantime. Exceptions thrown while reading a page which changed under the reader are not reported.
+     *
+     * @return copy of value bytes, or null when the key is not found
+     */
+    private byte[] findValueBytes(byte[] keyBytes) {
+        long fileStamp = lock.tryOptimisticRead();
+        if (fileStamp != 0) {
+            try {
+                var valueBytes = lookupValueBytes(keyBytes);
+                if (lock.validate(fileStamp)) {
+                    return valueBytes;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(fileStamp)) {
+                    throw e;
+                }
+            }
+        }
+        fileStamp = lock.readLock();
+        try {
+            return lookupValueBytes(keyBytes);
+        } finally {
+            lock.unlockRead(fileStamp);
+        }
+    }
+
+    /**
+     * Follows {@link #findPageWithRecord(byte[], boolean)}. With parallel search pages are read by threads
+     * of its pool, while this thread waits for them, so they are covered by the file stamp or lock taken by the caller.
+     */
+    private byte[] lookupValueBytes(byte[] keyBytes) {
+        if (keyDirectory != null) {
+            return readIndexedValueBytes(keyBytes);
+        }
+        long keyHash = pageFilters != null ? PageFilters.hash(keyBytes) : 0;
+        if (parallelSearch != null) {
+            return parallelSearch.search(pageProvider.pageNumber(), pageNumber -> readValueBytes(pageNumber, keyBytes, keyHash, null));
+        }
+        var readahead = pageProvider.readahead();
+        for (int pageNumber = pageProvider.pageNumber(); pageNumber > 0; pageNumber--) {
+            var valueBytes = readValueBytes(pageNumber, keyBytes, keyHash, readahead);
+            if (valueBytes != null) {
+                return valueBytes;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the newest record of the key in the page without latch, it counts only when the latch was not taken
+     * exclusively in the meantime, otherwise the read is repeated, after {@link #OPTIMISTIC_ATTEMPTS} attempts
+     * or when the page is being changed right now the latch is taken in shared mode. Page is not read at all,
+     * when its filter tells it does not hold the key.
+     *
+     * @param readahead readahead of the caller going through pages newest first, or null
+     * @return copy of value bytes of live record, or null
+     */
+    private byte[] readValueBytes(int pageNumber, byte[] keyBytes, long keyHash, Readahead readahead) {
+        var latch = pageProvider.latch(pageNumber);
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = latch.tryOptimisticRead();
+            if (stamp == 0) {
+                break;
+            }
+            if (pageFilters != null && !pageFilters.mightContain(pageNumber, keyHash)) {
+                if (latch.validate(stamp)) {
+                    return null;
+                }
+                continue;
+            }
+            try (var page = pageProvider.page(pageNumber, readahead)) {
+                var record = page.find(keyBytes);
+                var valueBytes = record != null && !record.deleted() ? record.valueBytes() : null;
+                if (latch.validate(stamp)) {
+                    return valueBytes;
+                }
+            } catch (RuntimeException e) {
+                if (latch.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        try (var pageWithRecord = latchedPageWithRecord(pageNumber, keyBytes, keyHash, false, readahead)) {
+            return pageWithRecord != null ? pageWithRecord.record().valueBytes() : null;
+        }
+    }
+
+    /**
+     * Same as {@link #readValueBytes(int, byte[], long, Readahead)}, location of the key is checked again when the record
+     * is not found there, as the key may have been moved.
+     */
+    private byte[] readIndexedValueBytes(byte[] keyBytes) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            var location = keyDirectory.get(keyBytes);
+            if (location == null) {
+                return null;
+            }
+            var latch = pageProvider.latch(location.pageNumber());
+            long stamp = latch.tryOptimisticRead();
+            if (stamp == 0) {
+                break;
+            }
+            try (var page = pageProvider.page(location.pageNumber())) {
+                var record = page.findAt(location.pageOffset(), keyBytes);
+                var valueBytes = record != null && !record.deleted() ? record.valueBytes() : null;
+                if (latch.validate(stamp)) {
+                    if (valueBytes != null) {
+                        return valueBytes;
+                    }
+                    if (location.equals(keyDirectory.get(keyBytes)) && latch.validate(stamp)) {
+                        throw new IllegalStateException(String.format("Key directory points to %s, which does not hold live record", location));
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (latch.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        try (var pageWithRecord = findIndexedPageWithRecord(keyBytes, false)) {
+            return pageWithRecord != null ? pageWithRecord.record().valueBytes() : null;
+        }
+    }
+
+    /**
+     * Follows {@link #findPageWithRecord(byte[], boolean)}, the value is passed to the consumer while the page is latched.
+     */
+    private boolean viewScannedValue(ViewBuffers buffers, Consumer<ByteBuffer> consumer) {
+        byte[] keyBytes = buffers.keyBytes;
+        long keyHash = pageFilters != null ? PageFilters.hash(keyBytes) : 0;
+        var readahead = pageProvider.readahead();
+        for (int pageNumber = scanStart(keyBytes, keyHash); pageNumber > 0; pageNumber--) {
+            var latch = pageProvider.latch(pageNumber);
+            long stamp = latch.readLock();
+            try {
+                if (pageFilters != null && !pageFilters.mightContain(pageNumber, keyHash)) {
+                    continue;
+                }
+                try (var page = pageProvider.page(pageNumber, readahead)) {
+                    int slot = page.findSlot(keyBytes);
+                    if (slot >= 0 && !page.deleted(slot)) {
+                        buffers.accept(page, slot, consumer);
+                        return true;
+                    }
+                }
+            } finally {
+                latch.unlockRead(stamp);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Follows {@link #findIndexedPageWithRecord(byte[], boolean)}, the value is passed to the consumer while the page
+     * is latched.
+     */
+    private boolean viewIndexedValue(ViewBuffers buffers, Consumer<ByteBuffer> consumer) {
+        byte[] keyBytes = buffers.keyBytes;
+        while (true) {
+            var location = keyDirectory.get(keyBytes);
+            if (location == null) {
+                return false;
+            }
+            var latch = pageProvider.latch(location.pageNumber());
+            long stamp = latch.readLock();
+            try (var page = pageProvider.page(location.pageNumber())) {
+                int slot = page.findSlotAt(location.pageOffset(), keyBytes);
+                if (slot >= 0 && !page.deleted(slot)) {
+                    buffers.accept(page, slot, consumer);
+                    return true;
+                }
+                if (location.equals(keyDirectory.get(keyBytes))) {
+                    throw new IllegalStateException(String.format("Key directory points to %s, which does not hold live record", location));
+                }
+            } finally {
+                latch.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * @return page where the scan for the key starts, 0 when parallel search found no live record of the key
+     */
+    private int scanStart(byte[] keyBytes, long keyHash) {
+        if (parallelSearch == null) {
+            return pageProvider.pageNumber();
+        }
+        Integer matchedPage = parallelSearch.search(pageProvider.pageNumber(),
+                pageNumber -> readValueBytes(pageNumber, keyBytes, keyHash, null) != null ? pageNumber : null);
+        return matchedPage != null ? matchedPage : 0;
+    }
+
+    /**
+     * Returned page stays latched, in exclusive mode when asked for, until it is closed.
+     * Exclusive lookup requires key latch, so the record cannot change between the scan and the latch.
+     * Parallel search only tells where the scan starts, as pages are latched by this thread.
+     */
+    private PageWithRecord findPageWithRecord(byte[] keyBytes, boolean exclusive) {
+        if (keyDirectory != null) {
+            return findIndexedPageWithRecord(keyBytes, exclusive);
+        }
+        long keyHash = pageFilters != null ? PageFilters.hash(keyBytes) : 0;
+        var readahead = pageProvider.readahead();
+        for (int pageNumber = scanStart(keyBytes, keyHash); pageNumber > 0; pageNumber--) {
+            var pageWithRecord = latchedPageWithRecord(pageNumber, keyBytes, keyHash, false, readahead);
+            if (pageWithRecord != null) {
+                if (!exclusive) {
+                    return pageWithRecord;
+                }
+                pageWithRecord.close();
+                return latchedPageWithRecord(pageNumber, keyBytes, keyHash, true, null);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Page latched exclusively is never served by readahead, as it is going to be changed.
+     *
+     * @return newest record of the key in the page, when it is live, or null with the latch released
+     */
+    private PageWithRecord latchedPageWithRecord(int pageNumber, byte[] keyBytes, long keyHash, boolean exclusive,
+                                                 Readahead readahead) {
+        var latch = pageProvider.latch(pageNumber);
+        long stamp = exclusive ? latch.writeLock() : latch.readLock();
+        if (pageFilters != null && !pageFilters.mightContain(pageNumber, keyHash)) {
+            latch.unlock(stamp);
+            return null;
+        }
+        RecordPage page = null;
+        try {
+            page = exclusive ? pageProvider.page(pageNumber) : pageProvider.page(pageNumber, readahead);
+            var pageRecord = page.find(keyBytes);
+            if (pageRecord != null && !pageRecord.deleted()) {
+                return new PageWithRecord(page, pageRecord, keyBytes, latch, stamp);
+            }
+        } catch (RuntimeException e) {
+            release(page, latch, stamp);
+            throw e;
+        }
+        release(page, latch, stamp);
         return null;
     }
 
-    static final class PageWithRecord {
+    /**
+     * Location of the key may change, when the page is compacted or the key is put again, before the page is latched,
+     * then the lookup is repeated. Under the latch location of the key in the page is stable.
+     */
+    private PageWithRecord findIndexedPageWithRecord(byte[] keyBytes, boolean exclusive) {
+        while (true) {
+            var location = keyDirectory.get(keyBytes);
+            if (location == null) {
+                return null;
+            }
+            var latch = pageProvider.latch(location.pageNumber());
+            long stamp = exclusive ? latch.writeLock() : latch.readLock();
+            RecordPage page = null;
+            try {
+                page = pageProvider.page(location.pageNumber());
+                var pageRecord = page.findAt(location.pageOffset(), keyBytes);
+                if (pageRecord != null && !pageRecord.deleted()) {
+                    return new PageWithRecord(page, pageRecord, keyBytes, latch, stamp);
+                }
+                if (location.equals(keyDirectory.get(keyBytes))) {
+                    throw new IllegalStateException(String.format("Key directory points to %s, which does not hold live record", location));
+                }
+            } catch (RuntimeException e) {
+                release(page, latch, stamp);
+                throw e;
+            }
+            release(page, latch, stamp);
+        }
+    }
+
+    private static void release(RecordPage page, StampedLock latch, long stamp) {
+        if (page != null) {
+            page.close();
+        }
+        latch.unlock(stamp);
+    }
+
+    @FunctionalInterface
+    private interface Decoder {
+        Serializable decode(byte[] bytes) throws IOException, ClassNotFoundException;
+    }
+
+    @FunctionalInterface
+    private interface LiveRecordConsumer {
+        void accept(int pageNumber, KeyDirectory.Key key, EntryRecord.PartialEntryRecord record);
+    }
+
+    /**
+     * Buffers of {@link #getView(Serializable, Consumer)} reused by a thread, the view is replaced only when
+     * the page is held by another frame or buffer than before.
+     */
+    private static final class ViewBuffers {
+        private byte[] keyBytes;
+        private Object viewSource;
+        private ByteBuffer view;
+        private boolean inUse;
+
+        private void accept(RecordPage page, int slot, Consumer<ByteBuffer> consumer) {
+            if (viewSource != page.viewSource()) {
+                viewSource = page.viewSource();
+                view = page.readOnlyView();
+            }
+            consumer.accept(page.valueView(slot, view));
+        }
+    }
+
+    /**
+     * Page is latched until it is closed, closing it closes the page and releases the latch.
+     */
+    static final class PageWithRecord implements AutoCloseable {
         private final RecordPage page;
-        private final PageRecord record;
+        private final EntryRecord.PartialEntryRecord record;
+        private final byte[] keyBytes;
+        private final StampedLock latch;
+        private final long stamp;
 
-        PageWithRecord(RecordPage page, PageRecord record) {
+        PageWithRecord(RecordPage page, EntryRecord.PartialEntryRecord record, byte[] keyBytes, StampedLock latch, long stamp) {
             this.page = page;
             this.record = record;
+            this.keyBytes = keyBytes;
+            this.latch = latch;
+            this.stamp = stamp;
         }
 
         RecordPage page() {
             return page;
         }
 
-        PageRecord record() {
+        EntryRecord.PartialEntryRecord record() {
             return record;
         }
 
+        byte[] keyBytes() {
+            return keyBytes;
+        }
+
+        @Override
+        public void close() {
+            release(page, latch, stamp);
+        }
+
         @Override
         public String toString() {
             return "PageWithRecord{" +
@@ -118,4 +1494,3 @@ class UnorderedHeapFile implements Store {
         }
     }
 }
-
@@ -0,0 +1,84 @@
+package introdb.heap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background compaction of {@link UnorderedHeapFile}. Every page with dead records is rewritten without them,
+ * then live records of the last page are moved to the free space of lower pages, so the file can be truncated.
+ * <p>
+ * Lock of the heap file is taken for a single page at a time, with a pause between pages.
+ */
+final class Vacuum implements Closeable {
+    private static final Logger LOG = Logger.getLogger("introdb.heap.vacuum");
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    private final UnorderedHeapFile heapFile;
+    private final double deadBytesRatio;
+    private final long throttleMillis;
+    private final ScheduledExecutorService executor;
+
+    Vacuum(UnorderedHeapFile heapFile, double deadBytesRatio, long throttleMillis) {
+        this.heapFile = heapFile;
+        this.deadBytesRatio = deadBytesRatio;
+        this.throttleMillis = throttleMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "introdb-vacuum");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void start() {
+        executor.scheduleWithFixedDelay(this::runIfNeeded, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compacts all pages with dead records and shrinks the file, on caller's thread.
+     */
+    void run() throws IOException, InterruptedException {
+        for (int pageNumber = 1; pageNumber <= heapFile.nrOfPages(); pageNumber++) {
+            if (heapFile.compactPage(pageNumber)) {
+                throttle();
+            }
+        }
+        while (heapFile.shrinkTail()) {
+            throttle();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runIfNeeded() {
+        try {
+            if (heapFile.deadBytesRatio() >= deadBytesRatio) {
+                run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Vacuum of heap file failed", e);
+        }
+    }
+
+    private void throttle() throws InterruptedException {
+        if (throttleMillis > 0) {
+            Thread.sleep(throttleMillis);
+        } else if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package introdb.heap;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Sequential log of puts and removes of {@link UnorderedHeapFile}, written before pages are changed and replayed
+ * on open, after a crash. Operations are logged with encoded keys and values, so they are replayed without codecs.
+ * <p>
+ * Byte structure of a single operation:
+ * - length of the payload as an int
+ * - CRC32 of the payload as an int
+ * - payload: operation type as a byte, key length as an int, key bytes and value bytes
+ * <p>
+ * Page is logged in full before its first write since the last checkpoint, with page number in place of the key
+ * length and page content in place of key and value bytes. Torn writes of pages are undone with these images
+ * on open, see {@link #restorePages(PageFile)}, operations are then replayed on top of them.
+ * <p>
+ * Log sequence numbers (LSN) grow monotonically, the log file holds operations since the last checkpoint,
+ * which is at {@link #checkpointLsn()}. Forces of the log by concurrent writers are batched in {@link Durability#GROUP}
+ * mode: the first waiting writer forces everything logged so far, others wait for it.
+ */
+final class WriteAheadLog implements Closeable {
+    private static final Logger LOG = Logger.getLogger("introdb.heap.wal");
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte PAGE = 3;
+
+    /**
+     * When logged operation becomes durable.
+     */
+    enum Durability {
+        /**
+         * Log is forced only before pages are written and on checkpoint, operations survive process crash only.
+         */
+        NONE,
+        /**
+         * Every operation forces the log on its own.
+         */
+        PER_OP,
+        /**
+         * Operation waits until the log is forced, concurrent operations share a single force.
+         */
+        GROUP,
+        /**
+         * Log is forced in background, in given interval, operations do not wait for it.
+         */
+        PERIODIC
+    }
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final ReentrantLock lock;
+    private final Condition forced;
+    private final ScheduledExecutorService syncExecutor;
+    private final BitSet imagedPages;
+    private long checkpointLsn;
+    private long appendedLsn;
+    private long durableLsn;
+    private boolean forcing;
+
+    /**
+     * @param syncIntervalMillis interval of background force in {@link Durability#PERIODIC} mode
+     */
+    WriteAheadLog(Path path, Durability durability, long syncIntervalMillis) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        this.durability = durability;
+        this.lock = new ReentrantLock();
+        this.forced = lock.newCondition();
+        this.imagedPages = new BitSet();
+        this.appendedLsn = channel.size();
+        this.durableLsn = appendedLsn;
+        if (durability == Durability.PERIODIC) {
+            this.syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "introdb-wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncExecutor.scheduleWithFixedDelay(this::syncInBackground, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.syncExecutor = null;
+        }
+    }
+
+    /**
+     * Receives operations of the log during {@link #replay(Replayer)}.
+     */
+    interface Replayer {
+        void put(byte[] keyBytes, byte[] valueBytes) throws IOException;
+
+        void remove(byte[] keyBytes) throws IOException;
+    }
+
+    /**
+     * @return LSN, which has to be passed to {@link #awaitDurable(long)}
+     */
+    long logPut(byte[] keyBytes, byte[] valueBytes) throws IOException {
+        return append(PUT, keyBytes, valueBytes);
+    }
+
+    /**
+     * @return LSN, which has to be passed to {@link #awaitDurable(long)}
+     */
+    long logRemove(byte[] keyBytes) throws IOException {
+        return append(REMOVE, keyBytes, new byte[0]);
+    }
+
+    /**
+     * Waits until operation with given LSN is durable, according to durability mode.
+     */
+    void awaitDurable(long lsn) throws IOException {
+        switch (durability) {
+            case PER_OP:
+                forceNow();
+                break;
+            case GROUP:
+                forceUpTo(lsn);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Logs image of the page, unless it was logged already since the last checkpoint, before the page is written.
+     *
+     * @return LSN of the image, which has to be durable before the page is written, or 0 when it was not logged
+     */
+    long logPageImage(int pageNumber, ByteBuffer page) throws IOException {
+        lock.lock();
+        try {
+            if (imagedPages.get(pageNumber)) {
+                return 0;
+            }
+            var content = page.duplicate();
+            byte[] pageBytes = new byte[content.remaining()];
+            content.get(pageBytes);
+            long lsn = append(PAGE, pageNumber, new byte[0], pageBytes);
+            imagedPages.set(pageNumber);
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pages are logged in full again after the page file was truncated, as images of the cut off pages must not
+     * be restored in place of pages appended later.
+     */
+    void truncated() {
+        lock.lock();
+        try {
+            imagedPages.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces the log up to given LSN, called before a page changed by operations up to it is written.
+     * Returns right away when the log was already forced that far.
+     */
+    void syncUpTo(long lsn) throws IOException {
+        forceUpTo(lsn);
+    }
+
+    /**
+     * Forces everything logged so far, called before the page file is truncated, on checkpoint and on close.
+     */
+    void sync() throws IOException {
+        long lsn;
+        lock.lock();
+        try {
+            lsn = appendedLsn;
+        } finally {
+            lock.unlock();
+        }
+        forceUpTo(lsn);
+    }
+
+    /**
+     * Drops logged operations, once all pages changed by them are durable in the heap file.
+     */
+    void checkpoint() throws IOException {
+        lock.lock();
+        try {
+            channel.truncate(0);
+            channel.force(true);
+            checkpointLsn = appendedLsn;
+            durableLsn = appendedLsn;
+            imagedPages.clear();
+            forced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long checkpointLsn() {
+        lock.lock();
+        try {
+            return checkpointLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * LSN of the last logged operation, pages changed now depend on operations up to it.
+     */
+    long appendedLsn() {
+        lock.lock();
+        try {
+            return appendedLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long durableLsn() {
+        lock.lock();
+        try {
+            return durableLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Bytes logged since the last checkpoint.
+     */
+    long size() {
+        lock.lock();
+        try {
+            return appendedLsn - checkpointLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes page images logged since the last checkpoint to the page file, before the page file is read on open.
+     * Later image of a page wins, images of pages above the size of the page file are skipped, as these pages
+     * were cut off. Pages are forced, so the images can be dropped by the next checkpoint.
+     *
+     * @return number of restored page images
+     */
+    int restorePages(PageFile pageFile) throws IOException {
+        long size = pageFile.size();
+        int[] pages = {0};
+        read((type, payload) -> {
+            if (type != PAGE) {
+                return;
+            }
+            int pageNumber = payload.getInt();
+            if ((pageNumber - 1L) * payload.remaining() < size) {
+                pageFile.write(pageNumber, payload.slice());
+                pages[0]++;
+            }
+        });
+        if (pages[0] > 0) {
+            LOG.warning(String.format("Restored %d page images from write ahead log", pages[0]));
+            pageFile.force();
+        }
+        return pages[0];
+    }
+
+    /**
+     * Passes logged operations to the replayer, in order. Log is cut at the first incomplete or corrupted operation,
+     * which was not durable when the log was written.
+     *
+     * @return number of replayed operations
+     */
+    int replay(Replayer replayer) throws IOException {
+        int[] operations = {0};
+        long validBytes = read((type, payload) -> {
+            if (type == PAGE) {
+                return;
+            }
+            byte[] keyBytes = new byte[payload.getInt()];
+            payload.get(keyBytes);
+            byte[] valueBytes = new byte[payload.remaining()];
+            payload.get(valueBytes);
+            if (type == PUT) {
+                replayer.put(keyBytes, valueBytes);
+            } else {
+                replayer.remove(keyBytes);
+            }
+            operations[0]++;
+        });
+        lock.lock();
+        try {
+            if (validBytes < channel.size()) {
+                LOG.warning(String.format("Cutting off %d bytes of incomplete write ahead log", channel.size() - validBytes));
+                channel.truncate(validBytes);
+            }
+            appendedLsn = checkpointLsn + validBytes;
+            durableLsn = appendedLsn;
+        } finally {
+            lock.unlock();
+        }
+        return operations[0];
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+            try {
+                syncExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the log up to the first incomplete or corrupted entry, passing payload of each entry after its type.
+     *
+     * @return bytes of complete entries
+     */
+    private long read(EntryReader reader) throws IOException {
+        long validBytes = 0;
+        channel.position(0);
+        var input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        var crc = new CRC32();
+        while (true) {
+            byte[] payload;
+            try {
+                int length = input.readInt();
+                int checksum = input.readInt();
+                if (length < 1 + Integer.BYTES || length > channel.size()) {
+                    break;
+                }
+                payload = new byte[length];
+                input.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            var buffer = ByteBuffer.wrap(payload);
+            reader.read(buffer.get(), buffer);
+            validBytes += HEADER_BYTES + payload.length;
+        }
+        return validBytes;
+    }
+
+    private long append(byte type, byte[] keyBytes, byte[] valueBytes) throws IOException {
+        return append(type, keyBytes.length, keyBytes, valueBytes);
+    }
+
+    /**
+     * @param number key length of operations, page number of page images
+     */
+    private long append(byte type, int number, byte[] keyBytes, byte[] valueBytes) throws IOException {
+        int length = 1 + Integer.BYTES + keyBytes.length + valueBytes.length;
+        var buffer = ByteBuffer.allocate(HEADER_BYTES + length);
+        buffer.position(HEADER_BYTES);
+        buffer.put(type).putInt(number).put(keyBytes).put(valueBytes);
+        var crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, length);
+        buffer.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+        buffer.clear();
+        lock.lock();
+        try {
+            long position = appendedLsn - checkpointLsn;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            appendedLsn += buffer.capacity();
+            return appendedLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void forceNow() throws IOException {
+        lock.lock();
+        try {
+            long lsn = appendedLsn;
+            channel.force(false);
+            durableLsn = Math.max(durableLsn, lsn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Group commit, the log lock is released while the log is forced, so other writers can append in the meantime.
+     */
+    private void forceUpTo(long lsn) throws IOException {
+        lock.lock();
+        try {
+            while (durableLsn < lsn) {
+                if (forcing) {
+                    forced.awaitUninterruptibly();
+                    continue;
+                }
+                forcing = true;
+                long target = appendedLsn;
+                boolean success = false;
+                lock.unlock();
+                try {
+                    channel.force(false);
+                    success = true;
+                } finally {
+                    lock.lock();
+                    forcing = false;
+                    if (success) {
+                        durableLsn = Math.max(durableLsn, target);
+                    }
+                    forced.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void syncInBackground() {
+        try {
+            sync();
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Sync of write ahead log failed", e);
+        }
+    }
+
+    private interface EntryReader {
+        void read(byte type, ByteBuffer payload) throws IOException;
+    }
+}
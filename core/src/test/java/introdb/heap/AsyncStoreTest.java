@@ -0,0 +1,261 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AsyncStoreTest {
+
+    private Path heapFilePath;
+    private RecordingStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        heapFilePath = Files.createTempFile("heap", "0001");
+        store = new RecordingStore(new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.delete(heapFilePath);
+    }
+
+    @Test
+    void puts_gets_and_removes_asynchronously() throws Exception {
+
+        // given
+        var asyncStore = new AsyncStore(store, 4, 1024);
+
+        // when
+        var puts = new ArrayList<CompletableFuture<Object>>();
+        for (int i = 0; i < 100; i++) {
+            puts.add(asyncStore.putAsync(new Entry(i, "value" + i)));
+        }
+        CompletableFuture.allOf(puts.toArray(new CompletableFuture[0])).join();
+        var removed = asyncStore.removeAsync(7).join();
+
+        // then
+        assertEquals("value7", removed);
+        assertNull(asyncStore.getAsync(7).join());
+        for (int i = 0; i < 100; i++) {
+            if (i != 7) {
+                assertEquals("value" + i, asyncStore.getAsync(i).join());
+            }
+        }
+        asyncStore.close();
+
+    }
+
+    @Test
+    void coalesces_queued_gets_into_single_lookup() throws Exception {
+
+        // given
+        var asyncStore = new AsyncStore(store, 1, 1024);
+        for (int i = 0; i < 10; i++) {
+            store.put(new Entry(i, "value" + i));
+        }
+        store.blockPuts();
+        var blockedPut = asyncStore.putAsync(new Entry(100, "value100"));
+        store.awaitBlockedPut();
+
+        // when
+        var gets = new ArrayList<CompletableFuture<Object>>();
+        for (int i = 0; i < 10; i++) {
+            gets.add(asyncStore.getAsync(i));
+        }
+        var missing = asyncStore.getAsync(11);
+        store.unblockPuts();
+        blockedPut.join();
+
+        // then
+        for (int i = 0; i < 10; i++) {
+            assertEquals("value" + i, gets.get(i).join());
+        }
+        assertNull(missing.join());
+        assertEquals(List.of(11), store.getAllSizes);
+        assertEquals(0, store.gets);
+        asyncStore.close();
+
+    }
+
+    @Test
+    void resolves_coalesced_gets_of_equal_array_keys() throws Exception {
+
+        // given
+        var asyncStore = new AsyncStore(store, 1, 1024);
+        store.put(new Entry(new byte[]{1, 2}, "value"));
+        store.blockPuts();
+        var blockedPut = asyncStore.putAsync(new Entry(100, "value100"));
+        store.awaitBlockedPut();
+
+        // when
+        var first = asyncStore.getAsync(new byte[]{1, 2});
+        var second = asyncStore.getAsync(new byte[]{1, 2});
+        store.unblockPuts();
+        blockedPut.join();
+
+        // then
+        assertEquals("value", first.join());
+        assertEquals("value", second.join());
+        assertEquals(List.of(1), store.getAllSizes);
+        asyncStore.close();
+
+    }
+
+    @Test
+    void rejects_operations_over_limit_in_flight() throws Exception {
+
+        // given
+        var asyncStore = new AsyncStore(store, 1, 1);
+        store.blockPuts();
+        var blockedPut = asyncStore.putAsync(new Entry(1, "value1"));
+        store.awaitBlockedPut();
+
+        // when
+        var rejected = asyncStore.getAsync(1);
+        store.unblockPuts();
+        blockedPut.join();
+
+        // then
+        assertThatThrownBy(rejected::join)
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+        assertEquals("value1", asyncStore.getAsync(1).join());
+        asyncStore.close();
+
+    }
+
+    @Test
+    void fails_operations_of_store_when_value_exceeds_page_size() throws Exception {
+
+        // given
+        var asyncStore = AsyncStore.onVirtualThreads(store, 1024);
+
+        // when
+        var put = asyncStore.putAsync(new Entry(1, new byte[4 * 1024]));
+
+        // then
+        assertThatThrownBy(put::join)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        asyncStore.close();
+        assertThatThrownBy(() -> asyncStore.getAsync(1).join())
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+
+    }
+
+    /**
+     * Counts lookups of the store and blocks puts on demand, to hold the only I/O thread.
+     */
+    private static final class RecordingStore implements Store {
+        private final Store store;
+        private final List<Integer> getAllSizes = new ArrayList<>();
+        private volatile int gets;
+        private volatile CountDownLatch putBlocked;
+        private volatile CountDownLatch putUnblocked;
+
+        private RecordingStore(Store store) {
+            this.store = store;
+        }
+
+        void blockPuts() {
+            putBlocked = new CountDownLatch(1);
+            putUnblocked = new CountDownLatch(1);
+        }
+
+        void awaitBlockedPut() throws InterruptedException {
+            putBlocked.await();
+        }
+
+        void unblockPuts() {
+            putUnblocked.countDown();
+        }
+
+        @Override
+        public Object remove(Serializable key) throws IOException, ClassNotFoundException {
+            return store.remove(key);
+        }
+
+        @Override
+        public Object get(Serializable key) throws IOException, ClassNotFoundException {
+            gets++;
+            return store.get(key);
+        }
+
+        @Override
+        public synchronized Map<Serializable, Object> getAll(Collection<? extends Serializable> keys) throws IOException, ClassNotFoundException {
+            getAllSizes.add(keys.size());
+            return store.getAll(keys);
+        }
+
+        @Override
+        public byte[] getBytes(Serializable key) throws IOException {
+            return store.getBytes(key);
+        }
+
+        @Override
+        public boolean getView(Serializable key, Consumer<ByteBuffer> consumer) throws IOException {
+            return store.getView(key, consumer);
+        }
+
+        @Override
+        public Stream<Entry> entries() {
+            return store.entries();
+        }
+
+        @Override
+        public Stream<Serializable> keys() {
+            return store.keys();
+        }
+
+        @Override
+        public Stream<EntryRecord> encodedEntries() {
+            return store.encodedEntries();
+        }
+
+        @Override
+        public Object put(Entry entry) throws IOException, ClassNotFoundException {
+            if (putUnblocked != null) {
+                putBlocked.countDown();
+                try {
+                    putUnblocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return store.put(entry);
+        }
+
+        @Override
+        public void putAll(Collection<Entry> entries) throws IOException {
+            store.putAll(entries);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            store.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            store.close();
+        }
+    }
+}
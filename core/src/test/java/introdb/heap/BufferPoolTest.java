@@ -0,0 +1,275 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferPoolTest {
+
+    private static final int PAGE_SIZE = 4 * 1024;
+
+    private final List<Integer> writtenPages = new ArrayList<>();
+    private final BufferPool.PageWriter writer = (pageNumber, buffer) -> writtenPages.add(pageNumber);
+
+    @Test
+    void loads_page_once_and_keeps_it_off_heap() throws IOException {
+
+        // given
+        var bufferPool = new BufferPool(8 * PAGE_SIZE, PAGE_SIZE, writer);
+        var reads = new ArrayList<Integer>();
+
+        // when
+        var frame = bufferPool.pin(1, (pageNumber, buffer) -> {
+            reads.add(pageNumber);
+            buffer.put(PAGE_SIZE - 1, (byte) 7);
+        });
+        bufferPool.unpin(frame);
+        var pinnedAgain = bufferPool.pin(1, (pageNumber, buffer) -> reads.add(pageNumber));
+
+        // then
+        assertSame(frame, pinnedAgain);
+        assertTrue(frame.buffer().isDirect());
+        assertEquals(7, frame.buffer().get(PAGE_SIZE - 1));
+        assertEquals(List.of(1), reads);
+        assertEquals(1, bufferPool.hits());
+        assertEquals(1, bufferPool.misses());
+        assertEquals(1, bufferPool.pinned());
+
+    }
+
+    @Test
+    void keeps_pages_within_byte_budget() throws IOException {
+
+        // given
+        var bufferPool = new BufferPool(8 * PAGE_SIZE, PAGE_SIZE, writer);
+
+        // when
+        for (int pageNumber = 1; pageNumber <= 100; pageNumber++) {
+            bufferPool.unpin(bufferPool.pin(pageNumber, fill((byte) 1)));
+        }
+
+        // then
+        assertEquals(8, bufferPool.capacity());
+        assertEquals(8, bufferPool.size());
+        assertEquals(0, bufferPool.pinned());
+
+    }
+
+    @Test
+    void does_not_evict_pinned_frames() throws IOException {
+
+        // given
+        var bufferPool = new BufferPool(2 * PAGE_SIZE, PAGE_SIZE, writer);
+        var first = bufferPool.pin(1, fill((byte) 1));
+        var second = bufferPool.pin(2, fill((byte) 2));
+
+        // when
+        var third = bufferPool.pin(3, fill((byte) 3));
+        bufferPool.unpin(second);
+        var fourth = bufferPool.pin(4, fill((byte) 4));
+
+        // then
+        assertNull(third);
+        assertNotSame(first, fourth);
+        assertEquals(1, first.buffer().get(0));
+        assertEquals(4, fourth.buffer().get(0));
+
+    }
+
+    @Test
+    void frees_discarded_frame_once_it_is_unpinned() throws IOException {
+
+        // given
+        var bufferPool = new BufferPool(2 * PAGE_SIZE, PAGE_SIZE, writer);
+        var first = bufferPool.pin(1, fill((byte) 1));
+        var second = bufferPool.pin(2, fill((byte) 2));
+
+        // when
+        bufferPool.discard(1);
+        int sizeAfterDiscard = bufferPool.size();
+        var reloaded = bufferPool.pin(1, fill((byte) 3));
+        bufferPool.unpin(first);
+        var third = bufferPool.pin(3, fill((byte) 3));
+
+        // then
+        assertNull(reloaded);
+        assertEquals(1, sizeAfterDiscard);
+        assertSame(first, third);
+        assertEquals(2, bufferPool.pinned());
+
+    }
+
+    @Test
+    void keeps_pages_read_again_during_scan() throws IOException {
+
+        // given
+        var bufferPool = new BufferPool(8 * PAGE_SIZE, PAGE_SIZE, writer);
+        for (int pageNumber = 1; pageNumber <= 10; pageNumber++) {
+            bufferPool.unpin(bufferPool.pin(pageNumber, fill((byte) 1)));
+        }
+        bufferPool.unpin(bufferPool.pin(1, fill((byte) 1)));
+        bufferPool.unpin(bufferPool.pin(2, fill((byte) 1)));
+
+        // when
+        for (int pageNumber = 100; pageNumber <= 200; pageNumber++) {
+            bufferPool.unpin(bufferPool.pin(pageNumber, fill((byte) 1)));
+        }
+
+        // then
+        long misses = bufferPool.misses();
+        bufferPool.unpin(bufferPool.pin(1, fill((byte) 1)));
+        bufferPool.unpin(bufferPool.pin(2, fill((byte) 1)));
+        assertEquals(misses, bufferPool.misses());
+
+    }
+
+    @Test
+    void writes_dirty_frames_on_eviction_and_flush() throws IOException {
+
+        // given
+        var bufferPool = new BufferPool(2 * PAGE_SIZE, PAGE_SIZE, writer);
+        var first = bufferPool.pin(1, fill((byte) 1));
+        bufferPool.markDirty(first);
+        bufferPool.unpin(first);
+        var second = bufferPool.pin(2, fill((byte) 2));
+        bufferPool.markDirty(second);
+        bufferPool.unpin(second);
+
+        // when
+        bufferPool.unpin(bufferPool.pin(3, fill((byte) 3)));
+        bufferPool.flush();
+        bufferPool.flush();
+
+        // then
+        assertEquals(List.of(1, 2), writtenPages);
+
+    }
+
+    @Test
+    void flushes_single_dirty_page() throws IOException {
+
+        // given
+        var bufferPool = new BufferPool(4 * PAGE_SIZE, PAGE_SIZE, writer);
+        for (int pageNumber = 3; pageNumber >= 1; pageNumber--) {
+            var frame = bufferPool.pin(pageNumber, fill((byte) pageNumber));
+            bufferPool.markDirty(frame);
+            bufferPool.unpin(frame);
+        }
+
+        // when
+        var dirtyPages = bufferPool.dirtyPages();
+        bufferPool.flush(2);
+        bufferPool.flush(2);
+        bufferPool.flush(4);
+
+        // then
+        assertEquals(List.of(1, 2, 3), dirtyPages);
+        assertEquals(List.of(2), writtenPages);
+        assertEquals(List.of(1, 3), bufferPool.dirtyPages());
+
+    }
+
+    @Test
+    void updates_and_discards_pooled_page() throws IOException {
+
+        // given
+        var bufferPool = new BufferPool(8 * PAGE_SIZE, PAGE_SIZE, writer);
+        var frame = bufferPool.pin(1, fill((byte) 1));
+        bufferPool.unpin(frame);
+        bufferPool.unpin(bufferPool.pin(2, fill((byte) 1)));
+        var content = ByteBuffer.allocate(PAGE_SIZE);
+        content.put(0, (byte) 2);
+
+        // when
+        bufferPool.update(1, content, null);
+        bufferPool.discard(2);
+
+        // then
+        assertEquals(2, frame.buffer().get(0));
+        assertEquals(1, bufferPool.size());
+
+    }
+
+    @Test
+    void pins_pages_while_dirty_frame_is_written() throws Exception {
+
+        // given
+        var writing = new CountDownLatch(1);
+        var written = new CountDownLatch(1);
+        var bufferPool = new BufferPool(8 * PAGE_SIZE, PAGE_SIZE, (pageNumber, buffer) -> {
+            writing.countDown();
+            try {
+                written.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        });
+        var first = bufferPool.pin(1, fill((byte) 1));
+        bufferPool.markDirty(first);
+        bufferPool.unpin(first);
+        var executor = Executors.newSingleThreadExecutor();
+
+        // when
+        var flush = executor.submit(() -> {
+            bufferPool.flush();
+            return null;
+        });
+        writing.await();
+        var second = bufferPool.pin(2, fill((byte) 2));
+        var pinnedFirst = bufferPool.pin(1, fill((byte) 3));
+        written.countDown();
+        flush.get(1, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        // then
+        assertEquals(2, second.buffer().get(0));
+        assertSame(first, pinnedFirst);
+        assertEquals(1, pinnedFirst.buffer().get(0));
+        assertEquals(List.of(), bufferPool.dirtyPages());
+        assertEquals(2, bufferPool.pinned());
+
+    }
+
+    @Test
+    void keeps_frame_dirty_when_its_write_fails() throws IOException {
+
+        // given
+        var bufferPool = new BufferPool(PAGE_SIZE, PAGE_SIZE, (pageNumber, buffer) -> {
+            throw new IOException("Disk is full");
+        });
+        var first = bufferPool.pin(1, fill((byte) 1));
+        bufferPool.markDirty(first);
+        bufferPool.unpin(first);
+
+        // when, then
+        assertThatThrownBy(() -> bufferPool.pin(2, fill((byte) 2)))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(bufferPool::flush)
+                .isInstanceOf(IOException.class);
+        assertEquals(List.of(1), bufferPool.dirtyPages());
+        assertEquals(0, bufferPool.pinned());
+
+    }
+
+    private static BufferPool.PageReader fill(byte value) {
+        return (pageNumber, buffer) -> {
+            while (buffer.hasRemaining()) {
+                buffer.put(value);
+            }
+        };
+    }
+}
@@ -0,0 +1,89 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CodecsTest {
+
+    @Test
+    void java_serialization_restores_any_serializable() throws IOException, ClassNotFoundException {
+        var object = new java.util.ArrayList<>(java.util.List.of("a", 1, 2L));
+
+        assertEquals(object, Codecs.JAVA_SERIALIZATION.decode(Codecs.JAVA_SERIALIZATION.encode(object)));
+    }
+
+    @Test
+    void byte_array_codec_stores_bytes_as_they_are() throws IOException, ClassNotFoundException {
+        byte[] bytes = {1, 2, 3};
+
+        byte[] encoded = Codecs.BYTE_ARRAY.encode(bytes);
+
+        assertArrayEquals(bytes, encoded);
+        assertArrayEquals(bytes, Codecs.BYTE_ARRAY.decode(encoded));
+    }
+
+    @Test
+    void string_codec_uses_utf8() throws IOException, ClassNotFoundException {
+        byte[] encoded = Codecs.STRING.encode("zażółć");
+
+        assertEquals(10, encoded.length);
+        assertEquals("zażółć", Codecs.STRING.decode(encoded));
+    }
+
+    @Test
+    void number_codecs_use_fixed_size() throws IOException, ClassNotFoundException {
+        assertEquals(Integer.BYTES, Codecs.INTEGER.encode(-17).length);
+        assertEquals(-17, (int) Codecs.INTEGER.decode(Codecs.INTEGER.encode(-17)));
+        assertEquals(Long.BYTES, Codecs.LONG.encode(Long.MIN_VALUE).length);
+        assertEquals(Long.MIN_VALUE, (long) Codecs.LONG.decode(Codecs.LONG.encode(Long.MIN_VALUE)));
+    }
+
+    @Test
+    void uuid_codec_uses_sixteen_bytes() throws IOException, ClassNotFoundException {
+        var uuid = UUID.randomUUID();
+
+        assertEquals(16, Codecs.UUID.encode(uuid).length);
+        assertEquals(uuid, Codecs.UUID.decode(Codecs.UUID.encode(uuid)));
+    }
+
+    @Test
+    void fixed_size_codecs_encode_into_given_array() throws IOException, ClassNotFoundException {
+        var uuid = UUID.randomUUID();
+        byte[] bytes = new byte[16];
+
+        ((Codecs.FixedSizeCodec<UUID>) Codecs.UUID).encode(uuid, bytes);
+
+        assertArrayEquals(Codecs.UUID.encode(uuid), bytes);
+        assertEquals(uuid, Codecs.UUID.decode(bytes));
+        assertEquals(0x01020304, (int) Codecs.INTEGER.decode(Codecs.INTEGER.encode(0x01020304)));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, Codecs.LONG.encode(0x0102030405060708L));
+    }
+
+    @Test
+    void entry_codec_reuses_key_array_only_for_fixed_size_key_codec() throws IOException {
+        byte[] reuse = new byte[Integer.BYTES];
+        var fixedSize = new EntryCodec(Codecs.INTEGER, Codecs.BYTE_ARRAY);
+        var variableSize = new EntryCodec(Codecs.STRING, Codecs.BYTE_ARRAY);
+
+        assertSame(reuse, fixedSize.encodeKey(7, reuse));
+        assertArrayEquals(Codecs.INTEGER.encode(7), reuse);
+        assertEquals(Long.BYTES, new EntryCodec(Codecs.LONG, Codecs.BYTE_ARRAY).encodeKey(7L, reuse).length);
+        assertNotSame(reuse, variableSize.encodeKey("abcd", reuse));
+    }
+
+    @Test
+    void built_in_codecs_are_smaller_than_java_serialization() throws IOException {
+        assertTrue(Codecs.INTEGER.encode(1).length < Codecs.JAVA_SERIALIZATION.encode(1).length);
+        assertTrue(Codecs.STRING.encode("key").length < Codecs.JAVA_SERIALIZATION.encode("key").length);
+        assertTrue(Codecs.BYTE_ARRAY.encode(new byte[8]).length < Codecs.JAVA_SERIALIZATION.encode((Serializable) new byte[8]).length);
+    }
+}
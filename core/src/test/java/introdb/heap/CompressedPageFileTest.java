@@ -0,0 +1,214 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedPageFileTest {
+
+    private static final int PAGE_SIZE = 4 * 1024;
+
+    private Path path;
+    private Path tablePath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = Files.createTempFile("heap", "0001");
+        tablePath = path.resolveSibling(path.getFileName() + ".pages");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.delete(path);
+        Files.deleteIfExists(tablePath);
+    }
+
+    @Test
+    void stores_compressed_pages_and_reads_them_after_reopen() throws IOException {
+
+        // given
+        var pageFile = open();
+
+        // when
+        for (int page = 1; page <= 10; page++) {
+            pageFile.write(page, ByteBuffer.wrap(compressiblePage(page)));
+        }
+        pageFile.close();
+
+        // then
+        var reopenedFile = open();
+        assertEquals(10 * PAGE_SIZE, reopenedFile.size());
+        assertTrue(Files.size(path) < 10 * PAGE_SIZE / 3);
+        for (int page = 1; page <= 10; page++) {
+            var buffer = reopenedFile.read(page, ByteBuffer.allocate(PAGE_SIZE));
+            assertArrayEquals(compressiblePage(page), buffer.array());
+        }
+        reopenedFile.close();
+
+    }
+
+    @Test
+    void writes_changed_page_to_new_extent_and_reuses_extent_left_behind_after_force() throws IOException {
+
+        // given
+        var pageFile = open();
+        pageFile.write(1, ByteBuffer.wrap(compressiblePage(1)));
+        pageFile.write(2, ByteBuffer.wrap(compressiblePage(2)));
+        long dataSize = Files.size(path);
+
+        // when
+        pageFile.write(1, ByteBuffer.wrap(compressiblePage(3)));
+        long changedDataSize = Files.size(path);
+        pageFile.write(1, ByteBuffer.wrap(compressiblePage(3)));
+        long unforcedDataSize = Files.size(path);
+        pageFile.force();
+        pageFile.write(1, ByteBuffer.wrap(compressiblePage(4)));
+
+        // then
+        assertTrue(changedDataSize > dataSize);
+        assertTrue(unforcedDataSize > changedDataSize);
+        assertEquals(unforcedDataSize, Files.size(path));
+        assertArrayEquals(compressiblePage(4), pageFile.read(1, ByteBuffer.allocate(PAGE_SIZE)).array());
+        assertArrayEquals(compressiblePage(2), pageFile.read(2, ByteBuffer.allocate(PAGE_SIZE)).array());
+        pageFile.close();
+        var reopenedFile = open();
+        reopenedFile.write(2, ByteBuffer.wrap(compressiblePage(5)));
+        assertEquals(unforcedDataSize, Files.size(path));
+        assertArrayEquals(compressiblePage(4), reopenedFile.read(1, ByteBuffer.allocate(PAGE_SIZE)).array());
+        assertArrayEquals(compressiblePage(5), reopenedFile.read(2, ByteBuffer.allocate(PAGE_SIZE)).array());
+        reopenedFile.close();
+
+    }
+
+    @Test
+    void does_not_decompress_stale_pages() throws IOException {
+
+        // given
+        var pageFile = open();
+        for (int page = 1; page <= 3; page++) {
+            pageFile.write(page, ByteBuffer.wrap(compressiblePage(page)));
+        }
+        var junk = new byte[(int) Files.size(path)];
+        Arrays.fill(junk, (byte) 0x55);
+        Files.write(path, junk);
+        var checks = new int[4];
+
+        // when
+        pageFile.readPages(1, ByteBuffer.allocate(2 * PAGE_SIZE), page -> page == 1 || checks[page]++ > 0);
+
+        // then
+        assertEquals(0, checks[1]);
+        assertEquals(2, checks[2]);
+        assertThatThrownBy(() -> pageFile.readPages(3, ByteBuffer.allocate(PAGE_SIZE), page -> false))
+                .isInstanceOf(IOException.class);
+        pageFile.close();
+
+    }
+
+    @Test
+    void reads_consecutive_pages_into_direct_buffer() throws IOException {
+
+        // given
+        var pageFile = open();
+        pageFile.write(1, ByteBuffer.wrap(compressiblePage(1)));
+        pageFile.write(3, ByteBuffer.wrap(compressiblePage(3)));
+        var buffer = ByteBuffer.allocateDirect(4 * PAGE_SIZE);
+        buffer.put(0, (byte) 1).put(PAGE_SIZE, (byte) 1);
+
+        // when
+        pageFile.readPages(1, buffer, page -> false);
+
+        // then
+        assertEquals(3 * PAGE_SIZE, buffer.position());
+        var pages = new byte[3 * PAGE_SIZE];
+        buffer.flip();
+        buffer.get(pages);
+        assertArrayEquals(compressiblePage(1), Arrays.copyOfRange(pages, 0, PAGE_SIZE));
+        assertArrayEquals(new byte[PAGE_SIZE], Arrays.copyOfRange(pages, PAGE_SIZE, 2 * PAGE_SIZE));
+        assertArrayEquals(compressiblePage(3), Arrays.copyOfRange(pages, 2 * PAGE_SIZE, 3 * PAGE_SIZE));
+        pageFile.close();
+
+    }
+
+    @Test
+    void truncates_pages_and_their_extents() throws IOException {
+
+        // given
+        var pageFile = open();
+        for (int page = 1; page <= 4; page++) {
+            pageFile.write(page, ByteBuffer.wrap(compressiblePage(page)));
+        }
+        long dataSize = Files.size(path);
+
+        // when
+        pageFile.truncate(2 * PAGE_SIZE);
+        pageFile.close();
+
+        // then
+        var reopenedFile = open();
+        assertEquals(2 * PAGE_SIZE, reopenedFile.size());
+        assertTrue(Files.size(path) < dataSize);
+        assertEquals(2 * CompressedPageFile.ENTRY_BYTES, Files.size(tablePath));
+        assertArrayEquals(compressiblePage(2), reopenedFile.read(2, ByteBuffer.allocate(PAGE_SIZE)).array());
+        reopenedFile.write(3, ByteBuffer.wrap(compressiblePage(5)));
+        assertArrayEquals(compressiblePage(5), reopenedFile.read(3, ByteBuffer.allocate(PAGE_SIZE)).array());
+        reopenedFile.close();
+
+    }
+
+    @Test
+    void rejects_file_without_page_table() throws IOException {
+
+        // given
+        Files.write(path, compressiblePage(1));
+
+        // when, then
+        assertThatThrownBy(this::open)
+                .isInstanceOf(IllegalStateException.class);
+
+    }
+
+    private CompressedPageFile open() throws IOException {
+        var dataChannel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        try {
+            var tableChannel = FileChannel.open(tablePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            return new CompressedPageFile(dataChannel, tableChannel, PAGE_SIZE, Deflater.BEST_SPEED);
+        } catch (RuntimeException e) {
+            dataChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Repeated text, like encoded values of similar entries.
+     */
+    private static byte[] compressiblePage(int page) {
+        var content = new byte[PAGE_SIZE];
+        var text = ("{\"page\":" + page + ",\"name\":\"entry\"}").getBytes();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            content[i] = text[i % text.length];
+        }
+        return content;
+    }
+
+    private static byte[] incompressiblePage() {
+        var content = new byte[PAGE_SIZE];
+        new Random(7).nextBytes(content);
+        return content;
+    }
+}
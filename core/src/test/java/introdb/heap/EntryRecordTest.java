@@ -1,6 +1,5 @@
 package introdb.heap;
 
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -11,64 +10,84 @@ import static org.junit.jupiter.api.Assertions.*;
 
 class EntryRecordTest {
 
-    private ByteBuffer byteBuffer;
-
-    @BeforeEach
-    void setUp() {
-        byteBuffer = ByteBuffer.allocate(4 * 1024);
-    }
-
     @Test
-    void from_buffer_returns_null_when_buffer_empty() throws IOException, ClassNotFoundException {
-        PageRecord pageRecord = fromBuffer(byteBuffer, byteBuffer.capacity());
+    void restores_same_entry_after_encoding_with_default_codec() throws IOException, ClassNotFoundException {
+        Entry entry = new Entry(100, "abc");
 
-        assertNull(pageRecord);
-    }
+        EntryRecord entryRecord = fromEntry(entry);
+        PageRecord pageRecord = decode(entryRecord, ByteBuffer.allocate(1024), 8, EntryCodec.DEFAULT);
 
+        assertEquals(entry, pageRecord.entry());
+        assertEquals(new PageRecord(entryRecord, 8), pageRecord);
+        assertEquals(8, pageRecord.pageOffset());
+    }
 
     @Test
-    void restores_same_content_after_writing_to_buffer() throws IOException, ClassNotFoundException {
+    void restores_same_entry_after_encoding_with_given_codecs() throws IOException, ClassNotFoundException {
+        var codec = new EntryCodec(Codecs.INTEGER, Codecs.STRING);
         Entry entry = new Entry(100, "abc");
 
-        fromEntry(entry).writeToBuffer(byteBuffer, 0);
-        PageRecord pageRecord = fromBuffer(byteBuffer, byteBuffer.capacity());
+        EntryRecord entryRecord = fromEntry(entry, codec);
+        PageRecord pageRecord = decode(entryRecord, ByteBuffer.allocateDirect(64), 0, codec);
 
-        assertNotNull(pageRecord);
+        assertEquals(Integer.BYTES, entryRecord.keyBytes().length);
+        assertArrayEquals(keyToBytes(100, codec), entryRecord.keyBytes());
         assertEquals(entry, pageRecord.entry());
+        assertEquals(Integer.BYTES + "abc".getBytes().length, entryRecord.dataSize());
     }
 
     @Test
-    void maintains_restored_entry_page_offset() throws IOException, ClassNotFoundException {
-        Entry entry1 = new Entry(100, "abc");
-        Entry entry2 = new Entry(200, "abcdef");
-
-        EntryRecord record1 = fromEntry(entry1);
-        record1.writeToBuffer(byteBuffer, 0);
-        fromEntry(entry2).writeToBuffer(byteBuffer, record1.recordSize());
-        PageRecord pageRecord2 = fromBuffer(byteBuffer, byteBuffer.capacity());
-        PageRecord pageRecord1 = fromBuffer(byteBuffer, record1.recordSize());
-
-        assertNotNull(pageRecord2);
-        assertEquals(record1.recordSize(), pageRecord2.pageOffset());
-        assertNotNull(pageRecord1);
-        assertEquals(0, pageRecord1.pageOffset());
+    void record_takes_its_data_and_a_slot() throws IOException {
+        EntryRecord entryRecord = fromEntry(new Entry(100, "abc"));
+
+        assertEquals(entryRecord.keyBytes().length + entryRecord.valueBytes().length, entryRecord.dataSize());
+        assertEquals(RecordPage.SLOT_BYTES + entryRecord.dataSize(), entryRecord.recordSize());
     }
 
     @Test
-    void finds_remaining_space_when_buffer_empty() {
-        int remainingSpace = findRemainingSpace(byteBuffer, byteBuffer.capacity());
-
-        assertEquals(byteBuffer.capacity(), remainingSpace);
+    void record_of_bytes_keeps_them_without_entry() {
+        byte[] keyBytes = {1, 2};
+        byte[] valueBytes = {3, 4, 5};
+
+        EntryRecord entryRecord = fromBytes(keyBytes, valueBytes);
+
+        assertSame(keyBytes, entryRecord.keyBytes());
+        assertSame(valueBytes, entryRecord.valueBytes());
+        assertNull(entryRecord.entry());
+        assertTrue(entryRecord.notDeleted());
+        assertFalse(entryRecord.toDeleted().notDeleted());
+        assertArrayEquals(valueBytes, entryRecord.toDeleted().valueBytes());
     }
 
     @Test
-    void finds_remaining_space_after_writing_to_buffer() throws IOException {
-        Entry entry = new Entry(100, "abc");
+    void partial_record_copies_bytes_without_decoding_them() {
+        EntryRecord entryRecord = fromBytes(new byte[]{1, 2}, new byte[]{3, 4, 5});
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(16);
+        PartialEntryRecord partialRecord = write(entryRecord, byteBuffer, 4, true);
+
+        EntryRecord copy = partialRecord.toEntryRecord();
+
+        assertTrue(partialRecord.deleted());
+        assertEquals(3, partialRecord.valueSize());
+        assertArrayEquals(new byte[]{3, 4, 5}, copy.valueBytes());
+        assertArrayEquals(new byte[]{1, 2}, copy.keyBytes());
+        assertFalse(copy.notDeleted());
+        assertNull(copy.entry());
+    }
 
-        EntryRecord entryRecord = fromEntry(entry);
-        entryRecord.writeToBuffer(byteBuffer, 0);
-        int remainingSpace = findRemainingSpace(byteBuffer, byteBuffer.capacity());
+    private static PageRecord decode(EntryRecord entryRecord, ByteBuffer byteBuffer, int pageOffset, EntryCodec codec)
+            throws IOException, ClassNotFoundException {
+        return write(entryRecord, byteBuffer, pageOffset, false).toRecord(codec);
+    }
 
-        assertEquals(byteBuffer.capacity() - entryRecord.recordSize(), remainingSpace);
+    /**
+     * Writes data of the record as {@link RecordPage} does, value bytes followed by key bytes.
+     */
+    private static PartialEntryRecord write(EntryRecord entryRecord, ByteBuffer byteBuffer, int pageOffset, boolean deleted) {
+        byteBuffer.position(pageOffset);
+        byteBuffer.put(entryRecord.valueBytes()).put(entryRecord.keyBytes());
+        int valueEnd = pageOffset + entryRecord.valueBytes().length;
+        return PartialEntryRecord.fromBytes(entryRecord.keyBytes(), entryRecord.valueBytes().length, valueEnd, byteBuffer,
+                deleted, pageOffset, entryRecord.recordSize());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FreeSpaceMapTest {
+
+    private final FreeSpaceMap freeSpaceMap = new FreeSpaceMap();
+
+    @Test
+    void finds_no_page_when_empty() {
+        assertEquals(FreeSpaceMap.NO_PAGE, freeSpaceMap.findPage(1));
+    }
+
+    @Test
+    void finds_lowest_page_with_enough_free_and_dead_bytes() {
+        freeSpaceMap.updateFreeBytes(1, 100);
+        freeSpaceMap.updateFreeBytes(2, 300);
+        freeSpaceMap.updateFreeBytes(3, 100);
+        freeSpaceMap.addDeadBytes(3, 400);
+
+        assertEquals(1, freeSpaceMap.findPage(100));
+        assertEquals(2, freeSpaceMap.findPage(200));
+        assertEquals(3, freeSpaceMap.findPage(400));
+        assertEquals(FreeSpaceMap.NO_PAGE, freeSpaceMap.findPage(600));
+    }
+
+    @Test
+    void moves_dead_bytes_to_free_bytes_after_compaction() {
+        freeSpaceMap.updateFreeBytes(1, 100);
+        freeSpaceMap.addDeadBytes(1, 200);
+
+        freeSpaceMap.clearDeadBytes(1);
+        freeSpaceMap.updateFreeBytes(1, 300);
+
+        assertEquals(0, freeSpaceMap.deadBytes(1));
+        assertEquals(300, freeSpaceMap.freeBytes(1));
+        assertEquals(0, freeSpaceMap.totalDeadBytes());
+        assertEquals(1, freeSpaceMap.findPage(300));
+    }
+
+    @Test
+    void grows_with_number_of_pages() {
+        for (int page = 1; page <= 1000; page++) {
+            freeSpaceMap.updateFreeBytes(page, 10);
+        }
+        freeSpaceMap.updateFreeBytes(777, 50);
+
+        assertEquals(1000, freeSpaceMap.nrOfPages());
+        assertEquals(777, freeSpaceMap.findPage(50));
+        assertEquals(1, freeSpaceMap.findPage(10));
+    }
+}
@@ -0,0 +1,42 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class KeyDirectoryTest {
+
+    private final KeyDirectory keyDirectory = new KeyDirectory();
+
+    @Test
+    void finds_location_by_equal_key_bytes() {
+        var location = new RecordLocation(3, 128, 64);
+
+        keyDirectory.put(new byte[]{1, 2, 3}, location);
+
+        assertEquals(location, keyDirectory.get(new byte[]{1, 2, 3}));
+        assertNull(keyDirectory.get(new byte[]{1, 2}));
+    }
+
+    @Test
+    void replaces_location_of_same_key() {
+        var newLocation = new RecordLocation(2, 0, 64);
+
+        keyDirectory.put(new byte[]{1}, new RecordLocation(1, 0, 64));
+        keyDirectory.put(new byte[]{1}, newLocation);
+
+        assertEquals(newLocation, keyDirectory.get(new byte[]{1}));
+        assertEquals(1, keyDirectory.size());
+    }
+
+    @Test
+    void forgets_removed_key() {
+        keyDirectory.put(new byte[]{1}, new RecordLocation(1, 0, 64));
+
+        keyDirectory.remove(new byte[]{1});
+
+        assertNull(keyDirectory.get(new byte[]{1}));
+        assertEquals(0, keyDirectory.size());
+    }
+}
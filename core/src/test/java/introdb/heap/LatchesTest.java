@@ -0,0 +1,58 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatchesTest {
+
+    @Test
+    void rounds_number_of_stripes_up_to_power_of_two() {
+        assertEquals(1, new Latches(1).nrOfStripes());
+        assertEquals(8, new Latches(5).nrOfStripes());
+        assertEquals(1024, new Latches(1024).nrOfStripes());
+        assertThatThrownBy(() -> new Latches(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void same_hash_shares_latch_and_consecutive_ones_do_not() {
+
+        // given
+        var latches = new Latches(64);
+
+        // when
+        var latch = latches.latch(7);
+
+        // then
+        assertSame(latch, latches.latch(7));
+        assertSame(latch, latches.latch(7 + 64));
+        for (int hash = 1; hash < 64; hash++) {
+            assertNotSame(latches.latch(hash - 1), latches.latch(hash));
+        }
+
+    }
+
+    @Test
+    void latched_page_blocks_writers_but_not_readers_of_other_pages() {
+
+        // given
+        var latches = new Latches(64);
+        long stamp = latches.latch(1).writeLock();
+
+        // when
+        long otherRead = latches.latch(2).tryReadLock();
+        long otherWrite = latches.latch(2).tryWriteLock();
+
+        // then
+        assertTrue(otherRead != 0);
+        assertEquals(0, otherWrite);
+        assertEquals(0, latches.latch(1).tryReadLock());
+        latches.latch(2).unlockRead(otherRead);
+        latches.latch(1).unlockWrite(stamp);
+
+    }
+}
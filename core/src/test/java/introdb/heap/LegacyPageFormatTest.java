@@ -0,0 +1,139 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static introdb.heap.LegacyPageFormat.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LegacyPageFormatTest {
+
+    private static final int PAGE_SIZE = 4 * 1024;
+
+    private ByteBuffer byteBuffer;
+    private Path heapFilePath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        byteBuffer = ByteBuffer.allocate(PAGE_SIZE);
+        heapFilePath = Files.createTempFile("heap", "0001");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.delete(heapFilePath);
+    }
+
+    @Test
+    void from_buffer_returns_null_when_buffer_empty() {
+        var record = partialFromBuffer(byteBuffer, byteBuffer.capacity());
+
+        assertNull(record);
+    }
+
+    @Test
+    void restores_same_content_after_writing_to_buffer() throws IOException, ClassNotFoundException {
+        Entry entry = new Entry(100, "abc");
+
+        write(entry, 0);
+        var record = partialFromBuffer(byteBuffer, byteBuffer.capacity());
+
+        assertNotNull(record);
+        assertEquals(entry, record.toRecord(EntryCodec.DEFAULT).entry());
+    }
+
+    @Test
+    void maintains_restored_entry_page_offset() throws IOException {
+        Entry entry1 = new Entry(100, "abc");
+        Entry entry2 = new Entry(200, "abcdef");
+
+        int recordSize1 = write(entry1, 0);
+        write(entry2, recordSize1);
+        var record2 = partialFromBuffer(byteBuffer, byteBuffer.capacity());
+        var record1 = partialFromBuffer(byteBuffer, recordSize1);
+
+        assertNotNull(record2);
+        assertEquals(recordSize1, record2.pageOffset());
+        assertNotNull(record1);
+        assertEquals(0, record1.pageOffset());
+        assertEquals(2, records(byteBuffer, PAGE_SIZE).size());
+        assertEquals(0, records(byteBuffer, PAGE_SIZE).get(0).pageOffset());
+    }
+
+    @Test
+    void finds_remaining_space_when_buffer_empty() {
+        int remainingSpace = findRemainingSpace(byteBuffer, byteBuffer.capacity());
+
+        assertEquals(byteBuffer.capacity(), remainingSpace);
+        assertFalse(isLegacy(byteBuffer));
+    }
+
+    @Test
+    void finds_remaining_space_after_writing_to_buffer() throws IOException {
+        Entry entry = new Entry(100, "abc");
+
+        int recordSize = write(entry, 0);
+        int remainingSpace = findRemainingSpace(byteBuffer, byteBuffer.capacity());
+
+        assertEquals(byteBuffer.capacity() - recordSize, remainingSpace);
+        assertTrue(isLegacy(byteBuffer));
+    }
+
+    @Test
+    void migrates_visible_records_in_order() throws IOException, ClassNotFoundException {
+
+        // given
+        try (var channel = FileChannel.open(heapFilePath, StandardOpenOption.WRITE)) {
+            int position = 0;
+            for (int i = 0; i < 100; i++) {
+                position += write(new Entry(i, new byte[100]), position, i == 7);
+                if (position > PAGE_SIZE - 200) {
+                    channel.write(byteBuffer.clear());
+                    byteBuffer = ByteBuffer.allocate(PAGE_SIZE);
+                    position = 0;
+                }
+            }
+            write(new Entry(0, "updated"), position);
+            channel.write(byteBuffer.clear());
+        }
+
+        // when
+        boolean migrated = migrate(heapFilePath, PAGE_SIZE);
+
+        // then
+        assertTrue(migrated);
+        assertFalse(migrate(heapFilePath, PAGE_SIZE));
+        assertFalse(Files.exists(heapFilePath.resolveSibling(heapFilePath.getFileName() + ".migrating")));
+        assertEquals(0, Files.size(heapFilePath) % PAGE_SIZE);
+        var heapFile = new UnorderedHeapFile(heapFilePath, 1024, PAGE_SIZE);
+        assertEquals("updated", heapFile.get(0));
+        assertNull(heapFile.get(7));
+        for (int i = 1; i < 100; i++) {
+            if (i != 7) {
+                assertArrayEquals(new byte[100], (byte[]) heapFile.get(i));
+            }
+        }
+        assertEquals("updated", heapFile.remove(0));
+        assertNull(heapFile.get(0));
+        heapFile.close();
+
+    }
+
+    private int write(Entry entry, int position) throws IOException {
+        return write(entry, position, false);
+    }
+
+    private int write(Entry entry, int position, boolean deleted) throws IOException {
+        var record = EntryRecord.fromEntry(entry);
+        LegacyPageFormat.write(byteBuffer, position, record.keyBytes(), record.valueBytes(), deleted);
+        return record.dataSize() + META_DATA_BYTES;
+    }
+}
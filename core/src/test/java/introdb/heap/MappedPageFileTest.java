@@ -0,0 +1,169 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedPageFileTest {
+
+    private static final int PAGE_SIZE = 4 * 1024;
+    private static final int CHUNK_SIZE = 4 * PAGE_SIZE;
+
+    private Path path;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = Files.createTempFile("heap", "0001");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.delete(path);
+    }
+
+    @Test
+    void reads_written_pages_across_chunks() throws IOException {
+
+        // given
+        var pageFile = new MappedPageFile(open(), PAGE_SIZE, CHUNK_SIZE);
+
+        // when
+        for (int page = 1; page <= 10; page++) {
+            pageFile.write(page, filledPage(page));
+        }
+
+        // then
+        assertEquals(10 * PAGE_SIZE, pageFile.size());
+        for (int page = 1; page <= 10; page++) {
+            var view = pageFile.read(page, null);
+            assertTrue(view.isDirect());
+            assertEquals(PAGE_SIZE, view.remaining());
+            assertEquals(page, view.get(0));
+            assertEquals(page, view.get(PAGE_SIZE - 1));
+        }
+        pageFile.close();
+
+    }
+
+    @Test
+    void changes_of_view_reach_the_file() throws IOException {
+
+        // given
+        var pageFile = new MappedPageFile(open(), PAGE_SIZE, CHUNK_SIZE);
+        pageFile.write(1, filledPage(1));
+
+        // when
+        var view = pageFile.read(1, null);
+        view.put(0, (byte) 7);
+        pageFile.write(1, view);
+        pageFile.close();
+
+        // then
+        var reopened = new MappedPageFile(open(), PAGE_SIZE, CHUNK_SIZE);
+        assertEquals(7, reopened.read(1, null).get(0));
+        assertEquals(1, reopened.read(1, null).get(1));
+        reopened.close();
+
+    }
+
+    @Test
+    void cuts_file_down_to_written_pages_on_close() throws IOException {
+
+        // given
+        var pageFile = new MappedPageFile(open(), PAGE_SIZE, CHUNK_SIZE);
+        pageFile.write(1, filledPage(1));
+        pageFile.write(2, filledPage(2));
+        assertEquals(CHUNK_SIZE, Files.size(path));
+
+        // when
+        pageFile.truncate(PAGE_SIZE);
+        pageFile.close();
+
+        // then
+        assertEquals(PAGE_SIZE, Files.size(path));
+
+    }
+
+    @Test
+    void keeps_all_pages_written_concurrently_on_close() throws Exception {
+
+        // given
+        var pageFile = new MappedPageFile(open(), PAGE_SIZE, CHUNK_SIZE);
+        int nrOfThreads = 4;
+        int pagesPerThread = 256;
+        var executor = Executors.newFixedThreadPool(nrOfThreads);
+
+        // when
+        var writers = new ArrayList<Future<Object>>();
+        for (int thread = 0; thread < nrOfThreads; thread++) {
+            int firstPage = thread + 1;
+            writers.add(executor.submit(() -> {
+                for (int page = firstPage; page <= nrOfThreads * pagesPerThread; page += nrOfThreads) {
+                    pageFile.write(page, filledPage(page));
+                }
+                return null;
+            }));
+        }
+        for (var writer : writers) {
+            writer.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+        pageFile.close();
+
+        // then
+        assertEquals((long) nrOfThreads * pagesPerThread * PAGE_SIZE, Files.size(path));
+
+    }
+
+    @Test
+    void zeroes_truncated_pages() throws IOException {
+
+        // given
+        var pageFile = new MappedPageFile(open(), PAGE_SIZE, CHUNK_SIZE);
+        pageFile.write(1, filledPage(1));
+        pageFile.write(2, filledPage(2));
+
+        // when
+        pageFile.truncate(PAGE_SIZE);
+
+        // then
+        assertEquals(PAGE_SIZE, pageFile.size());
+        assertEquals(0, pageFile.read(2, null).get(0));
+        pageFile.close();
+
+    }
+
+    @Test
+    void chunk_size_has_to_be_multiple_of_page_size() throws IOException {
+        try (var channel = open()) {
+            assertThatThrownBy(() -> new MappedPageFile(channel, PAGE_SIZE, PAGE_SIZE + 1))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static ByteBuffer filledPage(int pageNumber) {
+        byte[] bytes = new byte[PAGE_SIZE];
+        Arrays.fill(bytes, (byte) pageNumber);
+        return ByteBuffer.wrap(bytes);
+    }
+}
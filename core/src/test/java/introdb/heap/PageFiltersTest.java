@@ -0,0 +1,118 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageFiltersTest {
+
+    private Path filtersPath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        filtersPath = Files.createTempFile("heap", "filters");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(filtersPath);
+    }
+
+    @Test
+    void finds_every_added_key_and_few_others() {
+
+        // given
+        var pageFilters = new PageFilters(64);
+
+        // when
+        for (int i = 0; i < 50; i++) {
+            pageFilters.add(1, PageFilters.hash(key(i)));
+        }
+
+        // then
+        for (int i = 0; i < 50; i++) {
+            assertTrue(pageFilters.mightContain(1, PageFilters.hash(key(i))));
+        }
+        int falsePositives = 0;
+        for (int i = 50; i < 10_050; i++) {
+            if (pageFilters.mightContain(1, PageFilters.hash(key(i)))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 500, "false positives: " + falsePositives);
+        assertFalse(pageFilters.mightContain(1, PageFilters.hash(key(-1))) && pageFilters.mightContain(1, PageFilters.hash(key(-2)))
+                && pageFilters.mightContain(1, PageFilters.hash(key(-3))));
+
+    }
+
+    @Test
+    void page_without_filter_might_contain_any_key() {
+
+        // given
+        var pageFilters = new PageFilters(64);
+
+        // when
+        pageFilters.add(100, PageFilters.hash(key(1)));
+
+        // then
+        assertTrue(pageFilters.mightContain(1, PageFilters.hash(key(1))));
+        assertTrue(pageFilters.mightContain(1000, PageFilters.hash(key(1))));
+        assertFalse(pageFilters.mightContain(100, PageFilters.hash(key(2))) && pageFilters.mightContain(100, PageFilters.hash(key(3))));
+
+    }
+
+    @Test
+    void reads_written_filters_of_matching_file_only() throws IOException {
+
+        // given
+        var pageFilters = new PageFilters(64);
+        for (int page = 1; page <= 3; page++) {
+            pageFilters.add(page, PageFilters.hash(key(page)));
+        }
+
+        // when
+        pageFilters.write(filtersPath, 3);
+
+        // then
+        var readFilters = PageFilters.read(filtersPath, 64, 3);
+        assertNotNull(readFilters);
+        for (int page = 1; page <= 3; page++) {
+            assertTrue(readFilters.mightContain(page, PageFilters.hash(key(page))));
+        }
+        assertNull(PageFilters.read(filtersPath, 64, 4));
+        assertNull(PageFilters.read(filtersPath, 128, 3));
+
+    }
+
+    @Test
+    void does_not_write_filters_when_page_has_none() throws IOException {
+
+        // given
+        var pageFilters = new PageFilters(64);
+        pageFilters.add(1, PageFilters.hash(key(1)));
+        Files.delete(filtersPath);
+
+        // when
+        pageFilters.write(filtersPath, 2);
+
+        // then
+        assertFalse(Files.exists(filtersPath));
+        assertThatThrownBy(() -> new PageFilters(12))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+    private static byte[] key(int i) {
+        return Integer.toString(i).getBytes();
+    }
+}
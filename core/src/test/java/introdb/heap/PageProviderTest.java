@@ -138,28 +138,70 @@ class PageProviderTest {
         try (var file = new TempFile()) {
             var pageProvider = new PageProvider(MAX_NR_PAGES, PAGE_SIZE, file.channel());
 
+            RecordPage recordPage = dummyRecordPage(1024, 1);
             byte[] dummyPageBytes = new byte[PAGE_SIZE];
-            int dummyPageRecordLength = 1024;
-            dummyPageBytes[dummyPageRecordLength - 1] = EntryRecord.END_MARKER;
-            ByteBuffer buffer = ByteBuffer.wrap(dummyPageBytes);
-            buffer.put(dummyPageBytes);
-            RecordPage recordPage = new RecordPage(PAGE_SIZE, buffer, 1);
+            recordPage.buffer().duplicate().clear().get(dummyPageBytes);
             pageProvider.save(recordPage);
             Iterator<RecordPage> iterator = pageProvider.iterator();
 
             assertTrue(iterator.hasNext());
             RecordPage resultPage = iterator.next();
-            byte[] resultBytes = resultPage.buffer().array();
+            byte[] resultBytes = new byte[PAGE_SIZE];
+            resultPage.buffer().duplicate().clear().get(resultBytes);
             assertArrayEquals(dummyPageBytes, resultBytes);
         }
     }
 
+    @Test
+    void recovers_pages_of_existing_file() throws Exception {
+        try (var file = new TempFile()) {
+            var pageProvider = new PageProvider(MAX_NR_PAGES, PAGE_SIZE, file.channel());
+            pageProvider.save(dummyRecordPage(PAGE_SIZE, 1));
+            pageProvider.save(dummyRecordPage(PAGE_SIZE / 2, 2));
+
+            var reopenedProvider = new PageProvider(MAX_NR_PAGES, PAGE_SIZE, file.channel());
+
+            assertEquals(2, reopenedProvider.pageNumber());
+            assertEquals(2, reopenedProvider.pageForAppending(1024).pageNumber());
+        }
+    }
+
+    @Test
+    void skips_empty_tail_pages_of_existing_file() throws Exception {
+        try (var file = new TempFile()) {
+            var pageProvider = new PageProvider(MAX_NR_PAGES, PAGE_SIZE, file.channel());
+            pageProvider.save(dummyRecordPage(PAGE_SIZE, 1));
+            file.channel().write(ByteBuffer.allocate(PAGE_SIZE + PAGE_SIZE / 2), PAGE_SIZE);
+
+            var reopenedProvider = new PageProvider(MAX_NR_PAGES, PAGE_SIZE, file.channel());
+
+            assertEquals(1, reopenedProvider.pageNumber());
+        }
+    }
+
+    @Test
+    void saves_run_of_new_pages() throws Exception {
+        try (var file = new TempFile()) {
+            var pageProvider = new PageProvider(MAX_NR_PAGES, PAGE_SIZE, file.channel());
+            pageProvider.save(dummyRecordPage(PAGE_SIZE, 1));
+
+            pageProvider.saveNewPages(List.of(dummyRecordPage(PAGE_SIZE, 2), dummyRecordPage(PAGE_SIZE / 2, 3)));
+
+            assertEquals(3, pageProvider.pageNumber());
+            assertEquals(3 * PAGE_SIZE, file.channel().size());
+            assertEquals(3, new PageProvider(MAX_NR_PAGES, PAGE_SIZE, file.channel()).pageNumber());
+            assertThatThrownBy(() -> pageProvider.saveNewPages(List.of(dummyRecordPage(PAGE_SIZE, 5))))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    /**
+     * Page with a single record, taking given number of bytes of the page together with page header.
+     */
     private RecordPage dummyRecordPage(int pageBytes, int pageNumber) {
-        byte[] dummyBytes = new byte[PAGE_SIZE];
-        dummyBytes[pageBytes - 1] = EntryRecord.END_MARKER;
-        ByteBuffer buffer = ByteBuffer.wrap(dummyBytes);
-        buffer.put(dummyBytes);
-        return new RecordPage(PAGE_SIZE, buffer, pageNumber);
+        var recordPage = new RecordPage(PAGE_SIZE, ByteBuffer.allocate(PAGE_SIZE), pageNumber);
+        recordPage.append(EntryRecord.fromBytes(new byte[]{1}, new byte[pageBytes - RecordPage.HEADER_BYTES - RecordPage.SLOT_BYTES - 1]));
+        return recordPage;
     }
 
     private static final class TempFile implements AutoCloseable {
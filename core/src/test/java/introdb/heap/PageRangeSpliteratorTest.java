@@ -0,0 +1,76 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PageRangeSpliteratorTest {
+
+    @Test
+    void splits_into_disjoint_ranges_of_pages() {
+
+        // given
+        var readPages = new ArrayList<Integer>();
+        var spliterator = new PageRangeSpliterator<>(() -> page -> {
+            readPages.add(page);
+            return List.of(page * 10, page * 10 + 1);
+        }, 1, 5);
+
+        // when
+        var prefix = spliterator.trySplit();
+
+        // then
+        assertNotNull(prefix);
+        assertEquals(2, prefix.estimateSize());
+        assertEquals(2, spliterator.estimateSize());
+        var prefixElements = new ArrayList<Integer>();
+        prefix.forEachRemaining(prefixElements::add);
+        var elements = new ArrayList<Integer>();
+        spliterator.forEachRemaining(elements::add);
+        assertEquals(List.of(10, 11, 20, 21), prefixElements);
+        assertEquals(List.of(30, 31, 40, 41), elements);
+        assertEquals(List.of(1, 2, 3, 4), readPages);
+
+    }
+
+    @Test
+    void keeps_elements_of_read_page_when_split() {
+
+        // given
+        var spliterator = new PageRangeSpliterator<>(() -> page -> List.of(page, -page), 1, 4);
+        var elements = new ArrayList<Integer>();
+
+        // when
+        spliterator.tryAdvance(elements::add);
+        var prefix = spliterator.trySplit();
+        spliterator.forEachRemaining(elements::add);
+
+        // then
+        assertNull(prefix.trySplit());
+        prefix.forEachRemaining(elements::add);
+        assertEquals(List.of(1, -1, 3, -3, 2, -2), elements);
+
+    }
+
+    @Test
+    void reads_all_pages_in_parallel() {
+
+        // given
+        var spliterator = new PageRangeSpliterator<>(() -> page -> List.of(page), 1, 10_001);
+
+        // when
+        var pages = StreamSupport.stream(spliterator, true).collect(Collectors.toSet());
+
+        // then
+        assertEquals(IntStream.rangeClosed(1, 10_000).boxed().collect(Collectors.toSet()), pages);
+
+    }
+}
@@ -0,0 +1,112 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelPageSearchTest {
+
+    private ParallelPageSearch parallelSearch;
+
+    @BeforeEach
+    void setUp() {
+        parallelSearch = new ParallelPageSearch(4, 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        parallelSearch.close();
+    }
+
+    @Test
+    void finds_newest_matching_page() {
+
+        // given
+        var matchingPages = ConcurrentHashMap.<Integer>newKeySet();
+        matchingPages.add(3);
+        matchingPages.add(517);
+        matchingPages.add(600);
+
+        // when
+        var result = parallelSearch.search(1000, page -> matchingPages.contains(page) ? "page" + page : null);
+
+        // then
+        assertEquals("page600", result);
+
+    }
+
+    @Test
+    void returns_null_when_no_page_matches() {
+
+        // given
+        var searchedPages = ConcurrentHashMap.<Integer>newKeySet();
+
+        // when
+        var result = parallelSearch.search(1000, page -> {
+            searchedPages.add(page);
+            return null;
+        });
+
+        // then
+        assertNull(result);
+        assertEquals(1000, searchedPages.size());
+
+    }
+
+    @Test
+    void stops_searching_older_pages_once_newer_one_matched() {
+
+        // given
+        var searchedPages = new AtomicInteger();
+
+        // when
+        var result = parallelSearch.search(100_000, page -> {
+            searchedPages.incrementAndGet();
+            return page == 99_990 ? page : null;
+        });
+
+        // then
+        assertEquals(Integer.valueOf(99_990), result);
+        assertTrue(searchedPages.get() < 100_000);
+
+    }
+
+    @Test
+    void searches_short_range_on_calling_thread() {
+
+        // given
+        var callingThread = Thread.currentThread();
+        var otherThreads = new AtomicInteger();
+
+        // when
+        var result = parallelSearch.search(8, page -> {
+            if (Thread.currentThread() != callingThread) {
+                otherThreads.incrementAndGet();
+            }
+            return page == 2 ? page : null;
+        });
+
+        // then
+        assertEquals(Integer.valueOf(2), result);
+        assertEquals(0, otherThreads.get());
+        assertNull(parallelSearch.search(0, page -> page));
+
+    }
+
+    @Test
+    void rejects_invalid_parallelism() {
+
+        // when, then
+        assertThatThrownBy(() -> new ParallelPageSearch(0, 8))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+}
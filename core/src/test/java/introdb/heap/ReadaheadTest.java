@@ -0,0 +1,157 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReadaheadTest {
+
+    private static final int PAGE_SIZE = 512;
+    private static final int NR_OF_PAGES = 16;
+
+    private Path path;
+    private PageFile pageFile;
+    private Latches latches;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = Files.createTempFile("readahead", ".data");
+        pageFile = new ChannelPageFile(new RandomAccessFile(path.toFile(), "rw").getChannel(), PAGE_SIZE);
+        for (int pageNumber = 1; pageNumber <= NR_OF_PAGES; pageNumber++) {
+            var content = new byte[PAGE_SIZE];
+            Arrays.fill(content, (byte) pageNumber);
+            pageFile.write(pageNumber, ByteBuffer.wrap(content));
+        }
+        latches = new Latches(NR_OF_PAGES);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pageFile.close();
+        Files.delete(path);
+    }
+
+    @Test
+    void doubles_block_while_pages_are_read_in_order() throws IOException {
+
+        // given
+        var readahead = new Readahead(pageFile, PAGE_SIZE, 8, latches::latch, page -> false);
+        var windows = new int[NR_OF_PAGES + 1];
+
+        // when
+        for (int pageNumber = 1; pageNumber <= NR_OF_PAGES; pageNumber++) {
+            var page = readahead.page(pageNumber, NR_OF_PAGES);
+            assertNotNull(page);
+            assertEquals(PAGE_SIZE, page.remaining());
+            assertEquals(pageNumber, page.get(PAGE_SIZE - 1));
+            windows[pageNumber] = readahead.windowPages();
+        }
+
+        // then
+        assertEquals(2, windows[1]);
+        assertEquals(2, windows[2]);
+        assertEquals(4, windows[3]);
+        assertEquals(8, windows[7]);
+        assertEquals(8, windows[NR_OF_PAGES]);
+
+    }
+
+    @Test
+    void reads_no_block_for_pooled_page_and_keeps_following_pages_in_order() throws IOException {
+
+        // given
+        var readahead = new Readahead(pageFile, PAGE_SIZE, 4, latches::latch, page -> page == NR_OF_PAGES);
+
+        // when
+        var pooledPage = readahead.page(NR_OF_PAGES, NR_OF_PAGES);
+        int windowAfterPooledPage = readahead.windowPages();
+        var nextPage = readahead.page(NR_OF_PAGES - 1, NR_OF_PAGES);
+
+        // then
+        assertNull(pooledPage);
+        assertEquals(1, windowAfterPooledPage);
+        assertNotNull(nextPage);
+        assertEquals(NR_OF_PAGES - 1, nextPage.get(0));
+        assertEquals(2, readahead.windowPages());
+
+    }
+
+    @Test
+    void reads_blocks_backwards() throws IOException {
+
+        // given
+        var readahead = new Readahead(pageFile, PAGE_SIZE, 4, latches::latch, page -> false);
+
+        // when
+        for (int pageNumber = NR_OF_PAGES; pageNumber >= 1; pageNumber--) {
+            var page = readahead.page(pageNumber, NR_OF_PAGES);
+
+            // then
+            assertNotNull(page);
+            assertEquals(pageNumber, page.get(0));
+        }
+        assertEquals(4, readahead.windowPages());
+
+    }
+
+    @Test
+    void drops_to_single_page_when_pages_are_read_out_of_order() throws IOException {
+
+        // given
+        var readahead = new Readahead(pageFile, PAGE_SIZE, 8, latches::latch, page -> false);
+        for (int pageNumber = 1; pageNumber <= 8; pageNumber++) {
+            readahead.page(pageNumber, NR_OF_PAGES);
+        }
+
+        // when
+        var page = readahead.page(3, NR_OF_PAGES);
+
+        // then
+        assertEquals(3, page.get(0));
+        assertEquals(1, readahead.windowPages());
+
+    }
+
+    @Test
+    void does_not_serve_pages_changed_since_block_was_read() throws IOException {
+
+        // given
+        var readahead = new Readahead(pageFile, PAGE_SIZE, 8, latches::latch, page -> false);
+        readahead.page(1, NR_OF_PAGES);
+
+        // when
+        var latch = latches.latch(2);
+        latch.unlockWrite(latch.writeLock());
+
+        // then
+        assertNull(readahead.page(2, NR_OF_PAGES));
+
+    }
+
+    @Test
+    void does_not_serve_pooled_pages() throws IOException {
+
+        // given
+        var readahead = new Readahead(pageFile, PAGE_SIZE, 8, latches::latch, page -> page == 2);
+
+        // when
+        var first = readahead.page(1, NR_OF_PAGES);
+        var second = readahead.page(2, NR_OF_PAGES);
+
+        // then
+        assertNotNull(first);
+        assertNull(second);
+
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
@@ -67,9 +68,9 @@ class RecordPageTest {
         PageRecord pageRecord2 = recordPage.search(EntryRecord.keyToBytes("record 2"));
 
         assertNotNull(pageRecord1);
-        assertEquals(0, pageRecord1.pageOffset());
+        assertEquals(RecordPage.HEADER_BYTES, pageRecord1.pageOffset());
         assertNotNull(pageRecord2);
-        assertEquals(record1.recordSize(), pageRecord2.pageOffset());
+        assertEquals(RecordPage.HEADER_BYTES + record1.dataSize(), pageRecord2.pageOffset());
     }
 
     @Test
@@ -82,7 +83,27 @@ class RecordPageTest {
         PageRecord pageRecord = recordPage.search(EntryRecord.keyToBytes("record 1"));
 
         assertNotNull(pageRecord);
-        assertEquals(new PageRecord(sameKeyRecord, record.recordSize()), pageRecord);
+        assertEquals(new PageRecord(sameKeyRecord, RecordPage.HEADER_BYTES + record.dataSize()), pageRecord);
+    }
+
+    @Test
+    void compaction_moves_kept_records_to_the_beginning() throws IOException, ClassNotFoundException {
+        EntryRecord record1 = EntryRecord.fromEntry(new Entry("record 1", "content 1"));
+        EntryRecord record2 = EntryRecord.fromEntry(new Entry("record 2", "content 2"));
+        EntryRecord record3 = EntryRecord.fromEntry(new Entry("record 3", "content 3"));
+
+        recordPage.append(record1);
+        recordPage.append(record2);
+        recordPage.append(record3);
+        recordPage.delete(recordPage.search(EntryRecord.keyToBytes("record 1")));
+        int reclaimed = recordPage.compact(record -> !record.deleted());
+
+        assertEquals(record1.recordSize(), reclaimed);
+        assertEquals(PAGE_SIZE - RecordPage.HEADER_BYTES - record2.recordSize() - record3.recordSize(), recordPage.remainingSpace());
+        assertNull(recordPage.search(EntryRecord.keyToBytes("record 1")));
+        assertEquals(new PageRecord(record2, RecordPage.HEADER_BYTES), recordPage.search(EntryRecord.keyToBytes("record 2")));
+        assertEquals(new PageRecord(record3, RecordPage.HEADER_BYTES + record2.dataSize()),
+                recordPage.search(EntryRecord.keyToBytes("record 3")));
     }
 
     @Test
@@ -99,4 +120,131 @@ class RecordPageTest {
         assertEquals("record 1", foundAfterDeletion.entry().key());
         assertEquals("content 1", foundAfterDeletion.entry().value());
     }
-}
\ No newline at end of file
+
+    @Test
+    void keeps_number_of_records_and_free_space_in_header() throws IOException {
+        EntryRecord record1 = EntryRecord.fromEntry(new Entry("record 1", "content 1"));
+        EntryRecord record2 = EntryRecord.fromEntry(new Entry("record 2", "content 2"));
+
+        int emptySpace = recordPage.remainingSpace();
+        recordPage.append(record1);
+        recordPage.append(record2);
+        var copy = ByteBuffer.allocate(PAGE_SIZE);
+        copy.put(recordPage.buffer().duplicate().clear());
+        var copiedPage = new RecordPage(PAGE_SIZE, copy, 1);
+
+        assertEquals(PAGE_SIZE - RecordPage.HEADER_BYTES, emptySpace);
+        assertTrue(RecordPage.hasHeader(copy));
+        assertEquals(2, copiedPage.recordCount());
+        assertEquals(emptySpace - record1.recordSize() - record2.recordSize(), copiedPage.remainingSpace());
+        assertEquals(2, copiedPage.records().size());
+    }
+
+    @Test
+    void finds_record_at_offset_only_for_its_key() throws IOException {
+        EntryRecord record1 = EntryRecord.fromEntry(new Entry("record 1", "content 1"));
+        EntryRecord record2 = EntryRecord.fromEntry(new Entry("record 2", "content 2"));
+
+        var pageRecord1 = recordPage.append(record1);
+        recordPage.append(record2);
+
+        assertNotNull(recordPage.findAt(pageRecord1.pageOffset(), record1.keyBytes()));
+        assertNull(recordPage.findAt(pageRecord1.pageOffset(), record2.keyBytes()));
+        assertNull(recordPage.findAt(pageRecord1.pageOffset() + 1, record1.keyBytes()));
+        assertThatThrownBy(() -> recordPage.markDeleted(pageRecord1.pageOffset() + 1))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void overwrites_record_only_with_value_which_fits() throws IOException, ClassNotFoundException {
+        EntryRecord record = EntryRecord.fromEntry(new Entry("record 1", "content 1"));
+        EntryRecord shorter = EntryRecord.fromEntry(new Entry("record 1", "short"));
+        EntryRecord longer = EntryRecord.fromEntry(new Entry("record 1", "much longer content 1"));
+        EntryRecord otherKey = EntryRecord.fromEntry(new Entry("record 2", "short"));
+
+        var pageRecord = recordPage.append(record);
+        int remainingSpace = recordPage.remainingSpace();
+
+        assertTrue(recordPage.overwrite(pageRecord.pageOffset(), shorter));
+        assertFalse(recordPage.overwrite(pageRecord.pageOffset(), longer));
+        assertFalse(recordPage.overwrite(pageRecord.pageOffset(), otherKey));
+        assertEquals("short", recordPage.search(record.keyBytes()).entry().value());
+        assertEquals(shorter.recordSize(), recordPage.findAt(pageRecord.pageOffset(), record.keyBytes()).recordSize());
+        assertEquals(remainingSpace, recordPage.remainingSpace());
+        recordPage.markDeleted(pageRecord.pageOffset());
+        assertFalse(recordPage.overwrite(pageRecord.pageOffset(), shorter));
+    }
+
+    @Test
+    void rejects_slot_pointing_outside_of_record_data() throws IOException {
+        EntryRecord record = EntryRecord.fromEntry(new Entry("record 1", "content 1"));
+
+        recordPage.append(record);
+        recordPage.buffer().putShort(PAGE_SIZE - RecordPage.SLOT_BYTES, (short) (PAGE_SIZE - 10));
+
+        assertThatThrownBy(() -> recordPage.records())
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void compares_keys_with_same_hash_in_place() {
+        var directPage = new RecordPage(PAGE_SIZE, ByteBuffer.allocateDirect(PAGE_SIZE), 1);
+        for (var page : new RecordPage[]{recordPage, directPage}) {
+            for (int i = -1; i < 7; i++) {
+                page.append(EntryRecord.fromBytes(collidingKey(i), new byte[]{(byte) i}));
+            }
+
+            assertNull(page.find(collidingKey(7)));
+            assertEquals(-1, page.find(collidingKey(-1)).valueBytes()[0]);
+            assertEquals(6, page.find(collidingKey(6)).valueBytes()[0]);
+        }
+    }
+
+    @Test
+    void views_value_of_found_slot_in_reused_buffer() {
+        var pageRecord = recordPage.append(EntryRecord.fromBytes(collidingKey(0), new byte[]{1, 2, 3}));
+        recordPage.append(EntryRecord.fromBytes(collidingKey(1), new byte[]{4, 5}));
+        recordPage.markDeleted(recordPage.append(EntryRecord.fromBytes(collidingKey(2), new byte[]{6})).pageOffset());
+        var view = recordPage.readOnlyView();
+
+        int slot = recordPage.findSlot(collidingKey(0));
+        assertEquals(slot, recordPage.findSlotAt(pageRecord.pageOffset(), collidingKey(0)));
+        assertFalse(recordPage.deleted(slot));
+        assertSame(view, recordPage.valueView(slot, view));
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), view);
+        recordPage.valueView(recordPage.findSlot(collidingKey(1)), view);
+        assertEquals(ByteBuffer.wrap(new byte[]{4, 5}), view);
+        assertTrue(recordPage.deleted(recordPage.findSlot(collidingKey(2))));
+        assertEquals(-1, recordPage.findSlot(collidingKey(3)));
+        assertEquals(-1, recordPage.findSlotAt(pageRecord.pageOffset(), collidingKey(1)));
+        assertTrue(view.isReadOnly());
+    }
+
+    @Test
+    void does_not_allocate_for_records_of_other_keys() {
+        for (int i = -1; i < 7; i++) {
+            recordPage.append(EntryRecord.fromBytes(collidingKey(i), new byte[10]));
+        }
+        byte[] missingKey = collidingKey(7);
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 10_000; i++) {
+            recordPage.find(missingKey);
+        }
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10_000; i++) {
+            recordPage.find(missingKey);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 10_000);
+    }
+
+    /**
+     * Keys of two bytes with the same {@link java.util.Arrays#hashCode(byte[])}, for i from -1 to 7.
+     */
+    private static byte[] collidingKey(int i) {
+        return new byte[]{(byte) i, (byte) (90 - 31 * i)};
+    }
+}
@@ -0,0 +1,191 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedStoreTest {
+
+    private static final int PAGE_SIZE = 4 * 1024;
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("sharded");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void spreads_keys_across_shards() throws IOException, ClassNotFoundException {
+
+        // given
+        var store = new ShardedStore(directory, 4, 1024, PAGE_SIZE, HeapFileOptions.defaults());
+
+        // when
+        for (int i = 0; i < 400; i++) {
+            store.put(new Entry(i, "value" + i));
+        }
+        store.remove(7);
+        store.put(new Entry(8, "updated"));
+
+        // then
+        for (int i = 0; i < 400; i++) {
+            if (i == 7) {
+                assertNull(store.get(i));
+            } else if (i == 8) {
+                assertEquals("updated", store.get(i));
+            } else {
+                assertEquals("value" + i, store.get(i));
+            }
+        }
+        for (int shard = 0; shard < store.nrOfShards(); shard++) {
+            assertTrue(store.shard(shard).nrOfPages() > 0);
+        }
+        store.close();
+
+    }
+
+    @Test
+    void gets_and_puts_many_entries_across_shards() throws IOException, ClassNotFoundException {
+
+        // given
+        var store = new ShardedStore(directory, 3, 1024, PAGE_SIZE, HeapFileOptions.defaults().withKeyIndex(true));
+        var entries = new ArrayList<Entry>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(new Entry(i, "value" + i));
+        }
+        entries.add(new Entry(0, "last"));
+
+        // when
+        store.putAll(entries);
+        var values = store.getAll(List.of(0, 1, 50, 99, 100));
+
+        // then
+        assertEquals(4, values.size());
+        assertEquals("last", values.get(0));
+        assertEquals("value1", values.get(1));
+        assertEquals("value50", values.get(50));
+        assertEquals("value99", values.get(99));
+        store.close();
+
+    }
+
+    @Test
+    void streams_entries_of_all_shards() throws IOException, ClassNotFoundException {
+
+        // given
+        var store = new ShardedStore(directory, 4, 1024, PAGE_SIZE, HeapFileOptions.defaults());
+        for (int i = 0; i < 400; i++) {
+            store.put(new Entry(i, "value" + i));
+        }
+        store.remove(7);
+
+        // when
+        var entries = store.entries().parallel().collect(Collectors.toMap(Entry::key, Entry::value));
+        long nrOfKeys = store.keys().parallel().count();
+
+        // then
+        assertEquals(399, entries.size());
+        assertEquals(399, nrOfKeys);
+        assertNull(entries.get(7));
+        assertEquals("value8", entries.get(8));
+        store.close();
+
+    }
+
+    @Test
+    void puts_nothing_when_any_entry_exceeds_page_size() throws IOException, ClassNotFoundException {
+
+        // given
+        var store = new ShardedStore(directory, 4, 1024, PAGE_SIZE, HeapFileOptions.defaults());
+        var entries = new ArrayList<Entry>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(new Entry(i, "value" + i));
+        }
+        entries.add(new Entry(10, new byte[PAGE_SIZE]));
+
+        // when
+        assertThatThrownBy(() -> store.putAll(entries))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        // then
+        for (int i = 0; i < 10; i++) {
+            assertNull(store.get(i));
+        }
+        store.close();
+
+    }
+
+    @Test
+    void gives_every_shard_a_page_of_buffer_pool_at_least() throws IOException, ClassNotFoundException {
+
+        // given
+        var options = HeapFileOptions.defaults()
+                .withBufferPoolSize(PAGE_SIZE)
+                .withWriteBack(16 * PAGE_SIZE, 0);
+
+        // when
+        var store = new ShardedStore(directory, 4, 1024, PAGE_SIZE, options);
+        for (int i = 0; i < 400; i++) {
+            store.put(new Entry(i, "value" + i));
+        }
+        store.close();
+        var reopenedStore = new ShardedStore(directory, 4, 1024, PAGE_SIZE, options);
+
+        // then
+        for (int shard = 0; shard < reopenedStore.nrOfShards(); shard++) {
+            assertEquals(1, reopenedStore.shard(shard).bufferPool().capacity());
+        }
+        assertEquals("value399", reopenedStore.get(399));
+        reopenedStore.close();
+        assertThatThrownBy(() -> new UnorderedHeapFile(directory.resolve("single"), 1024, PAGE_SIZE,
+                options.withBufferPoolSize(PAGE_SIZE - 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+    @Test
+    void reopens_with_the_same_number_of_shards_only() throws IOException, ClassNotFoundException {
+
+        // given
+        var store = new ShardedStore(directory, 4, 1024, PAGE_SIZE, HeapFileOptions.defaults());
+        for (int i = 0; i < 100; i++) {
+            store.put(new Entry(i, "value" + i));
+        }
+        store.close();
+
+        // when
+        var reopenedStore = new ShardedStore(directory, 4, 1024, PAGE_SIZE, HeapFileOptions.defaults());
+
+        // then
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value" + i, reopenedStore.get(i));
+        }
+        reopenedStore.close();
+        assertThatThrownBy(() -> new ShardedStore(directory, 8, 1024, PAGE_SIZE, HeapFileOptions.defaults()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("4 shards");
+
+    }
+}
@@ -6,15 +6,34 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
 
 import static java.util.Arrays.fill;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 class UnorderedHeapFileTest {
 
@@ -29,7 +48,11 @@ class UnorderedHeapFileTest {
 
     @AfterEach
     void tearDown() throws IOException {
+        heapFile.close();
         Files.delete(heapFilePath);
+        for (var extension : List.of(".wal", ".filters", ".pages")) {
+            Files.deleteIfExists(heapFilePath.resolveSibling(heapFilePath.getFileName() + extension));
+        }
     }
 
     @Test
@@ -91,6 +114,356 @@ class UnorderedHeapFileTest {
 
     }
 
+    @Test
+    void put_returns_previous_value() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        heapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024,
+                HeapFileOptions.defaults().withPageFilters(HeapFileOptions.DEFAULT_PAGE_FILTER_BYTES));
+        var key = "1";
+
+        // when
+        var first = heapFile.put(newEntry(key, "value1"));
+        var second = heapFile.put(newEntry(key, "longer value2"));
+        var third = heapFile.put(newEntry(key, "value3"));
+        heapFile.remove(key);
+
+        // then
+        assertNull(first);
+        assertEquals("value1", second);
+        assertEquals("longer value2", third);
+        assertNull(heapFile.get(key));
+
+    }
+
+    @Test
+    void put_without_key_index_or_page_filters_appends_and_remove_deletes_every_version() throws IOException, ClassNotFoundException {
+
+        // given
+        var padding = String.format("%100s", "");
+        for (int i = 0; i < 100; i++) {
+            heapFile.put(newEntry(i % 10, "value" + i + padding));
+        }
+        heapFile.put(newEntry(9, "newest" + padding));
+
+        // when
+        var previous = heapFile.put(newEntry(3, "value"));
+        var entries = heapFile.entries().parallel().collect(Collectors.toMap(Entry::key, Entry::value));
+        var removed = heapFile.remove(3);
+
+        // then
+        assertNull(previous);
+        assertTrue(((UnorderedHeapFile) heapFile).nrOfPages() > 1);
+        assertEquals(10, entries.size());
+        assertEquals("value", entries.get(3));
+        assertEquals("newest" + padding, entries.get(9));
+        assertEquals("value", removed);
+        assertNull(heapFile.get(3));
+        assertEquals(9, heapFile.keys().count());
+
+    }
+
+    @Test
+    void updates_of_hot_key_overwrite_record_in_place() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        heapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024,
+                HeapFileOptions.defaults().withPageFilters(HeapFileOptions.DEFAULT_PAGE_FILTER_BYTES));
+        var key = "hot";
+
+        // when
+        for (int i = 0; i < 10_000; i++) {
+            heapFile.put(newEntry(key, String.format("value%05d", i)));
+        }
+
+        // then
+        assertEquals("value09999", heapFile.get(key));
+        assertEquals(1, ((UnorderedHeapFile) heapFile).nrOfPages());
+
+    }
+
+    @Test
+    void put_all_deletes_previous_versions() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.put(newEntry("1", "value1"));
+        heapFile.put(newEntry("2", "value2"));
+
+        // when
+        heapFile.putAll(List.of(newEntry("1", "longer value1"), newEntry("3", "value3")));
+        heapFile.remove("1");
+
+        // then
+        assertNull(heapFile.get("1"));
+        assertEquals("value2", heapFile.get("2"));
+        assertEquals("value3", heapFile.get("3"));
+
+    }
+
+    @Test
+    void put_overwrites_indexed_record_in_place() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withFreeSpaceReuse(true);
+        var indexedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        for (int key = 0; key < 100; key++) {
+            indexedHeapFile.put(new Entry(key, new byte[100]));
+        }
+
+        // when
+        var previous = indexedHeapFile.put(new Entry(7, new byte[50]));
+        indexedHeapFile.put(new Entry(8, new byte[200]));
+
+        // then
+        assertArrayEquals(new byte[100], (byte[]) previous);
+        assertArrayEquals(new byte[50], (byte[]) indexedHeapFile.get(7));
+        assertArrayEquals(new byte[200], (byte[]) indexedHeapFile.get(8));
+        assertArrayEquals(new byte[200], (byte[]) indexedHeapFile.remove(8));
+        assertNull(indexedHeapFile.get(8));
+        indexedHeapFile.close();
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        assertArrayEquals(new byte[50], (byte[]) reopenedHeapFile.get(7));
+        assertNull(reopenedHeapFile.get(8));
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void streams_live_entries() throws IOException, ClassNotFoundException {
+
+        // given
+        for (int key = 0; key < 1000; key++) {
+            heapFile.put(new Entry(key, "value" + key));
+        }
+        heapFile.put(new Entry(8, "longer value8"));
+        heapFile.remove(7);
+
+        // when
+        var entries = heapFile.entries().collect(Collectors.toMap(Entry::key, Entry::value));
+        var keys = heapFile.keys().parallel().collect(Collectors.toSet());
+        long nrOfEncodedEntries = heapFile.encodedEntries().parallel().count();
+
+        // then
+        assertEquals(999, entries.size());
+        assertEquals("longer value8", entries.get(8));
+        assertNull(entries.get(7));
+        assertEquals(entries.keySet(), keys);
+        assertEquals(999, nrOfEncodedEntries);
+
+    }
+
+    @Test
+    void streams_current_entries_with_key_index() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withValueCodec(Codecs.BYTE_ARRAY);
+        var indexedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        for (int key = 0; key < 100; key++) {
+            indexedHeapFile.put(new Entry(key, new byte[100]));
+        }
+        indexedHeapFile.put(new Entry(8, new byte[200]));
+        indexedHeapFile.remove(7);
+
+        // when
+        var entries = indexedHeapFile.encodedEntries().parallel()
+                .collect(Collectors.toMap(record -> new KeyDirectory.Key(record.keyBytes()), record -> record.valueBytes().length));
+
+        // then
+        assertEquals(99, entries.size());
+        assertEquals(Integer.valueOf(200), entries.get(new KeyDirectory.Key(EntryRecord.keyToBytes(8))));
+        assertFalse(entries.containsKey(new KeyDirectory.Key(EntryRecord.keyToBytes(7))));
+        indexedHeapFile.close();
+
+    }
+
+    @Test
+    void parallel_search_finds_newest_version_of_key() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withParallelSearch(4, 2);
+        var searchingHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        var entries = new ArrayList<Entry>();
+        for (int key = 0; key < 1000; key++) {
+            entries.add(new Entry(key, new byte[100]));
+        }
+        searchingHeapFile.putAll(entries);
+
+        // when
+        searchingHeapFile.put(new Entry(7, new byte[200]));
+        searchingHeapFile.remove(8);
+
+        // then
+        assertTrue(searchingHeapFile.nrOfPages() > 8);
+        assertArrayEquals(new byte[200], (byte[]) searchingHeapFile.get(7));
+        assertNull(searchingHeapFile.get(8));
+        assertNull(searchingHeapFile.get(1000));
+        for (int key = 0; key < 1000; key += 99) {
+            assertArrayEquals(new byte[100], (byte[]) searchingHeapFile.get(key));
+        }
+        searchingHeapFile.close();
+
+    }
+
+    @Test
+    void parallel_search_is_not_used_with_key_index() {
+
+        // given
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withParallelSearch(4, HeapFileOptions.DEFAULT_SEARCH_CHUNK_PAGES);
+
+        // when, then
+        assertThatThrownBy(() -> new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+    @Test
+    void reopens_and_streams_entries_read_ahead() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withValueCodec(Codecs.BYTE_ARRAY)
+                .withReadahead(HeapFileOptions.DEFAULT_READAHEAD_BYTES);
+        var readingHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        var entries = new ArrayList<Entry>();
+        for (int key = 0; key < 1000; key++) {
+            entries.add(new Entry(key, new byte[100]));
+        }
+        readingHeapFile.putAll(entries);
+        readingHeapFile.close();
+
+        // when
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        reopenedHeapFile.put(new Entry(7, new byte[200]));
+        reopenedHeapFile.remove(8);
+
+        // then
+        assertArrayEquals(new byte[200], (byte[]) reopenedHeapFile.get(7));
+        assertNull(reopenedHeapFile.get(8));
+        var valueSizes = reopenedHeapFile.encodedEntries().parallel()
+                .collect(Collectors.toMap(record -> new KeyDirectory.Key(record.keyBytes()), record -> record.valueBytes().length));
+        assertEquals(999, valueSizes.size());
+        assertEquals(Integer.valueOf(200), valueSizes.get(new KeyDirectory.Key(EntryRecord.keyToBytes(7))));
+        assertEquals(Integer.valueOf(100), valueSizes.get(new KeyDirectory.Key(EntryRecord.keyToBytes(999))));
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void put_get_remove_and_reopen_compressed_file() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withPageCompression(Deflater.BEST_SPEED)
+                .withReadahead(HeapFileOptions.DEFAULT_READAHEAD_BYTES);
+        var compressedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+
+        // when
+        for (int key = 0; key < 1000; key++) {
+            compressedHeapFile.put(new Entry(key, "value of entry " + key));
+        }
+        compressedHeapFile.remove(7);
+        compressedHeapFile.close();
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+
+        // then
+        assertTrue(Files.size(heapFilePath) < (long) reopenedHeapFile.nrOfPages() * 4 * 1024 / 2);
+        assertEquals("value of entry 8", reopenedHeapFile.get(8));
+        assertEquals("value of entry 999", reopenedHeapFile.get(999));
+        assertNull(reopenedHeapFile.get(7));
+        reopenedHeapFile.close();
+        assertThatThrownBy(() -> new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+    @Test
+    void streams_entries_of_compressed_file_read_ahead_during_puts() throws Exception {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withPageCompression(Deflater.BEST_SPEED)
+                .withReadahead(HeapFileOptions.DEFAULT_READAHEAD_BYTES);
+        var compressedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        var entries = new ArrayList<Entry>();
+        for (int key = 0; key < 500; key++) {
+            entries.add(new Entry(key, "value of entry " + key));
+        }
+        compressedHeapFile.putAll(entries);
+        var executor = Executors.newSingleThreadExecutor();
+
+        // when
+        var writer = executor.submit(() -> {
+            var random = new Random(1);
+            for (int i = 0; i < 5_000; i++) {
+                int key = random.nextInt(500);
+                compressedHeapFile.put(new Entry(key, "value of entry " + key + (i % 2 == 0 ? "" : " changed")));
+            }
+            return null;
+        });
+        while (!writer.isDone()) {
+            assertTrue(compressedHeapFile.keys().parallel().count() > 0);
+        }
+
+        // then
+        writer.get(1, TimeUnit.MINUTES);
+        executor.shutdown();
+        assertEquals(500, compressedHeapFile.keys().count());
+        compressedHeapFile.close();
+
+    }
+
+    @Test
+    void rejects_page_compression_of_existing_file_without_changing_it() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.put(new Entry(1, "value"));
+        heapFile.close();
+        var pageTablePath = heapFilePath.resolveSibling(heapFilePath.getFileName() + ".pages");
+        var options = HeapFileOptions.defaults().withPageCompression(Deflater.BEST_SPEED);
+
+        // when
+        assertThatThrownBy(() -> new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options))
+                .isInstanceOf(IllegalArgumentException.class);
+        Files.createFile(pageTablePath);
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024);
+
+        // then
+        assertEquals("value", reopenedHeapFile.get(1));
+        assertFalse(Files.exists(pageTablePath));
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void page_compression_is_not_used_with_memory_mapping() {
+
+        // given
+        var options = HeapFileOptions.defaults().withPageCompression(Deflater.BEST_SPEED)
+                .withMemoryMapping(HeapFileOptions.DEFAULT_MAPPING_CHUNK_SIZE);
+
+        // when, then
+        assertThatThrownBy(() -> new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+    @Test
+    void readahead_size_has_to_be_positive() {
+
+        // given
+        var options = HeapFileOptions.defaults().withReadahead(-1);
+
+        // when, then
+        assertThatThrownBy(() -> new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+
     @Test
     void remove_unexisting_record_returns_null() throws ClassNotFoundException, IOException {
         // given
@@ -153,6 +526,796 @@ class UnorderedHeapFileTest {
 
     }
 
+    @Test
+    void put_get_and_remove_with_key_index() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var indexedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, HeapFileOptions.defaults().withKeyIndex(true));
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            indexedHeapFile.put(new Entry(Integer.toString(i), value));
+        }
+        indexedHeapFile.put(new Entry("0", "updated"));
+        indexedHeapFile.remove("1");
+
+        // then
+        assertEquals("updated", indexedHeapFile.get("0"));
+        assertNull(indexedHeapFile.get("1"));
+        assertNull(indexedHeapFile.remove("1"));
+        assertNull(indexedHeapFile.get("unknown"));
+        for (int i = 2; i < 100; i++) {
+            assertArrayEquals(value, (byte[]) indexedHeapFile.get(Integer.toString(i)));
+        }
+
+    }
+
+    @Test
+    void reopen_existing_file() throws IOException, ClassNotFoundException {
+
+        // given
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+        for (int i = 0; i < 100; i++) {
+            heapFile.put(new Entry(Integer.toString(i), value));
+        }
+        heapFile.remove("1");
+        heapFile.close();
+
+        // when
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024);
+        reopenedHeapFile.put(new Entry("100", value));
+
+        // then
+        assertNull(reopenedHeapFile.get("1"));
+        for (int i = 2; i <= 100; i++) {
+            assertArrayEquals(value, (byte[]) reopenedHeapFile.get(Integer.toString(i)));
+        }
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void reopen_existing_file_rebuilds_key_index() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true);
+        var indexedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+        for (int i = 0; i < 100; i++) {
+            indexedHeapFile.put(new Entry(Integer.toString(i), value));
+        }
+        indexedHeapFile.put(new Entry("0", "updated"));
+        indexedHeapFile.put(new Entry("1", "updated"));
+        indexedHeapFile.remove("1");
+        indexedHeapFile.close();
+
+        // when
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+
+        // then
+        assertEquals("updated", reopenedHeapFile.get("0"));
+        assertNull(reopenedHeapFile.get("1"));
+        for (int i = 2; i < 100; i++) {
+            assertArrayEquals(value, (byte[]) reopenedHeapFile.get(Integer.toString(i)));
+        }
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void reuse_free_space_of_updated_records() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withFreeSpaceReuse(true);
+        var reusingHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+
+        // when
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 100; i++) {
+                reusingHeapFile.put(new Entry(Integer.toString(i), value));
+            }
+        }
+        reusingHeapFile.put(new Entry("0", "updated"));
+        reusingHeapFile.remove("1");
+
+        // then
+        assertTrue(Files.size(heapFilePath) <= 10 * 4 * 1024);
+        assertEquals("updated", reusingHeapFile.get("0"));
+        assertNull(reusingHeapFile.get("1"));
+        for (int i = 2; i < 100; i++) {
+            assertArrayEquals(value, (byte[]) reusingHeapFile.get(Integer.toString(i)));
+        }
+        reusingHeapFile.close();
+
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        reopenedHeapFile.put(new Entry("1", "recreated"));
+        assertEquals("recreated", reopenedHeapFile.get("1"));
+        assertTrue(Files.size(heapFilePath) <= 10 * 4 * 1024);
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void free_space_reuse_requires_key_index() {
+
+        // given
+        var options = HeapFileOptions.defaults().withFreeSpaceReuse(true);
+
+        // when
+        assertThatThrownBy(() -> new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+    @Test
+    void page_size_has_to_fit_offsets_within_page() {
+
+        // when, then
+        assertThatThrownBy(() -> new UnorderedHeapFile(heapFilePath, 1024, 64 * 1024))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("65536");
+
+    }
+
+    @Test
+    void put_and_get_with_codecs() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults()
+                .withKeyCodec(Codecs.INTEGER)
+                .withValueCodec(Codecs.BYTE_ARRAY);
+        var codecHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            codecHeapFile.put(new Entry(i, value));
+        }
+        codecHeapFile.remove(1);
+
+        // then
+        assertNull(codecHeapFile.get(1));
+        for (int i = 2; i < 100; i++) {
+            assertArrayEquals(value, (byte[]) codecHeapFile.get(i));
+        }
+        codecHeapFile.close();
+
+    }
+
+    @Test
+    void get_encoded_value_bytes_and_view() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withValueCodec(Codecs.BYTE_ARRAY);
+        var bytesHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[2048];
+        new Random().nextBytes(value);
+        bytesHeapFile.put(new Entry("1", value));
+
+        // when
+        byte[] bytes = bytesHeapFile.getBytes("1");
+        byte[] viewed = new byte[value.length];
+        boolean found = bytesHeapFile.getView("1", view -> {
+            assertTrue(view.isReadOnly());
+            assertEquals(value.length, view.remaining());
+            view.get(viewed);
+        });
+
+        // then
+        assertArrayEquals(value, bytes);
+        assertTrue(found);
+        assertArrayEquals(value, viewed);
+        assertNull(bytesHeapFile.getBytes("2"));
+        assertFalse(bytesHeapFile.getView("2", view -> fail("no view expected")));
+        bytesHeapFile.close();
+
+    }
+
+    @Test
+    void reuses_view_of_thread_and_gives_nested_call_its_own() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults()
+                .withKeyIndex(true)
+                .withKeyCodec(Codecs.INTEGER)
+                .withValueCodec(Codecs.BYTE_ARRAY);
+        var bytesHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        for (int i = 0; i < 100; i++) {
+            bytesHeapFile.put(new Entry(i, new byte[]{(byte) i, (byte) -i}));
+        }
+        var views = new ArrayList<ByteBuffer>();
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Consumer<ByteBuffer> consumer = view -> {};
+
+        // when
+        bytesHeapFile.getView(1, views::add);
+        bytesHeapFile.getView(99, views::add);
+        bytesHeapFile.getView(1, outer -> {
+            views.add(outer);
+            assertTrue(uncheckedGetView(bytesHeapFile, 2, inner -> {
+                views.add(inner);
+                assertEquals(ByteBuffer.wrap(new byte[]{2, -2}), inner);
+            }));
+            assertEquals(ByteBuffer.wrap(new byte[]{1, -1}), outer);
+        });
+        for (int i = 0; i < 10_000; i++) {
+            bytesHeapFile.getView(i % 100, consumer);
+        }
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10_000; i++) {
+            bytesHeapFile.getView(i % 100, consumer);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // then
+        assertSame(views.get(0), views.get(1));
+        assertSame(views.get(0), views.get(2));
+        assertNotSame(views.get(2), views.get(3));
+        assertTrue(allocated < 10_000 * 192, "allocated " + allocated + " bytes");
+        bytesHeapFile.close();
+
+    }
+
+    private static boolean uncheckedGetView(Store store, Serializable key, Consumer<ByteBuffer> consumer) {
+        try {
+            return store.getView(key, consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void put_get_remove_and_reopen_memory_mapped_file() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withMemoryMapping(16 * 4 * 1024);
+        var mappedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+
+        // when
+        for (int i = 0; i < 1000; i++) {
+            mappedHeapFile.put(new Entry(Integer.toString(i), value));
+        }
+        mappedHeapFile.put(new Entry("0", "updated"));
+        mappedHeapFile.remove("1");
+        mappedHeapFile.close();
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+
+        // then
+        assertEquals(0, Files.size(heapFilePath) % (4 * 1024));
+        assertTrue(Files.size(heapFilePath) < 100 * 4 * 1024);
+        assertEquals("updated", reopenedHeapFile.get("0"));
+        assertNull(reopenedHeapFile.get("1"));
+        for (int i = 2; i < 1000; i++) {
+            assertArrayEquals(value, (byte[]) reopenedHeapFile.get(Integer.toString(i)));
+        }
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void unpins_pages_of_buffer_pool() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withFreeSpaceReuse(true).withBufferPoolSize(8 * 4 * 1024);
+        var pooledHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+
+        // when
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 100; i++) {
+                pooledHeapFile.put(new Entry(Integer.toString(i), value));
+            }
+        }
+        pooledHeapFile.remove("1");
+        pooledHeapFile.get("2");
+        pooledHeapFile.getBytes("3");
+        pooledHeapFile.getView("4", view -> {
+        });
+        pooledHeapFile.get("missing");
+
+        // then
+        assertEquals(0, pooledHeapFile.bufferPool().pinned());
+        assertTrue(pooledHeapFile.bufferPool().size() <= 8);
+        assertNull(pooledHeapFile.get("1"));
+        for (int i = 2; i < 100; i++) {
+            assertArrayEquals(value, (byte[]) pooledHeapFile.get(Integer.toString(i)));
+        }
+        pooledHeapFile.close();
+
+    }
+
+    @Test
+    void write_back_keeps_pages_dirty_until_flush() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withWriteBack(1024 * 1024, 0);
+        var writeBackHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[512];
+        new Random().nextBytes(value);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            writeBackHeapFile.put(new Entry(Integer.toString(i), value));
+        }
+        writeBackHeapFile.remove("1");
+        long sizeBeforeFlush = Files.size(heapFilePath);
+        writeBackHeapFile.flush();
+        long sizeAfterFlush = Files.size(heapFilePath);
+        writeBackHeapFile.put(new Entry("100", value));
+        writeBackHeapFile.close();
+
+        // then
+        assertEquals(0, sizeBeforeFlush);
+        assertTrue(sizeAfterFlush > 0);
+        assertEquals(0, writeBackHeapFile.bufferPool().dirtyBytes());
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        assertNull(reopenedHeapFile.get("1"));
+        for (int i = 2; i <= 100; i++) {
+            assertArrayEquals(value, (byte[]) reopenedHeapFile.get(Integer.toString(i)));
+        }
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void write_back_requires_buffer_pool() {
+
+        // given
+        var options = HeapFileOptions.defaults().withBufferPoolSize(0).withWriteBack(1024 * 1024, 0);
+
+        // when
+        assertThatThrownBy(() -> new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+    @Test
+    void replays_write_ahead_log_of_crashed_file() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var walPath = heapFilePath.resolveSibling(heapFilePath.getFileName() + ".wal");
+        var options = HeapFileOptions.defaults()
+                .withKeyIndex(true)
+                .withWriteAheadLog(WriteAheadLog.Durability.GROUP, 0, HeapFileOptions.DEFAULT_CHECKPOINT_BYTES);
+        var loggedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+        for (int i = 0; i < 100; i++) {
+            loggedHeapFile.put(new Entry(Integer.toString(i), value));
+        }
+        loggedHeapFile.put(new Entry("0", "updated"));
+        loggedHeapFile.remove("1");
+
+        // when
+        long heapFileSizeAtCrash = Files.size(heapFilePath);
+        var recoveredHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+
+        // then
+        assertEquals(0, heapFileSizeAtCrash);
+        assertEquals(0, Files.size(walPath));
+        assertEquals("updated", recoveredHeapFile.get("0"));
+        assertNull(recoveredHeapFile.get("1"));
+        for (int i = 2; i < 100; i++) {
+            assertArrayEquals(value, (byte[]) recoveredHeapFile.get(Integer.toString(i)));
+        }
+        recoveredHeapFile.close();
+
+    }
+
+    @Test
+    void checkpoint_truncates_write_ahead_log() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var walPath = heapFilePath.resolveSibling(heapFilePath.getFileName() + ".wal");
+        var options = HeapFileOptions.defaults()
+                .withKeyIndex(true)
+                .withWriteAheadLog(WriteAheadLog.Durability.PER_OP, 0, 16 * 1024);
+        var loggedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[256];
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            loggedHeapFile.put(new Entry(Integer.toString(i), value));
+        }
+
+        // then
+        assertTrue(Files.size(walPath) < 16 * 1024);
+        assertTrue(Files.size(heapFilePath) > 0);
+        loggedHeapFile.checkpoint();
+        assertEquals(0, Files.size(walPath));
+        loggedHeapFile.close();
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(value, (byte[]) reopenedHeapFile.get(Integer.toString(i)));
+        }
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void restores_torn_page_from_write_ahead_log() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults()
+                .withKeyIndex(true)
+                .withBufferPoolSize(2 * 4 * 1024)
+                .withWriteAheadLog(WriteAheadLog.Durability.GROUP, 0, HeapFileOptions.DEFAULT_CHECKPOINT_BYTES);
+        var loggedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+        for (int i = 0; i < 100; i++) {
+            loggedHeapFile.put(new Entry(Integer.toString(i), value));
+        }
+        loggedHeapFile.checkpoint();
+        for (int i = 0; i < 100; i += 2) {
+            loggedHeapFile.put(new Entry(Integer.toString(i), "updated"));
+        }
+
+        // when
+        try (var channel = FileChannel.open(heapFilePath, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(2 * 1024), 2 * 1024);
+        }
+        var recoveredHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+
+        // then
+        for (int i = 0; i < 100; i++) {
+            if (i % 2 == 0) {
+                assertEquals("updated", recoveredHeapFile.get(Integer.toString(i)));
+            } else {
+                assertArrayEquals(value, (byte[]) recoveredHeapFile.get(Integer.toString(i)));
+            }
+        }
+        recoveredHeapFile.close();
+
+    }
+
+    @Test
+    void put_all_packs_entries_into_pages() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true);
+        var indexedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[512];
+        new Random().nextBytes(value);
+        indexedHeapFile.put(new Entry("0", "existing"));
+        indexedHeapFile.put(new Entry("1", "existing"));
+        var entries = new ArrayList<Entry>();
+        for (int i = 1; i < 3000; i++) {
+            entries.add(new Entry(Integer.toString(i), value));
+        }
+        entries.add(new Entry("2", "last"));
+
+        // when
+        indexedHeapFile.putAll(entries);
+        indexedHeapFile.close();
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+
+        // then
+        assertEquals("existing", reopenedHeapFile.get("0"));
+        assertArrayEquals(value, (byte[]) reopenedHeapFile.get("1"));
+        assertEquals("last", reopenedHeapFile.get("2"));
+        for (int i = 3; i < 3000; i++) {
+            assertArrayEquals(value, (byte[]) reopenedHeapFile.get(Integer.toString(i)));
+        }
+        assertTrue(reopenedHeapFile.nrOfPages() < 3000 * 600 / (4 * 1024) + 2);
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void put_all_without_key_index() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.put(new Entry("1", "existing"));
+        var entries = new ArrayList<Entry>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(new Entry(Integer.toString(i), "value" + i));
+        }
+
+        // when
+        heapFile.putAll(entries);
+
+        // then
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value" + i, heapFile.get(Integer.toString(i)));
+        }
+        assertThatThrownBy(() -> heapFile.putAll(List.of(new Entry("x", new byte[8 * 1024]))))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+    @Test
+    void reads_ahead_when_looking_for_missing_key() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withReadahead(HeapFileOptions.DEFAULT_READAHEAD_BYTES);
+        var scanningHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        for (int i = 0; i < 1000; i++) {
+            scanningHeapFile.put(new Entry(Integer.toString(i), new byte[256]));
+        }
+        int nrOfPages = scanningHeapFile.nrOfPages();
+        scanningHeapFile.close();
+
+        // when
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024);
+        long missesBefore = reopenedHeapFile.bufferPool().misses();
+        var missing = reopenedHeapFile.get("missing");
+        long misses = reopenedHeapFile.bufferPool().misses() - missesBefore;
+        reopenedHeapFile.close();
+        var readingAheadHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        long missesAheadBefore = readingAheadHeapFile.bufferPool().misses();
+        var missingAhead = readingAheadHeapFile.get("missing");
+        long missesAhead = readingAheadHeapFile.bufferPool().misses() - missesAheadBefore;
+        readingAheadHeapFile.close();
+
+        // then
+        assertNull(missing);
+        assertNull(missingAhead);
+        assertTrue(misses >= nrOfPages - 1);
+        assertEquals(0, missesAhead);
+
+    }
+
+    @Test
+    void get_all_keys_in_single_scan() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var scanningHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024);
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+        for (int i = 0; i < 1000; i++) {
+            scanningHeapFile.put(new Entry(Integer.toString(i), value));
+        }
+        scanningHeapFile.put(new Entry("0", "updated"));
+        scanningHeapFile.remove("1");
+
+        // when
+        var values = scanningHeapFile.getAll(List.of("0", "1", "2", "999", "missing"));
+        var bufferPool = scanningHeapFile.bufferPool();
+        long readsBefore = bufferPool.hits() + bufferPool.misses();
+        var newestValues = scanningHeapFile.getAll(List.of("998", "999"));
+        long reads = bufferPool.hits() + bufferPool.misses() - readsBefore;
+
+        // then
+        assertEquals(3, values.size());
+        assertEquals("updated", values.get("0"));
+        assertArrayEquals(value, (byte[]) values.get("2"));
+        assertArrayEquals(value, (byte[]) values.get("999"));
+        assertEquals(2, newestValues.size());
+        assertTrue(reads <= 2);
+        scanningHeapFile.close();
+
+    }
+
+    @Test
+    void get_all_keys_with_key_index() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true);
+        var indexedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        for (int i = 0; i < 1000; i++) {
+            indexedHeapFile.put(new Entry(i, "value" + i));
+        }
+        indexedHeapFile.put(new Entry(0, "updated"));
+        indexedHeapFile.remove(1);
+
+        // when
+        var values = indexedHeapFile.getAll(List.of(0, 1, 2, 500, 999, 1000));
+
+        // then
+        assertEquals(4, values.size());
+        assertEquals("updated", values.get(0));
+        assertEquals("value2", values.get(2));
+        assertEquals("value500", values.get(500));
+        assertEquals("value999", values.get(999));
+        indexedHeapFile.close();
+
+    }
+
+    @Test
+    void page_filters_skip_pages_without_key() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withPageFilters(HeapFileOptions.DEFAULT_PAGE_FILTER_BYTES);
+        var filteredHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        byte[] value = new byte[256];
+        new Random().nextBytes(value);
+        for (int i = 0; i < 1000; i++) {
+            filteredHeapFile.put(new Entry(Integer.toString(i), value));
+        }
+        filteredHeapFile.remove("1");
+
+        // when
+        var bufferPool = filteredHeapFile.bufferPool();
+        long readsBefore = bufferPool.hits() + bufferPool.misses();
+        for (int i = 1000; i < 1100; i++) {
+            assertNull(filteredHeapFile.get(Integer.toString(i)));
+        }
+        long reads = bufferPool.hits() + bufferPool.misses() - readsBefore;
+
+        // then
+        assertTrue(reads < filteredHeapFile.nrOfPages(), "pages read by 100 lookups of missing keys: " + reads);
+        assertNull(filteredHeapFile.get("1"));
+        for (int i = 2; i < 1000; i++) {
+            assertArrayEquals(value, (byte[]) filteredHeapFile.get(Integer.toString(i)));
+        }
+        assertEquals(1, filteredHeapFile.getAll(List.of("0", "1", "missing")).size());
+        filteredHeapFile.close();
+
+    }
+
+    @Test
+    void reopen_existing_file_with_stored_page_filters() throws IOException, ClassNotFoundException {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withPageFilters(HeapFileOptions.DEFAULT_PAGE_FILTER_BYTES);
+        var filtersPath = heapFilePath.resolveSibling(heapFilePath.getFileName() + ".filters");
+        var filteredHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        for (int i = 0; i < 1000; i++) {
+            filteredHeapFile.put(new Entry(i, "value" + i));
+        }
+        filteredHeapFile.close();
+        assertTrue(Files.exists(filtersPath));
+
+        // when
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        boolean filtersKeptWhileOpen = Files.exists(filtersPath);
+        reopenedHeapFile.put(new Entry(1000, "value1000"));
+        reopenedHeapFile.close();
+        var unfilteredHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024);
+        unfilteredHeapFile.put(new Entry(1001, "value1001"));
+        unfilteredHeapFile.close();
+        var rebuiltHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+
+        // then
+        assertFalse(filtersKeptWhileOpen);
+        for (int i = 0; i <= 1001; i++) {
+            assertEquals("value" + i, rebuiltHeapFile.get(i));
+        }
+        assertNull(rebuiltHeapFile.get(1002));
+        rebuiltHeapFile.close();
+
+    }
+
+    @Test
+    void page_filters_are_not_used_with_key_index() {
+
+        // given
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withPageFilters(HeapFileOptions.DEFAULT_PAGE_FILTER_BYTES);
+
+        // when
+        assertThatThrownBy(() -> new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options))
+                .isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+    @Test
+    void gets_of_keys_put_to_new_pages_concurrently() throws Exception {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withBufferPoolSize(0);
+        var indexedHeapFile = new UnorderedHeapFile(heapFilePath, 100_000, 4 * 1024, options);
+        int nrOfKeys = 20_000;
+        var lastKey = new AtomicInteger(-1);
+        var executor = Executors.newFixedThreadPool(4);
+        var readers = new ArrayList<Future<?>>();
+
+        // when
+        for (int thread = 0; thread < 4; thread++) {
+            readers.add(executor.submit(() -> {
+                while (lastKey.get() < nrOfKeys - 1) {
+                    int key = lastKey.get() + 1;
+                    var value = indexedHeapFile.get(key);
+                    if (value != null && ((byte[]) value).length != 1000) {
+                        throw new AssertionError("Value of key " + key);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int key = 0; key < nrOfKeys; key++) {
+            indexedHeapFile.put(new Entry(key, new byte[1000]));
+            lastKey.set(key);
+        }
+
+        // then
+        for (var reader : readers) {
+            reader.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+        assertArrayEquals(new byte[1000], (byte[]) indexedHeapFile.get(nrOfKeys - 1));
+        indexedHeapFile.close();
+
+    }
+
+    @Test
+    void concurrent_puts_removes_and_gets_with_free_space_reuse() throws Exception {
+
+        // given
+        heapFile.close();
+        var options = HeapFileOptions.defaults().withKeyIndex(true).withFreeSpaceReuse(true);
+        var reusingHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        int nrOfThreads = 8;
+        int nrOfKeys = 200;
+        var executor = Executors.newFixedThreadPool(nrOfThreads);
+        var futures = new ArrayList<Future<?>>();
+
+        // when
+        for (int thread = 0; thread < nrOfThreads; thread++) {
+            int seed = thread;
+            futures.add(executor.submit(() -> {
+                var random = new Random(seed);
+                for (int i = 0; i < 2_000; i++) {
+                    int key = random.nextInt(nrOfKeys);
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            reusingHeapFile.remove(key);
+                            break;
+                        case 1:
+                            var value = reusingHeapFile.get(key);
+                            if (value != null && !((String) value).startsWith(key + ":")) {
+                                throw new AssertionError("Value " + value + " of key " + key);
+                            }
+                            break;
+                        default:
+                            reusingHeapFile.put(new Entry(key, key + ":" + i));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (var future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+        for (int key = 0; key < nrOfKeys; key++) {
+            reusingHeapFile.put(new Entry(key, key + ":last"));
+        }
+
+        // then
+        for (int key = 0; key < nrOfKeys; key++) {
+            assertEquals(key + ":last", reusingHeapFile.get(key));
+        }
+        assertEquals(0, reusingHeapFile.bufferPool().pinned());
+        reusingHeapFile.close();
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, 4 * 1024, options);
+        for (int key = 0; key < nrOfKeys; key++) {
+            assertEquals(key + ":last", reopenedHeapFile.get(key));
+        }
+        reopenedHeapFile.close();
+
+    }
+
     private Entry newEntry(Serializable firstkey, Serializable firstvalue) {
         return new Entry(firstkey, firstvalue);
     }
@@ -0,0 +1,147 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VacuumTest {
+
+    private static final int PAGE_SIZE = 4 * 1024;
+
+    private Path heapFilePath;
+    private byte[] value;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        heapFilePath = Files.createTempFile("heap", "0001");
+        value = new byte[256];
+        new Random().nextBytes(value);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.delete(heapFilePath);
+    }
+
+    @Test
+    void compacts_pages_and_truncates_file() throws Exception {
+
+        // given
+        var heapFile = new UnorderedHeapFile(heapFilePath, 1024, PAGE_SIZE, optionsWithVacuum(0.99));
+        for (int i = 0; i < 200; i++) {
+            heapFile.put(new Entry(Integer.toString(i), value));
+        }
+        for (int i = 0; i < 200; i++) {
+            if (i % 4 != 0) {
+                heapFile.remove(Integer.toString(i));
+            }
+        }
+        long sizeBeforeVacuum = Files.size(heapFilePath);
+
+        // when
+        heapFile.vacuum();
+
+        // then
+        assertTrue(Files.size(heapFilePath) <= sizeBeforeVacuum / 3);
+        assertEquals(0.0, heapFile.deadBytesRatio());
+        assertLiveRecords(heapFile);
+        heapFile.close();
+
+        var reopenedHeapFile = new UnorderedHeapFile(heapFilePath, 1024, PAGE_SIZE, optionsWithVacuum(0.99));
+        assertLiveRecords(reopenedHeapFile);
+        reopenedHeapFile.close();
+
+    }
+
+    @Test
+    void runs_in_background_when_dead_bytes_ratio_reached() throws Exception {
+
+        // given
+        var heapFile = new UnorderedHeapFile(heapFilePath, 1024, PAGE_SIZE, optionsWithVacuum(0.5));
+        for (int i = 0; i < 200; i++) {
+            heapFile.put(new Entry(Integer.toString(i), value));
+        }
+        long sizeBeforeVacuum = Files.size(heapFilePath);
+
+        // when
+        for (int i = 0; i < 200; i++) {
+            if (i % 4 != 0) {
+                heapFile.remove(Integer.toString(i));
+            }
+        }
+
+        // then
+        for (int i = 0; i < 100 && Files.size(heapFilePath) > sizeBeforeVacuum / 3; i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(Files.size(heapFilePath) <= sizeBeforeVacuum / 3);
+        assertLiveRecords(heapFile);
+        heapFile.close();
+
+    }
+
+    @Test
+    void readers_see_live_records_while_file_is_truncated() throws Exception {
+
+        // given
+        var heapFile = new UnorderedHeapFile(heapFilePath, 1024, PAGE_SIZE, optionsWithVacuum(0.99));
+        for (int i = 0; i < 200; i++) {
+            heapFile.put(new Entry(Integer.toString(i), value));
+        }
+        for (int i = 0; i < 200; i++) {
+            if (i % 4 != 0) {
+                heapFile.remove(Integer.toString(i));
+            }
+        }
+        var vacuumDone = new AtomicBoolean();
+        var reader = CompletableFuture.runAsync(() -> {
+            try {
+                while (!vacuumDone.get()) {
+                    assertLiveRecords(heapFile);
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // when
+        heapFile.vacuum();
+        vacuumDone.set(true);
+
+        // then
+        reader.get(1, TimeUnit.MINUTES);
+        assertLiveRecords(heapFile);
+        heapFile.close();
+
+    }
+
+    private void assertLiveRecords(Store heapFile) throws IOException, ClassNotFoundException {
+        for (int i = 0; i < 200; i++) {
+            if (i % 4 == 0) {
+                assertArrayEquals(value, (byte[]) heapFile.get(Integer.toString(i)));
+            } else {
+                assertNull(heapFile.get(Integer.toString(i)));
+            }
+        }
+    }
+
+    private static HeapFileOptions optionsWithVacuum(double deadBytesRatio) {
+        return HeapFileOptions.defaults()
+                .withKeyIndex(true)
+                .withFreeSpaceReuse(true)
+                .withVacuum(deadBytesRatio, 0);
+    }
+}
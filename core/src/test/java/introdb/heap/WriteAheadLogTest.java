@@ -0,0 +1,259 @@
+package introdb.heap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+
+    private static final int PAGE_SIZE = 512;
+
+    private Path path;
+    private Path pagePath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = Files.createTempFile("heap", "wal");
+        pagePath = Files.createTempFile("heap", "pages");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.delete(path);
+        Files.delete(pagePath);
+    }
+
+    @Test
+    void replays_logged_operations_in_order() throws IOException {
+
+        // given
+        var writeAheadLog = new WriteAheadLog(path, WriteAheadLog.Durability.PER_OP, 0);
+        writeAheadLog.awaitDurable(writeAheadLog.logPut(bytes("1"), bytes("value1")));
+        writeAheadLog.awaitDurable(writeAheadLog.logRemove(bytes("1")));
+        writeAheadLog.awaitDurable(writeAheadLog.logPut(bytes("2"), bytes("value2")));
+        writeAheadLog.close();
+
+        // when
+        var replayed = new RecordingReplayer();
+        var reopenedLog = new WriteAheadLog(path, WriteAheadLog.Durability.PER_OP, 0);
+        int operations = reopenedLog.replay(replayed);
+
+        // then
+        assertEquals(3, operations);
+        assertEquals(List.of("put 1=value1", "remove 1", "put 2=value2"), replayed.operations);
+        reopenedLog.close();
+
+    }
+
+    @Test
+    void cuts_off_incomplete_tail() throws IOException {
+
+        // given
+        var writeAheadLog = new WriteAheadLog(path, WriteAheadLog.Durability.GROUP, 0);
+        writeAheadLog.awaitDurable(writeAheadLog.logPut(bytes("1"), bytes("value1")));
+        writeAheadLog.close();
+        long validSize = Files.size(path);
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 100, 1, 2, 3}), validSize);
+        }
+
+        // when
+        var replayed = new RecordingReplayer();
+        var reopenedLog = new WriteAheadLog(path, WriteAheadLog.Durability.GROUP, 0);
+        reopenedLog.replay(replayed);
+        reopenedLog.awaitDurable(reopenedLog.logPut(bytes("2"), bytes("value2")));
+        reopenedLog.close();
+
+        // then
+        assertEquals(List.of("put 1=value1"), replayed.operations);
+        var replayedAgain = new RecordingReplayer();
+        var logAfterAppend = new WriteAheadLog(path, WriteAheadLog.Durability.GROUP, 0);
+        logAfterAppend.replay(replayedAgain);
+        assertEquals(List.of("put 1=value1", "put 2=value2"), replayedAgain.operations);
+        logAfterAppend.close();
+
+    }
+
+    @Test
+    void checkpoint_drops_logged_operations() throws IOException {
+
+        // given
+        var writeAheadLog = new WriteAheadLog(path, WriteAheadLog.Durability.NONE, 0);
+        writeAheadLog.logPut(bytes("1"), bytes("value1"));
+        long lsn = writeAheadLog.logPut(bytes("2"), bytes("value2"));
+
+        // when
+        writeAheadLog.checkpoint();
+        writeAheadLog.logPut(bytes("3"), bytes("value3"));
+        writeAheadLog.close();
+
+        // then
+        assertEquals(lsn, writeAheadLog.checkpointLsn());
+        var replayed = new RecordingReplayer();
+        var reopenedLog = new WriteAheadLog(path, WriteAheadLog.Durability.NONE, 0);
+        reopenedLog.replay(replayed);
+        assertEquals(List.of("put 3=value3"), replayed.operations);
+        reopenedLog.close();
+
+    }
+
+    @Test
+    void group_commit_makes_concurrent_operations_durable() throws Exception {
+
+        // given
+        var writeAheadLog = new WriteAheadLog(path, WriteAheadLog.Durability.GROUP, 0);
+        var executor = Executors.newFixedThreadPool(8);
+        var tasks = new ArrayList<Callable<Void>>();
+        for (int thread = 0; thread < 8; thread++) {
+            int threadNumber = thread;
+            tasks.add(() -> {
+                for (int i = 0; i < 50; i++) {
+                    long lsn;
+                    synchronized (writeAheadLog) {
+                        lsn = writeAheadLog.logPut(bytes(threadNumber + "-" + i), bytes("value"));
+                    }
+                    writeAheadLog.awaitDurable(lsn);
+                }
+                return null;
+            });
+        }
+
+        // when
+        for (var future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+        executor.shutdown();
+        writeAheadLog.close();
+
+        // then
+        var replayed = new RecordingReplayer();
+        var reopenedLog = new WriteAheadLog(path, WriteAheadLog.Durability.GROUP, 0);
+        assertEquals(8 * 50, reopenedLog.replay(replayed));
+        reopenedLog.close();
+
+    }
+
+    @Test
+    void logs_page_image_only_on_first_write_since_checkpoint() throws IOException {
+
+        // given
+        var writeAheadLog = new WriteAheadLog(path, WriteAheadLog.Durability.NONE, 0);
+        var loggedPageFile = new LoggedPageFile(new ChannelPageFile(FileChannel.open(pagePath, StandardOpenOption.WRITE,
+                StandardOpenOption.READ), PAGE_SIZE), writeAheadLog);
+
+        // when
+        loggedPageFile.write(1, page(1));
+        long afterFirstWrite = writeAheadLog.size();
+        loggedPageFile.write(1, page(2));
+        long afterSecondWrite = writeAheadLog.size();
+        loggedPageFile.write(1, new ByteBuffer[]{page(3), page(4)});
+        long afterRunWrite = writeAheadLog.size();
+        writeAheadLog.checkpoint();
+        loggedPageFile.write(1, page(5));
+
+        // then
+        assertTrue(afterFirstWrite > PAGE_SIZE);
+        assertEquals(afterFirstWrite, afterSecondWrite);
+        assertEquals(2 * afterFirstWrite, afterRunWrite);
+        assertEquals(afterFirstWrite, writeAheadLog.size());
+        loggedPageFile.close();
+        writeAheadLog.close();
+
+    }
+
+    @Test
+    void forces_log_only_up_to_lsn_of_written_page() throws IOException {
+
+        // given
+        var writeAheadLog = new WriteAheadLog(path, WriteAheadLog.Durability.NONE, 0);
+        var loggedPageFile = new LoggedPageFile(new ChannelPageFile(FileChannel.open(pagePath, StandardOpenOption.WRITE,
+                StandardOpenOption.READ), PAGE_SIZE), writeAheadLog);
+        loggedPageFile.write(1, page(1));
+
+        // when
+        long lsn = writeAheadLog.logPut(bytes("1"), bytes("value1"));
+        loggedPageFile.write(1, page(1));
+        long durableLsnOfUnchangedPage = writeAheadLog.durableLsn();
+        loggedPageFile.changed(1);
+        writeAheadLog.logPut(bytes("2"), bytes("value2"));
+        loggedPageFile.write(1, page(2));
+
+        // then
+        assertTrue(durableLsnOfUnchangedPage < lsn);
+        assertTrue(writeAheadLog.durableLsn() >= lsn);
+        loggedPageFile.close();
+        writeAheadLog.close();
+
+    }
+
+    @Test
+    void restores_torn_pages_from_their_last_images() throws IOException {
+
+        // given
+        var writeAheadLog = new WriteAheadLog(path, WriteAheadLog.Durability.NONE, 0);
+        var pageFile = new ChannelPageFile(FileChannel.open(pagePath, StandardOpenOption.WRITE, StandardOpenOption.READ), PAGE_SIZE);
+        var loggedPageFile = new LoggedPageFile(pageFile, writeAheadLog);
+        writeAheadLog.logPut(bytes("1"), bytes("value1"));
+        loggedPageFile.write(1, new ByteBuffer[]{page(1), page(2), page(3)});
+        loggedPageFile.truncate(2 * PAGE_SIZE);
+        loggedPageFile.write(2, page(4));
+        writeAheadLog.close();
+
+        // when
+        pageFile.write(1, page(-1).limit(PAGE_SIZE / 2));
+        pageFile.write(2, page(-1).limit(PAGE_SIZE / 2));
+        var reopenedLog = new WriteAheadLog(path, WriteAheadLog.Durability.NONE, 0);
+        int restoredPages = reopenedLog.restorePages(pageFile);
+        var replayed = new RecordingReplayer();
+        reopenedLog.replay(replayed);
+
+        // then
+        assertEquals(3, restoredPages);
+        assertEquals(2 * PAGE_SIZE, pageFile.size());
+        assertEquals(page(1), pageFile.read(1, ByteBuffer.allocate(PAGE_SIZE)).flip());
+        assertEquals(page(4), pageFile.read(2, ByteBuffer.allocate(PAGE_SIZE)).flip());
+        assertEquals(List.of("put 1=value1"), replayed.operations);
+        reopenedLog.close();
+        pageFile.close();
+
+    }
+
+    private static ByteBuffer page(int content) {
+        byte[] page = new byte[PAGE_SIZE];
+        Arrays.fill(page, (byte) content);
+        return ByteBuffer.wrap(page);
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes();
+    }
+
+    private static final class RecordingReplayer implements WriteAheadLog.Replayer {
+        private final List<String> operations = new ArrayList<>();
+
+        @Override
+        public void put(byte[] keyBytes, byte[] valueBytes) {
+            operations.add("put " + new String(keyBytes) + "=" + new String(valueBytes));
+        }
+
+        @Override
+        public void remove(byte[] keyBytes) {
+            operations.add("remove " + new String(keyBytes));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package introdb.heap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Latency distribution of gets and puts under load of 16 callers, blocking calls to the store against
+ * futures of {@link AsyncStore}, whose queued gets are coalesced into a single lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AsyncStoreBenchmark {
+
+	private static final byte[] buffer = new byte[512];
+
+	@Param({"10000"})
+	public int nrOfRecords;
+
+	@Param({"4"})
+	public int nrOfThreads;
+
+	@Param({"false","true"})
+	public boolean virtualThreads;
+
+	private Store heapFile;
+	private AsyncStore asyncStore;
+	private Path tempFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempFile = Files.createTempFile("heap", "0001");
+		heapFile = new UnorderedHeapFile(tempFile, nrOfRecords, 4*1024, HeapFileOptions.defaults()
+				.withKeyCodec(Codecs.STRING)
+				.withValueCodec(Codecs.BYTE_ARRAY));
+		for (int i = 0; i < nrOfRecords; i++) {
+			heapFile.put(new Entry(Integer.toString(i), buffer));
+		}
+		asyncStore = virtualThreads
+				? AsyncStore.onVirtualThreads(heapFile, 1024)
+				: new AsyncStore(heapFile, nrOfThreads, 1024);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		asyncStore.close();
+		Files.delete(tempFile);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Object get_blocking_16() throws Exception {
+		return heapFile.get(randomKey());
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Object get_async_16() {
+		return asyncStore.getAsync(randomKey()).join();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Object put_blocking_16() throws Exception {
+		Entry entry = new Entry(randomKey(), buffer);
+		heapFile.put(entry);
+		return entry;
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Object put_async_16() {
+		return asyncStore.putAsync(new Entry(randomKey(), buffer)).join();
+	}
+
+	private String randomKey() {
+		return Integer.toString(ThreadLocalRandom.current().nextInt(nrOfRecords));
+	}
+
+}
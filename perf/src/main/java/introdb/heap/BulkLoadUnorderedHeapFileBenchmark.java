@@ -0,0 +1,74 @@
+package introdb.heap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures time to load given number of entries into empty heap file, one by one or with a single putAll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class BulkLoadUnorderedHeapFileBenchmark {
+
+	private static final int PAGE_SIZE = 4 * 1024;
+
+	@Param({"100000","1000000"})
+	public int nrOfEntries;
+
+	@Param({"512"})
+	public int bufferSize;
+
+	private List<Entry> entries;
+	private Store heapFile;
+	private Path tempFile;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		byte[] buffer = new byte[bufferSize];
+		entries = new ArrayList<>(nrOfEntries);
+		for (int i = 0; i < nrOfEntries; i++) {
+			entries.add(new Entry(i, buffer));
+		}
+		tempFile = Files.createTempFile("heap", "0001");
+		heapFile = new UnorderedHeapFile(tempFile, nrOfEntries, PAGE_SIZE, HeapFileOptions.defaults()
+				.withKeyCodec(Codecs.INTEGER)
+				.withValueCodec(Codecs.BYTE_ARRAY));
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws Exception {
+		heapFile.close();
+		Files.delete(tempFile);
+	}
+
+	@Benchmark
+	public Store put() throws Exception {
+		for (var entry : entries) {
+			heapFile.put(entry);
+		}
+		return heapFile;
+	}
+
+	@Benchmark
+	public Store putAll() throws Exception {
+		heapFile.putAll(entries);
+		return heapFile;
+	}
+
+}
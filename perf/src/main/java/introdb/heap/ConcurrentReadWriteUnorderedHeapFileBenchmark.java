@@ -9,6 +9,7 @@ import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.CompilerControl;
 import org.openjdk.jmh.annotations.CompilerControl.Mode;
 import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
@@ -16,6 +17,11 @@ import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 
+/**
+ * Readers of a record on the first page run next to growing number of writers appending to the last page,
+ * as pages are latched separately read throughput should not fall when writers are added. With key index
+ * readers go straight to the first page, without it they scan pages from the last one.
+ */
 @State(Scope.Benchmark)
 public class ConcurrentReadWriteUnorderedHeapFileBenchmark {
 
@@ -23,6 +29,9 @@ public class ConcurrentReadWriteUnorderedHeapFileBenchmark {
 	
 	@Param( {"512","1024","2048"})
 	public int bufferSize;
+
+	@Param( {"false","true"})
+	public boolean keyIndex;
 	
 	private byte[] readKey_0 = toArrayWithPadding(0, 64);
 
@@ -46,7 +55,7 @@ public class ConcurrentReadWriteUnorderedHeapFileBenchmark {
 		}
 
 		tempFile = Files.createTempFile("heap", "0001");
-		heapFile = new UnorderedHeapFile(tempFile, MAX_PAGES, 4*1024);
+		heapFile = new UnorderedHeapFile(tempFile, MAX_PAGES, 4*1024, HeapFileOptions.defaults().withKeyIndex(keyIndex));
 
 		heapFile.put(new Entry(readKey_0, toArrayWithPadding(0, bufferSize)));
 
@@ -55,6 +64,7 @@ public class ConcurrentReadWriteUnorderedHeapFileBenchmark {
 	
 	@TearDown(Level.Iteration)
 	public void tearDown() throws IOException{
+		heapFile.close();
 		Files.delete(tempFile);
 	}
 	
@@ -73,6 +83,34 @@ public class ConcurrentReadWriteUnorderedHeapFileBenchmark {
     public byte[] readEntry() throws ClassNotFoundException, IOException {
 		return (byte[]) heapFile.get(readKey_0);
 	}
+
+    @Benchmark
+    @Group("readers_4_writers_1")
+    @GroupThreads(1)
+    public Entry writeEntryByOneWriter() throws ClassNotFoundException, IOException {
+		return writeEntry();
+    }
+
+    @Benchmark
+    @Group("readers_4_writers_1")
+    @GroupThreads(4)
+    public byte[] readEntryNextToOneWriter() throws ClassNotFoundException, IOException {
+		return readEntry();
+	}
+
+    @Benchmark
+    @Group("readers_4_writers_4")
+    @GroupThreads(4)
+    public Entry writeEntryByFourWriters() throws ClassNotFoundException, IOException {
+		return writeEntry();
+    }
+
+    @Benchmark
+    @Group("readers_4_writers_4")
+    @GroupThreads(4)
+    public byte[] readEntryNextToFourWriters() throws ClassNotFoundException, IOException {
+		return readEntry();
+	}
     
     private static byte[] toArrayWithPadding(int value, int padding) {
     	byte[] bytes = Integer.toString(value).getBytes();
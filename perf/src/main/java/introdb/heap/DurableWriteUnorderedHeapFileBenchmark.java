@@ -0,0 +1,58 @@
+package introdb.heap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Durable puts with write ahead log, run with different number of threads (-t), to compare
+ * how throughput of durability modes scales with concurrent writers.
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class DurableWriteUnorderedHeapFileBenchmark {
+
+	@Param({"PER_OP","GROUP","PERIODIC","NONE"})
+	public String durability;
+
+	@Param({"512"})
+	public int bufferSize;
+
+	private final AtomicInteger key = new AtomicInteger();
+	private byte[] buffer;
+	private Store heapFile;
+	private Path tempFile;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		tempFile = Files.createTempFile("heap", "0001");
+		heapFile = new UnorderedHeapFile(tempFile, 50000, 4*1024, HeapFileOptions.defaults()
+				.withKeyCodec(Codecs.INTEGER)
+				.withValueCodec(Codecs.BYTE_ARRAY)
+				.withWriteAheadLog(WriteAheadLog.Durability.valueOf(durability), 10, HeapFileOptions.DEFAULT_CHECKPOINT_BYTES));
+		buffer = new byte[bufferSize];
+		key.set(0);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws Exception {
+		heapFile.close();
+		Files.delete(tempFile);
+		Files.deleteIfExists(tempFile.resolveSibling(tempFile.getFileName() + ".wal"));
+	}
+
+	@Benchmark
+	public void durablePut() throws Exception {
+		heapFile.put(new Entry(key.getAndIncrement(), buffer));
+	}
+
+}
@@ -0,0 +1,57 @@
+package introdb.heap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Puts values of the same size to a small set of keys over and over, updates overwrite records in place,
+ * so the file keeps a page per the keys it holds.
+ */
+@State(Scope.Benchmark)
+public class HotKeyUpdateUnorderedHeapFileBenchmark {
+
+	@Param({"16","1024"})
+	public int nrOfKeys;
+
+	@Param({"false","true"})
+	public boolean keyIndex;
+
+	private byte[] buffer;
+	private Store heapFile;
+	private int key;
+	private Path tempFile;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		tempFile = Files.createTempFile("heap", "0001");
+		var options = HeapFileOptions.defaults().withKeyCodec(Codecs.INTEGER).withValueCodec(Codecs.BYTE_ARRAY);
+		if (keyIndex) {
+			options = options.withKeyIndex(true);
+		} else {
+			options = options.withPageFilters(HeapFileOptions.DEFAULT_PAGE_FILTER_BYTES);
+		}
+		heapFile = new UnorderedHeapFile(tempFile, 50000, 4 * 1024, options);
+		buffer = new byte[128];
+		key = 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws Exception {
+		heapFile.close();
+		Files.delete(tempFile);
+	}
+
+	@Benchmark
+	public Object updateHotKey() throws Exception {
+		return heapFile.put(new Entry(key++ % nrOfKeys, buffer));
+	}
+
+}
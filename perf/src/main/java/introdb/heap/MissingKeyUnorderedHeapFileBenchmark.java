@@ -0,0 +1,77 @@
+package introdb.heap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Lookups without key index, of keys which are not in the file and of a mix with 40% of them missing.
+ * With page filters a missing key should be found missing without reading any page, with parallel search
+ * pages are read by a thread per available processor.
+ */
+@State(Scope.Benchmark)
+public class MissingKeyUnorderedHeapFileBenchmark {
+
+	private static final byte[] buffer = new byte[512];
+
+	@Param({"1000","10000","100000"})
+	public int nrOfRecords;
+
+	@Param({"false","true"})
+	public boolean pageFilters;
+
+	@Param({"false","true"})
+	public boolean parallelSearch;
+
+	private Store heapFile;
+	private Path tempFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempFile = Files.createTempFile("heap", "0001");
+		var options = HeapFileOptions.defaults()
+				.withKeyCodec(Codecs.STRING)
+				.withValueCodec(Codecs.BYTE_ARRAY);
+		if (pageFilters) {
+			options = options.withPageFilters(HeapFileOptions.DEFAULT_PAGE_FILTER_BYTES);
+		}
+		if (parallelSearch) {
+			options = options.withParallelSearch(Runtime.getRuntime().availableProcessors(), HeapFileOptions.DEFAULT_SEARCH_CHUNK_PAGES);
+		}
+		heapFile = new UnorderedHeapFile(tempFile, nrOfRecords, 4*1024, options);
+		var entries = new ArrayList<Entry>(nrOfRecords);
+		for (int i = 0; i < nrOfRecords; i++) {
+			entries.add(new Entry(Integer.toString(i), buffer));
+		}
+		heapFile.putAll(entries);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		heapFile.close();
+		Files.delete(tempFile);
+		Files.deleteIfExists(tempFile.resolveSibling(tempFile.getFileName() + ".filters"));
+	}
+
+	@Benchmark
+	public Object readMissingKey() throws Exception {
+		return heapFile.get(Integer.toString(nrOfRecords + ThreadLocalRandom.current().nextInt(nrOfRecords)));
+	}
+
+	@Benchmark
+	public Object readKeysWith40PercentMissing() throws Exception {
+		var random = ThreadLocalRandom.current();
+		int key = random.nextInt(10) < 4 ? nrOfRecords + random.nextInt(nrOfRecords) : random.nextInt(nrOfRecords);
+		return heapFile.get(Integer.toString(key));
+	}
+
+}
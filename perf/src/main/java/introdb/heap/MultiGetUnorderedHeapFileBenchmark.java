@@ -0,0 +1,76 @@
+package introdb.heap;
+
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares N single gets with one getAll of the same N random keys.
+ */
+@State(Scope.Benchmark)
+public class MultiGetUnorderedHeapFileBenchmark {
+
+	private static final byte[] buffer = new byte[512];
+
+	@Param({"10000","100000"})
+	public int nrOfRecords;
+
+	@Param({"50","200"})
+	public int nrOfKeys;
+
+	@Param({"false","true"})
+	public boolean keyIndex;
+
+	private Store heapFile;
+	private Path tempFile;
+	private List<String> keys;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempFile = Files.createTempFile("heap", "0001");
+		heapFile = new UnorderedHeapFile(tempFile, nrOfRecords, 4*1024, HeapFileOptions.defaults()
+				.withKeyIndex(keyIndex)
+				.withKeyCodec(Codecs.STRING)
+				.withValueCodec(Codecs.BYTE_ARRAY));
+		for (int i = 0; i < nrOfRecords; i++) {
+			heapFile.put(new Entry(Integer.toString(i), buffer));
+		}
+		var random = new Random(0);
+		keys = new ArrayList<>(nrOfKeys);
+		for (int i = 0; i < nrOfKeys; i++) {
+			keys.add(Integer.toString(random.nextInt(nrOfRecords)));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		heapFile.close();
+		Files.delete(tempFile);
+	}
+
+	@Benchmark
+	public void singleGets(Blackhole blackhole) throws Exception {
+		for (var key : keys) {
+			blackhole.consume(heapFile.get(key));
+		}
+	}
+
+	@Benchmark
+	public Map<Serializable, Object> multiGet() throws Exception {
+		return heapFile.getAll(keys);
+	}
+
+}
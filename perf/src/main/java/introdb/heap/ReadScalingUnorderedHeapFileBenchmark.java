@@ -0,0 +1,97 @@
+package introdb.heap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Throughput of random reads from 1 to 64 threads, gets take no locks, so it should grow with the number of cores.
+ */
+@State(Scope.Benchmark)
+public class ReadScalingUnorderedHeapFileBenchmark {
+
+	private static final byte[] buffer = new byte[512];
+
+	@Param({"1000","10000"})
+	public int nrOfRecords;
+
+	@Param({"false","true"})
+	public boolean keyIndex;
+
+	private Store heapFile;
+	private Path tempFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempFile = Files.createTempFile("heap", "0001");
+		heapFile = new UnorderedHeapFile(tempFile, nrOfRecords, 4*1024, HeapFileOptions.defaults()
+				.withKeyIndex(keyIndex)
+				.withKeyCodec(Codecs.STRING)
+				.withValueCodec(Codecs.BYTE_ARRAY));
+		for (int i = 0; i < nrOfRecords; i++) {
+			heapFile.put(new Entry(Integer.toString(i), buffer));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		heapFile.close();
+		Files.delete(tempFile);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object read_1() throws Exception {
+		return readRandomKey();
+	}
+
+	@Benchmark
+	@Threads(2)
+	public Object read_2() throws Exception {
+		return readRandomKey();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object read_4() throws Exception {
+		return readRandomKey();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Object read_8() throws Exception {
+		return readRandomKey();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Object read_16() throws Exception {
+		return readRandomKey();
+	}
+
+	@Benchmark
+	@Threads(32)
+	public Object read_32() throws Exception {
+		return readRandomKey();
+	}
+
+	@Benchmark
+	@Threads(64)
+	public Object read_64() throws Exception {
+		return readRandomKey();
+	}
+
+	private Object readRandomKey() throws Exception {
+		return heapFile.get(Integer.toString(ThreadLocalRandom.current().nextInt(nrOfRecords)));
+	}
+
+}
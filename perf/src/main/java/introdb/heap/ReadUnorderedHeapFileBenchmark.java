@@ -18,6 +18,18 @@ public class ReadUnorderedHeapFileBenchmark {
 	
 	@Param({"10","100","500"})
 	public String key;
+
+	@Param({"1000","10000","100000","1000000"})
+	public int nrOfRecords;
+
+	@Param({"false","true"})
+	public boolean keyIndex;
+
+	@Param({"java","binary"})
+	public String codec;
+
+	@Param({"channel","mmap"})
+	public String io;
 	
 	private Store heapFile;
 	private Path tempFile;
@@ -25,14 +37,15 @@ public class ReadUnorderedHeapFileBenchmark {
 	@Setup(Level.Trial)
 	public void setUp() throws Exception {
 		tempFile = Files.createTempFile("heap", "0001");
-		heapFile = new UnorderedHeapFile(tempFile, 50000, 4*1024);
-		for(int i=0;i<1000;i++) {
+		heapFile = new UnorderedHeapFile(tempFile, nrOfRecords, 4*1024, options(codec, io).withKeyIndex(keyIndex));
+		for(int i=0;i<nrOfRecords;i++) {
 			heapFile.put(new Entry(Integer.toString(i),buffer));			
 		}
 	}
 	
 	@TearDown(Level.Trial)
 	public void tearDown() throws Exception{
+		heapFile.close();
 		Files.delete(tempFile);
 	}
 	
@@ -41,4 +54,15 @@ public class ReadUnorderedHeapFileBenchmark {
     	return heapFile.get(key);
     }
 
+    private static HeapFileOptions options(String codec, String io) {
+    	var options = HeapFileOptions.defaults();
+    	if ("mmap".equals(io)) {
+    		options = options.withMemoryMapping(HeapFileOptions.DEFAULT_MAPPING_CHUNK_SIZE);
+    	}
+    	if ("binary".equals(codec)) {
+    		return options.withKeyCodec(Codecs.STRING).withValueCodec(Codecs.BYTE_ARRAY);
+    	}
+    	return options;
+    }
+
 }
@@ -0,0 +1,66 @@
+package introdb.heap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures time to first read, after heap file of given size is reopened.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ReopenUnorderedHeapFileBenchmark {
+
+	private static final int PAGE_SIZE = 4 * 1024;
+	private static final byte[] buffer = new byte[512];
+
+	@Param({"100","1024"})
+	public int fileSizeInMB;
+
+	@Param({"false","true"})
+	public boolean keyIndex;
+
+	@Param({"0","262144"})
+	public int readaheadBytes;
+
+	private Path tempFile;
+	private int maxNrPages;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempFile = Files.createTempFile("heap", "0001");
+		maxNrPages = fileSizeInMB * (1024 * 1024 / PAGE_SIZE);
+		try (var heapFile = new UnorderedHeapFile(tempFile, maxNrPages, PAGE_SIZE)) {
+			long fileSize = fileSizeInMB * 1024L * 1024L;
+			for (int i = 0; Files.size(tempFile) < fileSize; i++) {
+				heapFile.put(new Entry(Integer.toString(i), buffer));
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		Files.delete(tempFile);
+	}
+
+	@Benchmark
+	public Object reopenAndReadKey() throws Exception {
+		try (var heapFile = new UnorderedHeapFile(tempFile, maxNrPages, PAGE_SIZE, HeapFileOptions.defaults().withKeyIndex(keyIndex).withReadahead(readaheadBytes))) {
+			return heapFile.get("0");
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package introdb.heap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Full scan of the file with sequential and parallel streams, decoding whole entries, keys only or nothing.
+ * With cold cache, page cache of the operating system is dropped before every scan (requires root), to show
+ * the gain of readahead and page compression when pages come from the disk. Values are JSON-like text,
+ * which compresses a few times.
+ */
+@State(Scope.Benchmark)
+public class ScanUnorderedHeapFileBenchmark {
+
+	private static final byte[] buffer = jsonLikeValue(512);
+
+	@Param({"100000"})
+	public int nrOfRecords;
+
+	@Param({"false","true"})
+	public boolean parallel;
+
+	@Param({"0","262144"})
+	public int readaheadBytes;
+
+	@Param({"false"})
+	public boolean coldCache;
+
+	@Param({"0","1"})
+	public int compressionLevel;
+
+	private Store heapFile;
+	private Path tempFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempFile = Files.createTempFile("heap", "0001");
+		heapFile = new UnorderedHeapFile(tempFile, nrOfRecords, 4*1024, HeapFileOptions.defaults()
+				.withKeyCodec(Codecs.INTEGER)
+				.withValueCodec(Codecs.BYTE_ARRAY)
+				.withReadahead(readaheadBytes)
+				.withPageCompression(compressionLevel));
+		var entries = new ArrayList<Entry>(nrOfRecords);
+		for (int i = 0; i < nrOfRecords; i++) {
+			entries.add(new Entry(i, buffer));
+		}
+		heapFile.putAll(entries);
+	}
+
+	@Setup(Level.Invocation)
+	public void dropCaches() throws Exception {
+		if (!coldCache) {
+			return;
+		}
+		Process sync = new ProcessBuilder("sync").start();
+		if(sync.waitFor()!=0) {
+			throw new IllegalStateException("sync command failed");
+		}
+
+		Process sysctl= new ProcessBuilder("sysctl","-w","vm.drop_caches=1").start();
+		if(sysctl.waitFor()!=0) {
+			throw new IllegalStateException("sysctl command failed");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		heapFile.close();
+		Files.delete(tempFile);
+		Files.deleteIfExists(tempFile.resolveSibling(tempFile.getFileName() + ".pages"));
+	}
+
+	@Benchmark
+	public long scanEntries() {
+		var entries = heapFile.entries();
+		return (parallel ? entries.parallel() : entries).mapToInt(entry -> ((byte[]) entry.value()).length).sum();
+	}
+
+	@Benchmark
+	public long scanKeys() {
+		var keys = heapFile.keys();
+		return (parallel ? keys.parallel() : keys).count();
+	}
+
+	@Benchmark
+	public long scanEncodedEntries() {
+		var records = heapFile.encodedEntries();
+		return (parallel ? records.parallel() : records).mapToInt(record -> record.valueBytes().length).sum();
+	}
+
+	private static byte[] jsonLikeValue(int size) {
+		var value = new StringBuilder();
+		for (int i = 0; value.length() < size; i++) {
+			value.append("{\"id\":").append(i * 7919 % 10007).append(",\"name\":\"customer-").append(i)
+					.append("\",\"active\":").append(i % 3 == 0).append('}');
+		}
+		return value.substring(0, size).getBytes();
+	}
+
+}
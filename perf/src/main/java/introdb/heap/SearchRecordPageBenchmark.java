@@ -0,0 +1,53 @@
+package introdb.heap;
+
+import java.nio.ByteBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Search of a single page full of records, which keys all have the same hash, so every key is compared.
+ * Run with {@code -prof gc}, searching missing key should allocate nothing, finding the oldest record
+ * allocates only that record.
+ */
+@State(Scope.Benchmark)
+public class SearchRecordPageBenchmark {
+
+	private static final int PAGE_SIZE = 4*1024;
+
+	@Param({"false","true"})
+	public boolean direct;
+
+	private RecordPage page;
+	private byte[] oldestKey;
+	private byte[] missingKey;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		page = new RecordPage(PAGE_SIZE, direct ? ByteBuffer.allocateDirect(PAGE_SIZE) : ByteBuffer.allocate(PAGE_SIZE), 1);
+		for (int i = -1; i < 7; i++) {
+			page.append(EntryRecord.fromBytes(collidingKey(i), new byte[256]));
+		}
+		oldestKey = collidingKey(-1);
+		missingKey = collidingKey(7);
+	}
+
+	@Benchmark
+	public Object findMissingKey() {
+		return page.find(missingKey);
+	}
+
+	@Benchmark
+	public Object findOldestKey() {
+		return page.find(oldestKey);
+	}
+
+	private static byte[] collidingKey(int i) {
+		return new byte[]{(byte) i, (byte) (90 - 31 * i)};
+	}
+
+}
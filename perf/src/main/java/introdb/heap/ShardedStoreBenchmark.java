@@ -0,0 +1,105 @@
+package introdb.heap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Random puts and gets on a store split into growing number of shards, from 1 to 16 threads. Writers of different
+ * shards do not share the last page, and gets scan only a part of the data, so throughput should grow with
+ * the number of shards until it reaches the number of threads.
+ */
+@State(Scope.Benchmark)
+public class ShardedStoreBenchmark {
+
+	private static final int MAX_PAGES = 100_000;
+
+	private static final byte[] buffer = new byte[512];
+
+	@Param({"1","2","4","8","16"})
+	public int nrOfShards;
+
+	@Param({"10000"})
+	public int nrOfRecords;
+
+	private Store store;
+	private Path directory;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("sharded");
+		store = new ShardedStore(directory, nrOfShards, MAX_PAGES, 4*1024, HeapFileOptions.defaults()
+				.withKeyCodec(Codecs.STRING)
+				.withValueCodec(Codecs.BYTE_ARRAY));
+		for (int i = 0; i < nrOfRecords; i++) {
+			store.put(new Entry(Integer.toString(i), buffer));
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		store.close();
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object write_1() throws Exception {
+		return writeRandomKey();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object write_4() throws Exception {
+		return writeRandomKey();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Object write_16() throws Exception {
+		return writeRandomKey();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object read_1() throws Exception {
+		return readRandomKey();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object read_4() throws Exception {
+		return readRandomKey();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Object read_16() throws Exception {
+		return readRandomKey();
+	}
+
+	private Object writeRandomKey() throws Exception {
+		Entry entry = new Entry(Integer.toString(ThreadLocalRandom.current().nextInt(nrOfRecords)), buffer);
+		store.put(entry);
+		return entry;
+	}
+
+	private Object readRandomKey() throws Exception {
+		return store.get(Integer.toString(ThreadLocalRandom.current().nextInt(nrOfRecords)));
+	}
+
+}
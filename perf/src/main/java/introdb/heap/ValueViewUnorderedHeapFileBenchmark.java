@@ -0,0 +1,71 @@
+package introdb.heap;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares decoded, copied and viewed reads of large values, run with {@code -prof gc} to see allocation per read.
+ */
+@State(Scope.Benchmark)
+public class ValueViewUnorderedHeapFileBenchmark {
+
+	@Param({"2048"})
+	public int valueSize;
+
+	@Param({"1000"})
+	public int nrOfRecords;
+
+	private Store heapFile;
+	private Path tempFile;
+	private Integer key;
+	private Consumer<ByteBuffer> viewConsumer;
+	private byte lastByte;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempFile = Files.createTempFile("heap", "0001");
+		var options = HeapFileOptions.defaults()
+				.withKeyIndex(true)
+				.withKeyCodec(Codecs.INTEGER)
+				.withValueCodec(Codecs.BYTE_ARRAY);
+		heapFile = new UnorderedHeapFile(tempFile, nrOfRecords, 4*1024, options);
+		for(int i=0;i<nrOfRecords;i++) {
+			heapFile.put(new Entry(i, new byte[valueSize]));
+		}
+		key = nrOfRecords / 2;
+		viewConsumer = view -> lastByte = view.get(view.limit() - 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		heapFile.close();
+		Files.delete(tempFile);
+	}
+
+	@Benchmark
+	public Object get() throws Exception {
+		return heapFile.get(key);
+	}
+
+	@Benchmark
+	public byte[] getBytes() throws Exception {
+		return heapFile.getBytes(key);
+	}
+
+	@Benchmark
+	public byte getView() throws Exception {
+		heapFile.getView(key, viewConsumer);
+		return lastByte;
+	}
+
+}
@@ -16,6 +16,16 @@ public class WriteUnorderedHeapFileBenchmark {
 		
 	@Param( {"512","1024","2048"})
 	public int bufferSize; 
+
+	@Param({"java","binary"})
+	public String codec;
+
+	@Param({"channel","mmap"})
+	public String io;
+
+	@Param({"false","true"})
+	public boolean writeBack;
+
 	private byte[] buffer;
 	private Store heapFile;
 	private int key;
@@ -24,13 +34,14 @@ public class WriteUnorderedHeapFileBenchmark {
 	@Setup(Level.Iteration)
 	public void setUp() throws Exception {
 		tempFile = Files.createTempFile("heap", "0001");
-		heapFile = new UnorderedHeapFile(tempFile, 50000, 4*1024);
+		heapFile = new UnorderedHeapFile(tempFile, 50000, 4*1024, options(codec, io, writeBack));
 		buffer = new byte[bufferSize];
 		key = 0;
 	}
 	
 	@TearDown(Level.Iteration)
 	public void tearDown() throws Exception{
+		heapFile.close();
 		Files.delete(tempFile);
 	}
 	
@@ -39,4 +50,17 @@ public class WriteUnorderedHeapFileBenchmark {
     	heapFile.put(new Entry(key++,buffer));
     }
 
+    private static HeapFileOptions options(String codec, String io, boolean writeBack) {
+    	var options = HeapFileOptions.defaults();
+    	if ("mmap".equals(io)) {
+    		options = options.withMemoryMapping(HeapFileOptions.DEFAULT_MAPPING_CHUNK_SIZE);
+    	} else if (writeBack) {
+    		options = options.withWriteBack(4 * 1024 * 1024, 1000);
+    	}
+    	if ("binary".equals(codec)) {
+    		return options.withKeyCodec(Codecs.INTEGER).withValueCodec(Codecs.BYTE_ARRAY);
+    	}
+    	return options;
+    }
+
 }